@@ -0,0 +1,121 @@
+package com.alvian.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * This class generates the storage files the benchmarks run on. Files are 
+ * generated once per combination of parameters into the temporary 
+ * directory and reused by later runs, since the largest ones take a while 
+ * to write. Benchmarks that change the file work on a copy.
+ * Lines are made of the letters "a" to "m" only, so that no line contains 
+ * SEARCH_TOKEN unless it was put there on purpose.
+ * @author Alvian Prasetya
+ */
+public class BenchmarkFiles {
+	
+	// This is the token that search benchmarks look for.
+	public static final String SEARCH_TOKEN = "needle";
+	
+	private static final String DIRECTORY_NAME = "textbuddy-bench";
+	private static final String FILE_NAME_FORMAT = "lines-%1$d-%2$d-%3$s.txt";
+	private static final String LETTERS = "abcdefghijklm";
+	// This keeps every run generating the same lines.
+	private static final long SEED = 2103;
+	
+	/**
+	 * This method returns a storage file with the specified shape, creating 
+	 * it if it has not been generated before.
+	 * @param lineCount		The number of lines in the file.
+	 * @param lineLength	The number of characters in every line.
+	 * @param hitRate		The fraction of lines containing SEARCH_TOKEN.
+	 * @return				The generated file, which must not be changed.
+	 * @throws IOException	If the file cannot be written.
+	 */
+	public static File getPristineFile(int lineCount, int lineLength, double hitRate) 
+			throws IOException {
+		File directory = new File(System.getProperty("java.io.tmpdir"), DIRECTORY_NAME);
+		directory.mkdirs();
+		File file = new File(directory, String.format(FILE_NAME_FORMAT, lineCount, lineLength, 
+													  Double.toString(hitRate)));
+		if (!file.exists()) {
+			File partialFile = new File(directory, file.getName() + ".partial");
+			writeLines(partialFile, lineCount, lineLength, hitRate);
+			Files.move(partialFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return file;
+	}
+	
+	/**
+	 * This method copies the pristine file to a working file that a 
+	 * benchmark may change, replacing the previous working copy.
+	 * @param pristineFile	The file to copy.
+	 * @return				The working copy.
+	 * @throws IOException	If the file cannot be copied.
+	 */
+	public static File copyToWorkingFile(File pristineFile) throws IOException {
+		File workingFile = new File(pristineFile.getParentFile(), "working-" + pristineFile.getName());
+		deleteStorageFiles(workingFile);
+		Files.copy(pristineFile.toPath(), workingFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return workingFile;
+	}
+	
+	/**
+	 * This method deletes a working file along with the files TextBuddy 
+	 * keeps next to it, such as the offset index and the operation log.
+	 * @param workingFile	The working file to delete.
+	 */
+	public static void deleteStorageFiles(File workingFile) {
+		File[] files = workingFile.getParentFile().listFiles();
+		if (files == null) {
+			return;
+		}
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].getName().startsWith(workingFile.getName())) {
+				files[i].delete();
+			}
+		}
+	}
+	
+	/**
+	 * This method returns a line of the specified length that is not in 
+	 * the generated files, for benchmarks that add lines.
+	 * @param lineLength	The number of characters in the line.
+	 * @return				The line.
+	 */
+	public static String createLine(int lineLength) {
+		return createLine(new Random(SEED), lineLength, false);
+	}
+	
+	private static void writeLines(File file, int lineCount, int lineLength, double hitRate) 
+			throws IOException {
+		Random random = new Random(SEED);
+		// Initialize the required writer objects to write into the file.
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)))) {
+			for (int i = 0; i < lineCount; i++) {
+				writer.write(createLine(random, lineLength, random.nextDouble() < hitRate));
+				writer.write(System.lineSeparator());
+			}
+		}
+	}
+	
+	private static String createLine(Random random, int lineLength, boolean isHit) {
+		char[] line = new char[lineLength];
+		for (int i = 0; i < lineLength; i++) {
+			line[i] = LETTERS.charAt(random.nextInt(LETTERS.length()));
+		}
+		if (isHit && lineLength >= SEARCH_TOKEN.length()) {
+			int tokenPosition = random.nextInt(lineLength - SEARCH_TOKEN.length() + 1);
+			SEARCH_TOKEN.getChars(0, SEARCH_TOKEN.length(), line, tokenPosition);
+		}
+		return new String(line);
+	}
+}
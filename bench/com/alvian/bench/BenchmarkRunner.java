@@ -0,0 +1,35 @@
+package com.alvian.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class runs the benchmarks with the allocation profiler and saves 
+ * the results as JSON, so that runs before and after a change can be 
+ * compared. The first argument, if any, is a regular expression choosing 
+ * the benchmarks to run, e.g. "SearchBenchmark"; the second, if any, is 
+ * the result file.
+ * @author Alvian Prasetya
+ */
+public class BenchmarkRunner {
+	
+	private static final String DEFAULT_INCLUDE = "com\\.alvian\\.bench\\..*Benchmark";
+	private static final String DEFAULT_RESULT_FILE = "bench-result.json";
+	// The largest files hold every line in memory in resident mode.
+	private static final String JVM_ARGUMENT_HEAP = "-Xmx8g";
+	
+	public static void main(String[] args) throws RunnerException {
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : DEFAULT_INCLUDE)
+				.addProfiler(GCProfiler.class)
+				.jvmArgsAppend(JVM_ARGUMENT_HEAP)
+				.forks(1)
+				.resultFormat(ResultFormatType.JSON)
+				.result(args.length > 1 ? args[1] : DEFAULT_RESULT_FILE);
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,37 @@
+package com.alvian.bench;
+
+import java.io.Writer;
+
+/**
+ * This class is a Writer that throws away what is written to it, counting 
+ * the characters so that the output cannot be optimized away.
+ * @author Alvian Prasetya
+ */
+public class DiscardingWriter extends Writer {
+	
+	private long _charCount = 0;
+	
+	public long getCharCount() {
+		return _charCount;
+	}
+	
+	@Override
+	public void write(char[] buffer, int offset, int length) {
+		_charCount += length;
+	}
+	
+	@Override
+	public void write(String string, int offset, int length) {
+		_charCount += length;
+	}
+	
+	@Override
+	public void flush() {
+		// Nothing is buffered.
+	}
+	
+	@Override
+	public void close() {
+		// Nothing is held open.
+	}
+}
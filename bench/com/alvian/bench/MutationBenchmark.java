@@ -0,0 +1,108 @@
+package com.alvian.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alvian.main.Durability;
+import com.alvian.main.StoreType;
+import com.alvian.main.TextBuddy;
+import com.alvian.main.TextBuddyOptions;
+
+/**
+ * This class measures the commands that change the storage file. Every 
+ * iteration starts from a fresh copy of the generated file and times a 
+ * single command, or a batch of adds, including the write to disk that 
+ * the durability requires. The store is closed at the end of every 
+ * iteration, outside the measured time.
+ * @author Alvian Prasetya
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class MutationBenchmark {
+	
+	// This is the number of adds timed together in one iteration.
+	private static final int ADD_BATCH_SIZE = 1000;
+	
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int lineCount;
+	
+	@Param({"16", "128"})
+	public int lineLength;
+	
+	@Param({"resident", "direct"})
+	public String store;
+	
+	@Param({"per-command", "on-exit"})
+	public String durability;
+	
+	private File _pristineFile;
+	private File _workingFile;
+	private TextBuddy _textBuddy;
+	private String _lineToAdd;
+	
+	@Setup(Level.Trial)
+	public void setUpTrial() throws IOException {
+		_pristineFile = BenchmarkFiles.getPristineFile(lineCount, lineLength, 0);
+		_lineToAdd = BenchmarkFiles.createLine(lineLength);
+	}
+	
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws IOException {
+		_workingFile = BenchmarkFiles.copyToWorkingFile(_pristineFile);
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setStoreType(StoreType.fromName(store));
+		options.setDurability(Durability.fromName(durability));
+		_textBuddy = new TextBuddy(_workingFile.getPath(), options);
+	}
+	
+	@TearDown(Level.Iteration)
+	public void tearDownIteration() {
+		_textBuddy.exit();
+		BenchmarkFiles.deleteStorageFiles(_workingFile);
+	}
+	
+	@Benchmark
+	@Warmup(iterations = 3, batchSize = ADD_BATCH_SIZE)
+	@Measurement(iterations = 10, batchSize = ADD_BATCH_SIZE)
+	public String add() {
+		return _textBuddy.add(_lineToAdd);
+	}
+	
+	@Benchmark
+	public String deleteFirst() {
+		return _textBuddy.delete(1);
+	}
+	
+	@Benchmark
+	public String deleteLast() {
+		return _textBuddy.delete(lineCount);
+	}
+	
+	@Benchmark
+	public String sort() {
+		return _textBuddy.sort();
+	}
+	
+	@Benchmark
+	public String clear() {
+		return _textBuddy.clear();
+	}
+}
@@ -0,0 +1,96 @@
+package com.alvian.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.alvian.main.StoreType;
+import com.alvian.main.TextBuddy;
+import com.alvian.main.TextBuddyOptions;
+
+/**
+ * This class measures the commands that only read the storage file: 
+ * display of the whole file, display of a page, and the dispatch cost of 
+ * executeCommand for a page and for an unrecognized command. Output goes 
+ * to a DiscardingWriter so that the cost of printing is not measured.
+ * @author Alvian Prasetya
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadBenchmark {
+	
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int lineCount;
+	
+	@Param({"16", "128"})
+	public int lineLength;
+	
+	@Param({"resident", "direct"})
+	public String store;
+	
+	private File _workingFile;
+	private TextBuddy _textBuddy;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		_workingFile = BenchmarkFiles.copyToWorkingFile(
+				BenchmarkFiles.getPristineFile(lineCount, lineLength, 0));
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setStoreType(StoreType.fromName(store));
+		_textBuddy = new TextBuddy(_workingFile.getPath(), options);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		_textBuddy.exit();
+		BenchmarkFiles.deleteStorageFiles(_workingFile);
+	}
+	
+	@Benchmark
+	public long display() throws IOException {
+		DiscardingWriter output = new DiscardingWriter();
+		_textBuddy.display(output);
+		return output.getCharCount();
+	}
+	
+	@Benchmark
+	public long displayPage() throws IOException {
+		DiscardingWriter output = new DiscardingWriter();
+		_textBuddy.displayPage(1, output);
+		return output.getCharCount();
+	}
+	
+	@Benchmark
+	public long displayLastPage() throws IOException {
+		DiscardingWriter output = new DiscardingWriter();
+		_textBuddy.display(lineCount, lineCount, output);
+		return output.getCharCount();
+	}
+	
+	@Benchmark
+	public long executeDisplayPage() throws IOException {
+		DiscardingWriter output = new DiscardingWriter();
+		_textBuddy.executeCommand("display page 1", output);
+		return output.getCharCount();
+	}
+	
+	@Benchmark
+	public long executeUnrecognized() throws IOException {
+		DiscardingWriter output = new DiscardingWriter();
+		_textBuddy.executeCommand("unrecognized command", output);
+		return output.getCharCount();
+	}
+}
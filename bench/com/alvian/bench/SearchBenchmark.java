@@ -0,0 +1,74 @@
+package com.alvian.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.alvian.main.StoreType;
+import com.alvian.main.TextBuddy;
+import com.alvian.main.TextBuddyOptions;
+
+/**
+ * This class measures search across hit rates, from a token found in no 
+ * line to a token found in half of the lines, with and without the 
+ * trigram index.
+ * @author Alvian Prasetya
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchBenchmark {
+	
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int lineCount;
+	
+	@Param({"16", "128"})
+	public int lineLength;
+	
+	@Param({"0", "0.01", "0.5"})
+	public double hitRate;
+	
+	@Param({"resident", "direct"})
+	public String store;
+	
+	@Param({"false", "true"})
+	public boolean isIndexed;
+	
+	private File _workingFile;
+	private TextBuddy _textBuddy;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		_workingFile = BenchmarkFiles.copyToWorkingFile(
+				BenchmarkFiles.getPristineFile(lineCount, lineLength, hitRate));
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setStoreType(StoreType.fromName(store));
+		options.setIndexed(isIndexed);
+		_textBuddy = new TextBuddy(_workingFile.getPath(), options);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		_textBuddy.exit();
+		BenchmarkFiles.deleteStorageFiles(_workingFile);
+	}
+	
+	@Benchmark
+	public long search() throws IOException {
+		DiscardingWriter output = new DiscardingWriter();
+		_textBuddy.search(BenchmarkFiles.SEARCH_TOKEN, output);
+		return output.getCharCount();
+	}
+}
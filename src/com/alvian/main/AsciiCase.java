@@ -0,0 +1,163 @@
+package com.alvian.main;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * This class compares and searches text made of ASCII bytes ignoring case, 
+ * without decoding it. For such text the results equal those of the String 
+ * methods TextBuddy uses, toLowerCase().contains() and 
+ * String.CASE_INSENSITIVE_ORDER, as long as isSupported holds; text with 
+ * any other byte must be decoded and handled as Strings instead.
+ * @author Alvian Prasetya
+ */
+public class AsciiCase {
+	
+	// Bytes below this value are ASCII characters.
+	public static final int ASCII_LIMIT = 0x80;
+	
+	private static final byte[] LOWER_CASE = createLowerCase();
+	
+	/**
+	 * This method tells whether ASCII bytes in the charset can be handled 
+	 * by this class: every ASCII character must be encoded as its own single 
+	 * byte, and lower-casing ASCII letters in the default locale must give 
+	 * ASCII letters, which is not the case in e.g. a Turkish locale.
+	 * @param charset	The charset to check.
+	 * @return			True if the results equal those on decoded Strings.
+	 */
+	public static boolean isSupported(Charset charset) {
+		byte[] asciiBytes = new byte[ASCII_LIMIT];
+		byte[] lowerCaseBytes = new byte[ASCII_LIMIT];
+		char[] asciiCharacters = new char[ASCII_LIMIT];
+		for (int i = 0; i < ASCII_LIMIT; i++) {
+			asciiBytes[i] = (byte) i;
+			lowerCaseBytes[i] = LOWER_CASE[i];
+			asciiCharacters[i] = (char) i;
+		}
+		String ascii = new String(asciiCharacters);
+		return Arrays.equals(ascii.getBytes(charset), asciiBytes) 
+			   && ascii.toLowerCase().equals(new String(lowerCaseBytes, charset));
+	}
+	
+	/**
+	 * This method returns the bytes of the text if it is made of ASCII 
+	 * characters only.
+	 * @param text	The text to convert.
+	 * @return		The ASCII bytes of the text, or null if it has other characters.
+	 */
+	public static byte[] getBytes(String text) {
+		byte[] bytes = new byte[text.length()];
+		for (int i = 0; i < text.length(); i++) {
+			char character = text.charAt(i);
+			if (character >= ASCII_LIMIT) {
+				return null;
+			}
+			bytes[i] = (byte) character;
+		}
+		return bytes;
+	}
+	
+	/**
+	 * This method tells whether the ASCII bytes between the positions 
+	 * contain the lower-cased token, ignoring case.
+	 * @param bytes			The bytes to search in.
+	 * @param start			The start of the text, inclusive.
+	 * @param end			The end of the text, exclusive.
+	 * @param tokenBytes	The lower-cased ASCII bytes of the token.
+	 * @return				True if the text contains the token.
+	 */
+	public static boolean contains(byte[] bytes, int start, int end, byte[] tokenBytes) {
+		if (tokenBytes.length == 0) {
+			return true;
+		}
+		byte firstByte = tokenBytes[0];
+		int lastStart = end - tokenBytes.length;
+		
+		for (int i = start; i <= lastStart; i++) {
+			if (LOWER_CASE[bytes[i]] != firstByte) {
+				continue;
+			}
+			int matchLength = 1;
+			while (matchLength < tokenBytes.length 
+				   && LOWER_CASE[bytes[i + matchLength]] == tokenBytes[matchLength]) {
+				matchLength++;
+			}
+			if (matchLength == tokenBytes.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * This method is contains for bytes in a buffer, read without moving 
+	 * the position of the buffer.
+	 */
+	public static boolean contains(ByteBuffer buffer, int start, int end, byte[] tokenBytes) {
+		if (tokenBytes.length == 0) {
+			return true;
+		}
+		byte firstByte = tokenBytes[0];
+		int lastStart = end - tokenBytes.length;
+		
+		for (int i = start; i <= lastStart; i++) {
+			if (LOWER_CASE[buffer.get(i)] != firstByte) {
+				continue;
+			}
+			int matchLength = 1;
+			while (matchLength < tokenBytes.length 
+				   && LOWER_CASE[buffer.get(i + matchLength)] == tokenBytes[matchLength]) {
+				matchLength++;
+			}
+			if (matchLength == tokenBytes.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * This method compares two runs of ASCII bytes the way 
+	 * String.CASE_INSENSITIVE_ORDER compares the Strings they decode to.
+	 * @return	A negative number, zero or a positive number as the first 
+	 * 			text is less than, equal to or greater than the second.
+	 */
+	public static int compare(ByteBuffer firstBuffer, int firstStart, int firstLength, 
+							  ByteBuffer secondBuffer, int secondStart, int secondLength) {
+		int commonLength = Math.min(firstLength, secondLength);
+		for (int i = 0; i < commonLength; i++) {
+			byte firstByte = LOWER_CASE[firstBuffer.get(firstStart + i)];
+			byte secondByte = LOWER_CASE[secondBuffer.get(secondStart + i)];
+			if (firstByte != secondByte) {
+				return firstByte - secondByte;
+			}
+		}
+		return firstLength - secondLength;
+	}
+	
+	/**
+	 * This method is compare for bytes in arrays.
+	 */
+	public static int compare(byte[] firstBytes, int firstStart, int firstLength, 
+							  byte[] secondBytes, int secondStart, int secondLength) {
+		int commonLength = Math.min(firstLength, secondLength);
+		for (int i = 0; i < commonLength; i++) {
+			byte firstByte = LOWER_CASE[firstBytes[firstStart + i]];
+			byte secondByte = LOWER_CASE[secondBytes[secondStart + i]];
+			if (firstByte != secondByte) {
+				return firstByte - secondByte;
+			}
+		}
+		return firstLength - secondLength;
+	}
+	
+	private static byte[] createLowerCase() {
+		byte[] lowerCase = new byte[ASCII_LIMIT];
+		for (int i = 0; i < ASCII_LIMIT; i++) {
+			lowerCase[i] = (byte) (i >= 'A' && i <= 'Z' ? i - 'A' + 'a' : i);
+		}
+		return lowerCase;
+	}
+}
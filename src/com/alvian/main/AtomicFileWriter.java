@@ -0,0 +1,196 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * This class replaces the content of a file without ever leaving it 
+ * half-written. Lines are streamed into a uniquely named temporary file 
+ * next to the target through a FileChannel; commit forces the temporary 
+ * file to disk and atomically moves it over the target. Until commit, the 
+ * target keeps its old content, and closing without committing simply 
+ * removes the temporary file. Because every writer has its own temporary 
+ * file, different files (or TextBuddy instances) can be rewritten at the 
+ * same time in the same directory. The rewritten file keeps the permissions 
+ * of the target, and a target that is a symbolic link stays a link to the 
+ * rewritten file.
+ * Lines are encoded like FileWriter does, replacing characters that the 
+ * charset cannot encode, and each line ends with the system line separator.
+ * @author Alvian Prasetya
+ */
+public class AtomicFileWriter implements Closeable {
+	
+	private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// This names the file attributes holding the permissions on Unix.
+	private static final String POSIX_VIEW = "posix";
+	
+	private final Path _target;
+	private final Path _temporaryFile;
+	private final FileChannel _channel;
+	private final CharsetEncoder _encoder;
+	private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final byte[] _lineSeparator;
+	private boolean _isClosed = false;
+	
+	/**
+	 * This is the default constructor for AtomicFileWriter object. It creates 
+	 * the temporary file next to the target.
+	 * @param target	The file whose content is replaced on commit.
+	 * @param charset	The charset to encode the lines with.
+	 * @throws IOException	If the temporary file cannot be created.
+	 */
+	public AtomicFileWriter(File target, Charset charset) throws IOException {
+		_target = resolveLink(target.toPath().toAbsolutePath());
+		_temporaryFile = Files.createTempFile(_target.getParent(), 
+											  _target.getFileName() + ".", TEMPORARY_FILE_SUFFIX);
+		_channel = FileChannel.open(_temporaryFile, StandardOpenOption.WRITE);
+		_encoder = charset.newEncoder()
+						  .onMalformedInput(CodingErrorAction.REPLACE)
+						  .onUnmappableCharacter(CodingErrorAction.REPLACE);
+		_lineSeparator = System.lineSeparator().getBytes(charset);
+	}
+	
+	/**
+	 * This method replaces the content of the target with the specified lines.
+	 * @param target	The file to rewrite.
+	 * @param lines		The lines to write, in order.
+	 * @param charset	The charset to encode the lines with.
+	 * @throws IOException	If the lines cannot be written, in which case 
+	 * 						the target is left unchanged.
+	 */
+	public static void writeLines(File target, List<String> lines, Charset charset) 
+			throws IOException {
+		try (AtomicFileWriter writer = new AtomicFileWriter(target, charset)) {
+			for (int i = 0; i < lines.size(); i++) {
+				writer.writeLine(lines.get(i));
+			}
+			writer.commit();
+		}
+	}
+	
+	/**
+	 * This method moves the source file over the target in one step where 
+	 * the file system supports it. An existing target passes its POSIX 
+	 * permissions on to the source first, as a temporary file is only 
+	 * readable by its owner, and a symbolic link is followed so that the 
+	 * file it points to is replaced instead of the link.
+	 * @param source	The file to move.
+	 * @param target	The file to replace.
+	 * @throws IOException	If the file cannot be moved.
+	 */
+	public static void replace(Path source, Path target) throws IOException {
+		Path resolvedTarget = resolveLink(target);
+		if (Files.exists(resolvedTarget) 
+			&& source.getFileSystem().supportedFileAttributeViews().contains(POSIX_VIEW)) {
+			Files.setPosixFilePermissions(source, Files.getPosixFilePermissions(resolvedTarget));
+		}
+		try {
+			Files.move(source, resolvedTarget, StandardCopyOption.REPLACE_EXISTING, 
+					   StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException exceptionMessage) {
+			Files.move(source, resolvedTarget, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * This method writes the specified line followed by a line separator.
+	 * @param line	The line to write.
+	 * @throws IOException	If the line cannot be written.
+	 */
+	public void writeLine(String line) throws IOException {
+		CharBuffer input = CharBuffer.wrap(line);
+		_encoder.reset();
+		CoderResult result;
+		
+		do {
+			result = _encoder.encode(input, _buffer, true);
+			if (result.isOverflow()) {
+				drainBuffer();
+			}
+		} while (result.isOverflow());
+		while (_encoder.flush(_buffer).isOverflow()) {
+			drainBuffer();
+		}
+		if (_buffer.remaining() < _lineSeparator.length) {
+			drainBuffer();
+		}
+		_buffer.put(_lineSeparator);
+	}
+	
+	/**
+	 * This method forces the written lines to disk and moves them over the 
+	 * target, after which the writer is closed.
+	 * @throws IOException	If the lines cannot be committed, in which case 
+	 * 						the target is left unchanged.
+	 */
+	public void commit() throws IOException {
+		drainBuffer();
+		_channel.force(true);
+		_channel.close();
+		replace(_temporaryFile, _target);
+		_isClosed = true;
+		forceDirectory(_target.getParent());
+		Metrics.recordRewrite();
+	}
+	
+	/**
+	 * This method discards the written lines unless they were committed.
+	 * @throws IOException	If the temporary file cannot be removed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!_isClosed) {
+			_isClosed = true;
+			try {
+				_channel.close();
+			} finally {
+				Files.deleteIfExists(_temporaryFile);
+			}
+		}
+	}
+	
+	private void drainBuffer() throws IOException {
+		_buffer.flip();
+		Metrics.recordBytesWritten(_buffer.remaining());
+		while (_buffer.hasRemaining()) {
+			_channel.write(_buffer);
+		}
+		_buffer.clear();
+	}
+	
+	/**
+	 * This method returns the file a symbolic link points to, or the path 
+	 * itself if it is not a link.
+	 */
+	private static Path resolveLink(Path path) throws IOException {
+		return Files.isSymbolicLink(path) ? path.toRealPath() : path;
+	}
+	
+	/**
+	 * This method makes the rename itself durable where the platform allows 
+	 * a directory to be opened; elsewhere the rename is left to the OS.
+	 */
+	private static void forceDirectory(Path directory) {
+		try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			directoryChannel.force(true);
+		} catch (IOException exceptionMessage) {
+			// Not supported on this platform.
+		}
+	}
+}
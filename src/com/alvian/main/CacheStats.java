@@ -0,0 +1,52 @@
+package com.alvian.main;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts the lookups of every ResultCache of the process, and 
+ * the entries dropped to stay within the budget or because lines changed.
+ * @author Alvian Prasetya
+ */
+public class CacheStats implements CacheStatsMBean {
+	
+	private final LongAdder _hitCount = new LongAdder();
+	private final LongAdder _missCount = new LongAdder();
+	private final LongAdder _evictionCount = new LongAdder();
+	private final LongAdder _invalidationCount = new LongAdder();
+	
+	public void addHit() {
+		_hitCount.increment();
+	}
+	
+	public void addMiss() {
+		_missCount.increment();
+	}
+	
+	public void addEviction() {
+		_evictionCount.increment();
+	}
+	
+	public void addInvalidations(int entryCount) {
+		_invalidationCount.add(entryCount);
+	}
+	
+	@Override
+	public long getHitCount() {
+		return _hitCount.sum();
+	}
+	
+	@Override
+	public long getMissCount() {
+		return _missCount.sum();
+	}
+	
+	@Override
+	public long getEvictionCount() {
+		return _evictionCount.sum();
+	}
+	
+	@Override
+	public long getInvalidationCount() {
+		return _invalidationCount.sum();
+	}
+}
@@ -0,0 +1,17 @@
+package com.alvian.main;
+
+/**
+ * This interface exposes the statistics of the result caches of the 
+ * process through JMX, under the name "com.alvian.textbuddy:type=ResultCache".
+ * @author Alvian Prasetya
+ */
+public interface CacheStatsMBean {
+	
+	long getHitCount();
+	
+	long getMissCount();
+	
+	long getEvictionCount();
+	
+	long getInvalidationCount();
+}
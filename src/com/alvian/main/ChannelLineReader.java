@@ -0,0 +1,124 @@
+package com.alvian.main;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * This class reads lines from a FileChannel starting at any byte offset, 
+ * keeping track of the offset of the next line. Lines end at a line feed, 
+ * and a carriage return right before it is dropped, so files written with 
+ * either line separator read the same. The charset must encode the line 
+ * feed as the single byte 0x0A, as every ASCII-compatible charset does.
+ * The channel is not closed by the reader.
+ * @author Alvian Prasetya
+ */
+public class ChannelLineReader {
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte LINE_FEED = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+	
+	private final FileChannel _channel;
+	private final Charset _charset;
+	private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private byte[] _lineBytes = new byte[256];
+	// Offset in the file of the first byte not returned yet.
+	private long _position;
+	
+	/**
+	 * This is the default constructor for ChannelLineReader object.
+	 * @param channel	The channel to read from.
+	 * @param position	The byte offset of the first line to read.
+	 * @param charset	The charset the lines are encoded in.
+	 */
+	public ChannelLineReader(FileChannel channel, long position, Charset charset) {
+		_channel = channel;
+		_position = position;
+		_charset = charset;
+		_buffer.limit(0);
+	}
+	
+	/**
+	 * This method tells whether the charset stores lines in a way this 
+	 * reader understands.
+	 * @param charset	The charset to check.
+	 * @return			True if the line feed and ASCII letters are single bytes.
+	 */
+	public static boolean isSupported(Charset charset) {
+		return Arrays.equals("\nA".getBytes(charset), new byte[] {LINE_FEED, 'A'});
+	}
+	
+	/**
+	 * This method returns the byte offset of the next line to be read.
+	 * @return	The offset of the next line in the file.
+	 */
+	public long getPosition() {
+		return _position;
+	}
+	
+	/**
+	 * This method reads the next line.
+	 * @return	The next line, or null at the end of the file.
+	 * @throws IOException	If the file cannot be read.
+	 */
+	public String readLine() throws IOException {
+		int lineLength = 0;
+		boolean isLineFound = false;
+		
+		while (!isLineFound) {
+			if (!_buffer.hasRemaining() && !fillBuffer()) {
+				if (lineLength == 0) {
+					return null;
+				}
+				break;
+			}
+			byte currentByte = _buffer.get();
+			_position++;
+			if (currentByte == LINE_FEED) {
+				isLineFound = true;
+			} else {
+				if (lineLength == _lineBytes.length) {
+					_lineBytes = Arrays.copyOf(_lineBytes, lineLength * 2);
+				}
+				_lineBytes[lineLength++] = currentByte;
+			}
+		}
+		if (lineLength > 0 && _lineBytes[lineLength - 1] == CARRIAGE_RETURN) {
+			lineLength--;
+		}
+		return new String(_lineBytes, 0, lineLength, _charset);
+	}
+	
+	/**
+	 * This method skips the specified number of lines.
+	 * @param lineCount		The number of lines to skip.
+	 * @throws IOException	If the file cannot be read.
+	 */
+	public void skipLines(int lineCount) throws IOException {
+		int skippedLines = 0;
+		
+		while (skippedLines < lineCount) {
+			if (!_buffer.hasRemaining() && !fillBuffer()) {
+				return;
+			}
+			_position++;
+			if (_buffer.get() == LINE_FEED) {
+				skippedLines++;
+			}
+		}
+	}
+	
+	private boolean fillBuffer() throws IOException {
+		_buffer.clear();
+		int bytesRead = _channel.read(_buffer, _position);
+		_buffer.flip();
+		if (bytesRead > 0) {
+			Metrics.recordBytesRead(bytesRead);
+		}
+		return bytesRead > 0;
+	}
+}
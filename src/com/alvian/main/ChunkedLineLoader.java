@@ -0,0 +1,175 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * This class loads the lines of a plain text storage file with pipelined 
+ * reads. The calling thread reads the file in chunks, cut after the last 
+ * line feed of each chunk so that no line is split, and hands every chunk 
+ * to a pool of decoder threads which find the lines in it and decode 
+ * them. While the chunks are decoded the next ones are read, and the lines 
+ * are added to the list chunk by chunk in file order, so the result is 
+ * exactly what reading the file line by line gives: lines end at a line 
+ * feed, a carriage return, or both together.
+ * The charset must encode both line breaks as single bytes that never 
+ * occur inside other characters, which isSupported checks.
+ * @author Alvian Prasetya
+ */
+public class ChunkedLineLoader {
+	
+	// Every chunk read from the file holds about this many bytes.
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	// Reading stops this many chunks per decoder ahead of the added lines.
+	private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+	private static final byte LINE_FEED = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+	private static final String DECODER_THREAD_NAME = "TextBuddy-decoder";
+	
+	private final Charset _charset;
+	private final int _threadCount;
+	
+	/**
+	 * This is the default constructor for ChunkedLineLoader object.
+	 * @param charset		The charset the lines are encoded in.
+	 * @param threadCount	The number of threads decoding the chunks.
+	 */
+	public ChunkedLineLoader(Charset charset, int threadCount) {
+		_charset = charset;
+		_threadCount = threadCount;
+	}
+	
+	/**
+	 * This method tells whether the charset stores line breaks in a way this 
+	 * loader understands.
+	 * @param charset	The charset to check.
+	 * @return			True if both line breaks and ASCII letters are single bytes.
+	 */
+	public static boolean isSupported(Charset charset) {
+		return Arrays.equals("\r\nA".getBytes(charset), 
+							 new byte[] {CARRIAGE_RETURN, LINE_FEED, 'A'});
+	}
+	
+	/**
+	 * This method adds every line of the file to the list, a chunk of lines 
+	 * at a time with addAll.
+	 * @param file		The file to read.
+	 * @param lines		The list to add the lines to.
+	 * @return			The fingerprint of the bytes that were read.
+	 * @throws IOException	If the file cannot be read.
+	 */
+	public Fingerprint load(File file, List<String> lines) throws IOException {
+		ExecutorService decoders = Executors.newFixedThreadPool(_threadCount, 
+				new DaemonThreadFactory(DECODER_THREAD_NAME));
+		ArrayDeque<Future<ArrayList<String>>> decodingChunks 
+				= new ArrayDeque<Future<ArrayList<String>>>();
+		CRC32 checksum = new CRC32();
+		long fileLength = 0;
+		// Small files are read in one chunk of their own size.
+		int chunkSize = (int) Math.max(Math.min(file.length(), CHUNK_SIZE), 1);
+		
+		// Initialize the required channel objects to read the storage file.
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			byte[] leftover = new byte[0];
+			boolean isEndOfFile = false;
+			
+			while (!isEndOfFile) {
+				byte[] chunk = Arrays.copyOf(leftover, leftover.length + chunkSize);
+				ByteBuffer buffer = ByteBuffer.wrap(chunk, leftover.length, chunkSize);
+				while (buffer.hasRemaining() && !isEndOfFile) {
+					isEndOfFile = channel.read(buffer) < 0;
+				}
+				checksum.update(chunk, leftover.length, buffer.position() - leftover.length);
+				fileLength += buffer.position() - leftover.length;
+				
+				// The bytes after the last line feed start the next chunk.
+				int chunkEnd = buffer.position();
+				if (!isEndOfFile) {
+					while (chunkEnd > leftover.length && chunk[chunkEnd - 1] != LINE_FEED) {
+						chunkEnd--;
+					}
+					if (chunkEnd == leftover.length) {
+						// A single line longer than the chunk, keep reading it.
+						leftover = Arrays.copyOf(chunk, buffer.position());
+						continue;
+					}
+				}
+				leftover = Arrays.copyOfRange(chunk, chunkEnd, buffer.position());
+				decodingChunks.add(decoders.submit(new ChunkDecoder(chunk, chunkEnd)));
+				
+				while (decodingChunks.size() > _threadCount * CHUNKS_AHEAD_PER_THREAD 
+					   || (isEndOfFile && !decodingChunks.isEmpty())) {
+					lines.addAll(getLines(decodingChunks.poll()));
+				}
+			}
+		} finally {
+			decoders.shutdownNow();
+			Metrics.recordBytesRead(fileLength);
+		}
+		return new Fingerprint(fileLength, checksum.getValue());
+	}
+	
+	private static ArrayList<String> getLines(Future<ArrayList<String>> decodingChunk) 
+			throws IOException {
+		try {
+			return decodingChunk.get();
+		} catch (ExecutionException exceptionMessage) {
+			throw new IOException("failed to decode lines", exceptionMessage.getCause());
+		} catch (InterruptedException exceptionMessage) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while loading lines");
+		}
+	}
+	
+	/**
+	 * This class decodes the lines of one chunk, which ends after a line 
+	 * feed unless it is the last chunk of the file.
+	 */
+	private class ChunkDecoder implements Callable<ArrayList<String>> {
+		
+		private final byte[] _chunk;
+		private final int _length;
+		
+		ChunkDecoder(byte[] chunk, int length) {
+			_chunk = chunk;
+			_length = length;
+		}
+		
+		@Override
+		public ArrayList<String> call() {
+			ArrayList<String> lines = new ArrayList<String>();
+			int lineStart = 0;
+			
+			for (int i = 0; i < _length; i++) {
+				byte currentByte = _chunk[i];
+				if (currentByte == LINE_FEED || currentByte == CARRIAGE_RETURN) {
+					lines.add(new String(_chunk, lineStart, i - lineStart, _charset));
+					if (currentByte == CARRIAGE_RETURN && i + 1 < _length 
+						&& _chunk[i + 1] == LINE_FEED) {
+						i++;
+					}
+					lineStart = i + 1;
+				}
+			}
+			if (lineStart < _length) {
+				lines.add(new String(_chunk, lineStart, _length - lineStart, _charset));
+			}
+			return lines;
+		}
+	}
+}
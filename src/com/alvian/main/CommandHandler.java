@@ -0,0 +1,27 @@
+package com.alvian.main;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This interface describes a command that TextBuddy can run. Handlers are 
+ * registered by verb in a CommandTable; the parameter is passed as its 
+ * position in the command line, see CommandParser. Malformed parameters 
+ * are reported by writing an error message to the output, not by throwing.
+ * @author Alvian Prasetya
+ */
+public interface CommandHandler {
+	
+	/**
+	 * This method runs the command and writes its feedback to the output.
+	 * @param textBuddy			The TextBuddy the command is run on.
+	 * @param commandLine		The whole command line.
+	 * @param parameterStart	The start of the parameter in the command line, 
+	 * 							or CommandParser.NO_PARAMETER.
+	 * @param output			The writer receiving the feedback.
+	 * @return					False if TextBuddy should stop taking commands.
+	 * @throws IOException		If the feedback cannot be written.
+	 */
+	public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+						   Writer output) throws IOException;
+}
@@ -0,0 +1,95 @@
+package com.alvian.main;
+
+/**
+ * This class reads the parts of a command line in place. A command line is 
+ * a verb, optionally followed by a space and a parameter; the parts are 
+ * returned as positions in the line rather than as new strings, so that 
+ * finding and running a command allocates nothing until a handler needs 
+ * the parameter as a String.
+ * @author Alvian Prasetya
+ */
+public class CommandParser {
+	
+	// This is returned as the parameter start of a command without one.
+	public static final int NO_PARAMETER = -1;
+	// This is returned by parseNumber for text that is not a valid number.
+	public static final long NOT_A_NUMBER = Long.MIN_VALUE;
+	
+	private static final char PARAMETER_SEPARATOR = ' ';
+	
+	/**
+	 * This method returns the position right after the verb.
+	 * @param commandLine	The command line.
+	 * @return				The end of the verb, exclusive.
+	 */
+	public static int getVerbEnd(String commandLine) {
+		int separatorPosition = commandLine.indexOf(PARAMETER_SEPARATOR);
+		return separatorPosition < 0 ? commandLine.length() : separatorPosition;
+	}
+	
+	/**
+	 * This method returns where the parameter of the command starts. The 
+	 * parameter may be empty if the line ends with the separator.
+	 * @param commandLine	The command line.
+	 * @param verbEnd		The end of the verb, as given by getVerbEnd.
+	 * @return				The start of the parameter, or NO_PARAMETER.
+	 */
+	public static int getParameterStart(String commandLine, int verbEnd) {
+		return verbEnd < commandLine.length() ? verbEnd + 1 : NO_PARAMETER;
+	}
+	
+	/**
+	 * This method tells whether the verb of the command line is the 
+	 * specified verb, ignoring case.
+	 * @param commandLine	The command line.
+	 * @param verbEnd		The end of the verb, as given by getVerbEnd.
+	 * @param verb			The verb to compare with.
+	 * @return				True if the verbs match.
+	 */
+	public static boolean isVerb(String commandLine, int verbEnd, String verb) {
+		return verbEnd == verb.length() && commandLine.regionMatches(true, 0, verb, 0, verbEnd);
+	}
+	
+	/**
+	 * This method returns the parameter of the command as a String.
+	 * @param commandLine		The command line.
+	 * @param parameterStart	The start of the parameter.
+	 * @return					The parameter, or null if there is none.
+	 */
+	public static String getParameter(String commandLine, int parameterStart) {
+		return parameterStart == NO_PARAMETER ? null : commandLine.substring(parameterStart);
+	}
+	
+	/**
+	 * This method reads a non-negative int from the text between the 
+	 * positions, ignoring spaces around it.
+	 * @param text		The text holding the number.
+	 * @param fromIndex	The start of the number, inclusive.
+	 * @param toIndex	The end of the number, exclusive.
+	 * @return			The number, or NOT_A_NUMBER if the text holds anything 
+	 * 					other than digits or the number does not fit an int.
+	 */
+	public static long parseNumber(String text, int fromIndex, int toIndex) {
+		while (fromIndex < toIndex && text.charAt(fromIndex) == PARAMETER_SEPARATOR) {
+			fromIndex++;
+		}
+		while (toIndex > fromIndex && text.charAt(toIndex - 1) == PARAMETER_SEPARATOR) {
+			toIndex--;
+		}
+		if (fromIndex == toIndex) {
+			return NOT_A_NUMBER;
+		}
+		long number = 0;
+		for (int i = fromIndex; i < toIndex; i++) {
+			char digit = text.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return NOT_A_NUMBER;
+			}
+			number = number * 10 + (digit - '0');
+			if (number > Integer.MAX_VALUE) {
+				return NOT_A_NUMBER;
+			}
+		}
+		return number;
+	}
+}
@@ -0,0 +1,57 @@
+package com.alvian.main;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class counts the runs of one command and how long they took.
+ * @author Alvian Prasetya
+ */
+public class CommandStats implements CommandStatsMBean {
+	
+	private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+	
+	private final String _verb;
+	private final LatencyHistogram _latencies = new LatencyHistogram();
+	
+	public CommandStats(String verb) {
+		_verb = verb;
+	}
+	
+	public String getVerb() {
+		return _verb;
+	}
+	
+	/**
+	 * This method records runs of the command that took the same time each.
+	 * @param nanos		The time one run took, in nanoseconds.
+	 * @param count		The number of runs.
+	 */
+	public void record(long nanos, int count) {
+		_latencies.record(nanos, count);
+	}
+	
+	@Override
+	public long getCount() {
+		return _latencies.getCount();
+	}
+	
+	@Override
+	public double getMeanMicros() {
+		return _latencies.getMean() / NANOS_PER_MICRO;
+	}
+	
+	@Override
+	public long getMedianMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(_latencies.getPercentile(50));
+	}
+	
+	@Override
+	public long getP99Micros() {
+		return TimeUnit.NANOSECONDS.toMicros(_latencies.getPercentile(99));
+	}
+	
+	@Override
+	public long getMaxMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(_latencies.getMax());
+	}
+}
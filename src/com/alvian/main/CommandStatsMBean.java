@@ -0,0 +1,20 @@
+package com.alvian.main;
+
+/**
+ * This interface exposes the statistics of one command through JMX, under 
+ * the name "com.alvian.textbuddy:type=Command,name=<verb>". Durations are 
+ * given in microseconds.
+ * @author Alvian Prasetya
+ */
+public interface CommandStatsMBean {
+	
+	long getCount();
+	
+	double getMeanMicros();
+	
+	long getMedianMicros();
+	
+	long getP99Micros();
+	
+	long getMaxMicros();
+}
@@ -0,0 +1,90 @@
+package com.alvian.main;
+
+import java.util.Arrays;
+
+/**
+ * This class maps the verbs of commands to their handlers. Verbs match 
+ * ignoring case, and are compared in place against the command line, so 
+ * that finding a handler allocates nothing. Registering a verb again 
+ * replaces its handler.
+ * @author Alvian Prasetya
+ */
+public class CommandTable {
+	
+	private static final int INITIAL_CAPACITY = 16;
+	
+	private String[] _verbs;
+	private CommandHandler[] _handlers;
+	private int _size;
+	
+	public CommandTable() {
+		_verbs = new String[INITIAL_CAPACITY];
+		_handlers = new CommandHandler[INITIAL_CAPACITY];
+		_size = 0;
+	}
+	
+	/**
+	 * This constructor copies the commands of another table, so that 
+	 * commands registered later are not shared.
+	 * @param table	The table to copy.
+	 */
+	public CommandTable(CommandTable table) {
+		_verbs = Arrays.copyOf(table._verbs, table._verbs.length);
+		_handlers = Arrays.copyOf(table._handlers, table._handlers.length);
+		_size = table._size;
+	}
+	
+	/**
+	 * This method registers the handler for the verb.
+	 * @param verb		The verb of the command, without spaces.
+	 * @param handler	The handler running the command.
+	 */
+	public void register(String verb, CommandHandler handler) {
+		if (verb.isEmpty() || CommandParser.getVerbEnd(verb) != verb.length()) {
+			throw new IllegalArgumentException("verb \"" + verb + "\" must be one word");
+		}
+		for (int i = 0; i < _size; i++) {
+			if (_verbs[i].equalsIgnoreCase(verb)) {
+				_handlers[i] = handler;
+				return;
+			}
+		}
+		if (_size == _verbs.length) {
+			_verbs = Arrays.copyOf(_verbs, _size * 2);
+			_handlers = Arrays.copyOf(_handlers, _size * 2);
+		}
+		_verbs[_size] = verb;
+		_handlers[_size] = handler;
+		_size++;
+	}
+	
+	/**
+	 * This method returns the position of the command in the table, so that 
+	 * its verb and handler are found with one pass over the table.
+	 * @param commandLine	The command line.
+	 * @param verbEnd		The end of the verb, as given by CommandParser.getVerbEnd.
+	 * @return				The position, or -1 if the verb is not registered.
+	 */
+	public int indexOf(String commandLine, int verbEnd) {
+		for (int i = 0; i < _size; i++) {
+			if (CommandParser.isVerb(commandLine, verbEnd, _verbs[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * This method returns the verb as it was registered, whatever case the 
+	 * command line used.
+	 * @param position	The position given by indexOf.
+	 * @return			The registered verb.
+	 */
+	public String getVerb(int position) {
+		return _verbs[position];
+	}
+	
+	public CommandHandler getHandler(int position) {
+		return _handlers[position];
+	}
+}
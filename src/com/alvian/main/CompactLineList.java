@@ -0,0 +1,454 @@
+package com.alvian.main;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * This class keeps lines as UTF-8 bytes in a few large arena segments 
+ * instead of one String object per line. Every line costs a long address 
+ * and an int length in two primitive arrays plus its bytes, where an 
+ * ArrayList of Strings costs a reference, a String and a byte array, so 
+ * tens of millions of lines fit in a few gigabytes of heap. With off-heap 
+ * segments the bytes are kept outside the heap altogether.
+ * A line is only turned back into a String when it is read. Sort permutes 
+ * the two arrays and compares ASCII lines on their bytes, and search 
+ * matches ASCII lines on their bytes through AsciiCase; lines with other 
+ * characters are decoded for both, so the results never differ from 
+ * those on an ArrayList of the same lines.
+ * Bytes are only ever appended to a segment, and a removed or replaced 
+ * line only leaves dead bytes behind. The arena is rewritten into fresh 
+ * segments once the dead bytes outweigh the live ones, so a copy taken 
+ * earlier keeps reading its own bytes while this list goes on changing.
+ * Any number of threads may read the list at the same time; changes must 
+ * not overlap with reads.
+ * @author Alvian Prasetya
+ */
+public class CompactLineList extends AbstractList<String> implements RandomAccess {
+	
+	private static final int FIRST_SEGMENT_SIZE = 64 * 1024;
+	// Segments grow up to this size; a longer line gets a segment of its own.
+	private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+	private static final int FIRST_CAPACITY = 16;
+	// This bit of a length marks a line with characters beyond ASCII.
+	private static final int NON_ASCII_FLAG = 0x80000000;
+	// The arena is rewritten once dead bytes pass this and the live bytes.
+	private static final long MIN_DEAD_BYTES_TO_COMPACT = 1024 * 1024;
+	// Ranges up to this length are sorted by insertion.
+	private static final int INSERTION_SORT_LIMIT = 32;
+	private static final boolean IS_BYTE_SEARCH_SUPPORTED = 
+			AsciiCase.isSupported(StandardCharsets.UTF_8);
+	
+	private final boolean _isOffHeap;
+	private ByteBuffer[] _segments;
+	private int _segmentCount;
+	private int _segmentUsed;
+	// Every address holds the segment of a line in its upper half and the 
+	// offset within the segment in its lower half.
+	private long[] _addresses;
+	private int[] _lengths;
+	private int _size;
+	private long _liveBytes;
+	private long _deadBytes;
+	
+	/**
+	 * This is the default constructor for CompactLineList object.
+	 * @param isOffHeap		True to keep the bytes of the lines outside the heap.
+	 */
+	public CompactLineList(boolean isOffHeap) {
+		_isOffHeap = isOffHeap;
+		clear();
+	}
+	
+	/**
+	 * This method returns a list of the same lines that does not change 
+	 * along with this one. The segments are shared, so only the addresses 
+	 * and lengths are copied.
+	 * @return	The copy of the list.
+	 */
+	public CompactLineList copy() {
+		return new CompactLineList(this);
+	}
+	
+	private CompactLineList(CompactLineList original) {
+		_isOffHeap = original._isOffHeap;
+		_segments = Arrays.copyOf(original._segments, original._segments.length);
+		_segmentCount = original._segmentCount;
+		// The copy must never append into a segment the original appends to.
+		_segmentUsed = Integer.MAX_VALUE;
+		_addresses = Arrays.copyOf(original._addresses, Math.max(original._size, FIRST_CAPACITY));
+		_lengths = Arrays.copyOf(original._lengths, Math.max(original._size, FIRST_CAPACITY));
+		_size = original._size;
+		_liveBytes = original._liveBytes;
+		_deadBytes = original._deadBytes;
+	}
+	
+	@Override
+	public int size() {
+		return _size;
+	}
+	
+	@Override
+	public String get(int index) {
+		checkIndex(index, _size);
+		ByteBuffer segment = _segments[getSegment(index)];
+		int offset = getOffset(index);
+		int length = getLength(index);
+		
+		if (segment.hasArray()) {
+			return new String(segment.array(), segment.arrayOffset() + offset, length, 
+							  StandardCharsets.UTF_8);
+		}
+		// A duplicate has its own position, so concurrent reads do not clash.
+		ByteBuffer line = segment.duplicate();
+		line.position(offset);
+		byte[] bytes = new byte[length];
+		line.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	public void add(int index, String line) {
+		checkIndex(index, _size + 1);
+		ensureCapacity(_size + 1);
+		System.arraycopy(_addresses, index, _addresses, index + 1, _size - index);
+		System.arraycopy(_lengths, index, _lengths, index + 1, _size - index);
+		_size++;
+		store(index, line);
+		modCount++;
+	}
+	
+	@Override
+	public String set(int index, String line) {
+		String previousLine = get(index);
+		_deadBytes += getLength(index);
+		_liveBytes -= getLength(index);
+		store(index, line);
+		compactIfWasteful();
+		return previousLine;
+	}
+	
+	@Override
+	public String remove(int index) {
+		String removedLine = get(index);
+		_deadBytes += getLength(index);
+		_liveBytes -= getLength(index);
+		System.arraycopy(_addresses, index + 1, _addresses, index, _size - index - 1);
+		System.arraycopy(_lengths, index + 1, _lengths, index, _size - index - 1);
+		_size--;
+		modCount++;
+		compactIfWasteful();
+		return removedLine;
+	}
+	
+	/**
+	 * This method removes every line and lets go of the segments, which 
+	 * copies of the list may still be reading.
+	 */
+	@Override
+	public void clear() {
+		_segments = new ByteBuffer[1];
+		_segments[0] = allocate(FIRST_SEGMENT_SIZE);
+		_segmentCount = 1;
+		_segmentUsed = 0;
+		_addresses = new long[FIRST_CAPACITY];
+		_lengths = new int[FIRST_CAPACITY];
+		_size = 0;
+		_liveBytes = 0;
+		_deadBytes = 0;
+		modCount++;
+	}
+	
+	/**
+	 * This method sorts the lines in place alphabetically ignoring case, 
+	 * keeping equal lines in their original order, exactly like LineSorter.
+	 * @return	For every new index, the index the line had before.
+	 */
+	public int[] sortWithOrder() {
+		return sortWithOrder(getSortedLength());
+	}
+	
+	/**
+	 * This method sorts the lines like sortWithOrder(), given that the lines 
+	 * before the sorted length are already in order, so that only the lines 
+	 * after it are sorted and then merged into them.
+	 * @param sortedLength	The number of leading lines already in order.
+	 * @return				For every new index, the index the line had before.
+	 */
+	public int[] sortWithOrder(int sortedLength) {
+		int[] order = new int[_size];
+		for (int i = 0; i < _size; i++) {
+			order[i] = i;
+		}
+		if (sortedLength >= _size) {
+			return order;
+		}
+		int[] tailOrder = Arrays.copyOfRange(order, sortedLength, _size);
+		mergeSort(tailOrder, tailOrder.clone(), 0, tailOrder.length);
+		
+		// Prefix lines up to the first tail line keep their position.
+		int low = 0;
+		int high = sortedLength;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(middle, tailOrder[0]) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		int prefixPosition = low;
+		int tailPosition = 0;
+		for (int i = low; i < _size; i++) {
+			// Taking the prefix line on ties keeps the sort stable.
+			if (tailPosition == tailOrder.length 
+				|| (prefixPosition < sortedLength 
+					&& compare(prefixPosition, tailOrder[tailPosition]) <= 0)) {
+				order[i] = prefixPosition++;
+			} else {
+				order[i] = tailOrder[tailPosition++];
+			}
+		}
+		
+		long[] sortedAddresses = new long[_addresses.length];
+		int[] sortedLengths = new int[_lengths.length];
+		for (int i = 0; i < _size; i++) {
+			sortedAddresses[i] = _addresses[order[i]];
+			sortedLengths[i] = _lengths[order[i]];
+		}
+		_addresses = sortedAddresses;
+		_lengths = sortedLengths;
+		modCount++;
+		return order;
+	}
+	
+	/**
+	 * This method returns the number of leading lines that are in order, 
+	 * comparing ASCII lines on their bytes.
+	 * @return	The length of the sorted prefix, which is the size if every 
+	 * 			line is in order.
+	 */
+	public int getSortedLength() {
+		for (int i = 1; i < _size; i++) {
+			if (compare(i - 1, i) > 0) {
+				return i;
+			}
+		}
+		return _size;
+	}
+	
+	/**
+	 * This method passes the lines containing the specified token to the 
+	 * visitor, in the order they are stored. Only the matching lines are 
+	 * decoded, unless they contain characters beyond ASCII.
+	 * @param tokenLowerCase	The lower-cased token to search for.
+	 * @param candidates		The ascending indices of the lines to check, 
+	 * 							or null to check every line.
+	 * @param visitor			The visitor to pass the matching lines to.
+	 * @throws IOException		If the visitor fails.
+	 */
+	public void search(String tokenLowerCase, IntList candidates, LineVisitor visitor) 
+			throws IOException {
+		byte[] tokenBytes = IS_BYTE_SEARCH_SUPPORTED ? AsciiCase.getBytes(tokenLowerCase) : null;
+		boolean isAsciiToken = tokenBytes != null;
+		int lineCount = candidates == null ? _size : candidates.size();
+		
+		for (int i = 0; i < lineCount; i++) {
+			int index = candidates == null ? i : candidates.get(i);
+			if (IS_BYTE_SEARCH_SUPPORTED && isAscii(index)) {
+				// An ASCII line cannot contain a token with other characters.
+				if (isAsciiToken && containsToken(index, tokenBytes) && !visitor.visit(index, get(index))) {
+					return;
+				}
+			} else {
+				String line = get(index);
+				if (line.toLowerCase().contains(tokenLowerCase) && !visitor.visit(index, line)) {
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * This method encodes the line into the arena and points the index at it.
+	 */
+	private void store(int index, String line) {
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer segment = reserve(bytes.length);
+		int offset = _segmentUsed;
+		// The segment is written through a duplicate so that copies reading 
+		// it never see its position move.
+		ByteBuffer target = segment.duplicate();
+		target.position(offset);
+		target.put(bytes);
+		_segmentUsed += bytes.length;
+		
+		_addresses[index] = ((long) (_segmentCount - 1) << 32) | offset;
+		_lengths[index] = bytes.length | (isAscii(bytes) ? 0 : NON_ASCII_FLAG);
+		_liveBytes += bytes.length;
+	}
+	
+	/**
+	 * This method makes room for the bytes at the end of the last segment, 
+	 * starting a new segment if they do not fit.
+	 * @return	The segment to write the bytes into.
+	 */
+	private ByteBuffer reserve(int byteCount) {
+		ByteBuffer segment = _segments[_segmentCount - 1];
+		if (_segmentUsed <= segment.capacity() - byteCount) {
+			return segment;
+		}
+		int nextSize = (int) Math.min((long) segment.capacity() * 2, MAX_SEGMENT_SIZE);
+		if (_segmentCount == _segments.length) {
+			_segments = Arrays.copyOf(_segments, _segmentCount * 2);
+		}
+		segment = allocate(Math.max(nextSize, byteCount));
+		_segments[_segmentCount++] = segment;
+		_segmentUsed = 0;
+		return segment;
+	}
+	
+	/**
+	 * This method rewrites the live lines into fresh segments once most of 
+	 * the arena is taken by removed lines.
+	 */
+	private void compactIfWasteful() {
+		if (_deadBytes < MIN_DEAD_BYTES_TO_COMPACT || _deadBytes <= _liveBytes) {
+			return;
+		}
+		CompactLineList compacted = new CompactLineList(_isOffHeap);
+		compacted.ensureCapacity(_size);
+		for (int i = 0; i < _size; i++) {
+			compacted.add(get(i));
+		}
+		_segments = compacted._segments;
+		_segmentCount = compacted._segmentCount;
+		_segmentUsed = compacted._segmentUsed;
+		_addresses = compacted._addresses;
+		_lengths = compacted._lengths;
+		_liveBytes = compacted._liveBytes;
+		_deadBytes = 0;
+	}
+	
+	private void ensureCapacity(int capacity) {
+		if (capacity > _addresses.length) {
+			int newCapacity = (int) Math.min(Math.max(capacity, _addresses.length * 2L), 
+											 Integer.MAX_VALUE - 8);
+			_addresses = Arrays.copyOf(_addresses, newCapacity);
+			_lengths = Arrays.copyOf(_lengths, newCapacity);
+		}
+	}
+	
+	private ByteBuffer allocate(int size) {
+		return _isOffHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+	}
+	
+	/**
+	 * This method sorts the indices between the positions of the order, 
+	 * using the same indices in the buffer as scratch space.
+	 */
+	private void mergeSort(int[] order, int[] buffer, int fromIndex, int toIndex) {
+		if (toIndex - fromIndex <= INSERTION_SORT_LIMIT) {
+			insertionSort(order, fromIndex, toIndex);
+			return;
+		}
+		int middle = (fromIndex + toIndex) >>> 1;
+		mergeSort(buffer, order, fromIndex, middle);
+		mergeSort(buffer, order, middle, toIndex);
+		
+		if (compare(buffer[middle - 1], buffer[middle]) <= 0) {
+			// The halves are already in order.
+			System.arraycopy(buffer, fromIndex, order, fromIndex, toIndex - fromIndex);
+			return;
+		}
+		int left = fromIndex;
+		int right = middle;
+		for (int i = fromIndex; i < toIndex; i++) {
+			// Taking the left line on ties keeps the sort stable.
+			if (right >= toIndex || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+				order[i] = buffer[left++];
+			} else {
+				order[i] = buffer[right++];
+			}
+		}
+	}
+	
+	private void insertionSort(int[] order, int fromIndex, int toIndex) {
+		for (int i = fromIndex + 1; i < toIndex; i++) {
+			int current = order[i];
+			int j = i - 1;
+			while (j >= fromIndex && compare(order[j], current) > 0) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = current;
+		}
+	}
+	
+	/**
+	 * This method compares two lines like String.CASE_INSENSITIVE_ORDER, 
+	 * on their bytes if both are ASCII and on their Strings otherwise.
+	 */
+	private int compare(int first, int second) {
+		if (!isAscii(first) || !isAscii(second)) {
+			return String.CASE_INSENSITIVE_ORDER.compare(get(first), get(second));
+		}
+		ByteBuffer firstSegment = _segments[getSegment(first)];
+		ByteBuffer secondSegment = _segments[getSegment(second)];
+		if (firstSegment.hasArray() && secondSegment.hasArray()) {
+			// Heap segments are compared on their arrays, which is much faster.
+			return AsciiCase.compare(firstSegment.array(), 
+									 firstSegment.arrayOffset() + getOffset(first), getLength(first), 
+									 secondSegment.array(), 
+									 secondSegment.arrayOffset() + getOffset(second), 
+									 getLength(second));
+		}
+		return AsciiCase.compare(firstSegment, getOffset(first), getLength(first), 
+								 secondSegment, getOffset(second), getLength(second));
+	}
+	
+	private boolean containsToken(int index, byte[] tokenBytes) {
+		ByteBuffer segment = _segments[getSegment(index)];
+		int offset = getOffset(index);
+		if (segment.hasArray()) {
+			int start = segment.arrayOffset() + offset;
+			return AsciiCase.contains(segment.array(), start, start + getLength(index), tokenBytes);
+		}
+		return AsciiCase.contains(segment, offset, offset + getLength(index), tokenBytes);
+	}
+	
+	private int getSegment(int index) {
+		return (int) (_addresses[index] >>> 32);
+	}
+	
+	private int getOffset(int index) {
+		return (int) _addresses[index];
+	}
+	
+	private int getLength(int index) {
+		return _lengths[index] & ~NON_ASCII_FLAG;
+	}
+	
+	private boolean isAscii(int index) {
+		return (_lengths[index] & NON_ASCII_FLAG) == 0;
+	}
+	
+	private static boolean isAscii(byte[] bytes) {
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static void checkIndex(int index, int limit) {
+		if (index < 0 || index >= limit) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (limit));
+		}
+	}
+}
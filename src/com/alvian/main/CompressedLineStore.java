@@ -0,0 +1,880 @@
+package com.alvian.main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class works on a compressed storage file, for large and repetitive 
+ * files that should take less disk and less reading. The lines are UTF-8 
+ * and grouped into blocks of a fixed number of lines, each compressed on 
+ * its own with Deflater, followed by an open tail block kept as plain 
+ * bytes, and a footer listing where every block starts:
+ * 
+ * "TBZB" version | block ... | tail lines | footer | footer length "TBZB"
+ * 
+ * Only the footer and the tail are read when the store is created, so 
+ * display decompresses just the blocks holding the wanted lines. Added 
+ * lines are appended to the tail in place, and a full tail is compressed 
+ * into a block. Insert and delete decompress only the blocks gaining or 
+ * losing a line and copy every other block as it is, sort copies the 
+ * blocks before the first line it moves and leaves sorted files alone, 
+ * and clear rewrites all blocks; all of them replace the file through a 
+ * temporary file, so it always holds either the old or the new lines. An add cut short by a 
+ * crash may leave the footer damaged, which is reported when the file is 
+ * next opened. With a parallelism above 1, search decompresses blocks on 
+ * that many threads and joins the results in order.
+ * Plain text storage files are not affected; this store is used for files 
+ * named "*.tbz" and with "--store=compressed".
+ * All methods are synchronized on the store.
+ * @author Alvian Prasetya
+ */
+public class CompressedLineStore implements LineStore {
+	
+	// Storage files with this extension always use this store.
+	public static final String FILE_EXTENSION = ".tbz";
+	// This identifies the file format, "TBZB" followed by its version.
+	private static final int FILE_MAGIC = 0x54425A42;
+	private static final int FILE_VERSION = 1;
+	private static final int HEADER_LENGTH = 8;
+	private static final int TRAILER_LENGTH = 8;
+	// Every block is listed with its offset, stored and raw length and line count.
+	private static final int BLOCK_ENTRY_LENGTH = 20;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte LINE_FEED = '\n';
+	private static final String SEARCH_THREAD_NAME = "TextBuddy-block-search";
+	private static final boolean IS_BYTE_SEARCH_SUPPORTED = 
+			AsciiCase.isSupported(StandardCharsets.UTF_8);
+	
+	private final File _file;
+	private final int _blockLines;
+	private final ExecutorService _searchPool;
+	private ArrayList<Block> _blocks = new ArrayList<Block>();
+	// This holds the index of the first line of every block.
+	private IntList _blockStarts = new IntList();
+	private int _blockLineCount = 0;
+	private ArrayList<String> _tailLines = new ArrayList<String>();
+	private long _tailOffset = HEADER_LENGTH;
+	private long _tailLength = 0;
+	private FileChannel _channel;
+	// Display reads a block at a time, so the last block read is kept.
+	private int _cachedBlock = -1;
+	private String[] _cachedLines;
+	
+	/**
+	 * This is the default constructor for CompressedLineStore object. Only 
+	 * the footer and the tail of the storage file are read.
+	 * @param file		The storage file to work on, which may be empty.
+	 * @param options	The options of the store.
+	 * @throws IOException	If the file is not a compressed storage file.
+	 */
+	public CompressedLineStore(File file, TextBuddyOptions options) throws IOException {
+		_file = file;
+		_blockLines = options.getBlockLines();
+		if (options.getParallelism() > 1) {
+			_searchPool = Executors.newFixedThreadPool(options.getParallelism(), 
+													   new DaemonThreadFactory(SEARCH_THREAD_NAME));
+		} else {
+			_searchPool = null;
+		}
+		if (file.length() > 0) {
+			readFooter();
+		}
+	}
+	
+	/**
+	 * This method tells whether the name of the file asks for this store.
+	 * @param file	The storage file.
+	 * @return		True if the file name ends with FILE_EXTENSION.
+	 */
+	public static boolean isCompressedName(File file) {
+		String name = file.getName();
+		return name.regionMatches(true, name.length() - FILE_EXTENSION.length(), 
+								  FILE_EXTENSION, 0, FILE_EXTENSION.length());
+	}
+	
+	@Override
+	public synchronized int size() {
+		return _blockLineCount + _tailLines.size();
+	}
+	
+	@Override
+	public synchronized int countLines(int limit) {
+		return Math.min(size(), limit);
+	}
+	
+	@Override
+	public synchronized boolean isEmpty() {
+		return size() == 0;
+	}
+	
+	@Override
+	public synchronized String get(int index) throws IOException {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("line " + index + " does not exist");
+		} else if (index >= _blockLineCount) {
+			return _tailLines.get(index - _blockLineCount);
+		}
+		int blockIndex = findBlock(index);
+		return getBlockLines(blockIndex)[index - _blockStarts.get(blockIndex)];
+	}
+	
+	/**
+	 * This method passes the lines in the range to the visitor, 
+	 * decompressing only the blocks the range covers.
+	 * @param fromIndex		The index of the first line to visit.
+	 * @param toIndex		The index after the last line to visit.
+	 * @param visitor		The visitor to pass the lines to.
+	 * @throws IOException	If the blocks cannot be read or the visitor fails.
+	 */
+	@Override
+	public synchronized void scan(int fromIndex, int toIndex, LineVisitor visitor) 
+			throws IOException {
+		int lastIndex = Math.min(toIndex, size());
+		int index = Math.max(fromIndex, 0);
+		
+		while (index < lastIndex && index < _blockLineCount) {
+			int blockIndex = findBlock(index);
+			String[] lines = getBlockLines(blockIndex);
+			int blockStart = _blockStarts.get(blockIndex);
+			for (; index < lastIndex && index - blockStart < lines.length; index++) {
+				if (!visitor.visit(index, lines[index - blockStart])) {
+					return;
+				}
+			}
+		}
+		for (; index < lastIndex; index++) {
+			if (!visitor.visit(index, _tailLines.get(index - _blockLineCount))) {
+				return;
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void add(String line) throws IOException {
+		ArrayList<String> lines = new ArrayList<String>(1);
+		lines.add(line);
+		addAll(lines);
+	}
+	
+	/**
+	 * This method appends the lines to the tail with one write, compressing 
+	 * the tail into a block whenever it is full.
+	 * @param lines		The lines to add.
+	 * @throws IOException	If the lines cannot be written.
+	 */
+	@Override
+	public synchronized void addAll(List<String> lines) throws IOException {
+		try {
+			FileChannel channel = getChannel();
+			if (channel.size() == 0) {
+				writeFully(channel, encodeHeader(), 0);
+			}
+			ByteArrayOutputStream tailBytes = new ByteArrayOutputStream();
+			long tailBytesOffset = _tailOffset + _tailLength;
+			
+			for (int i = 0; i < lines.size(); i++) {
+				if (_tailLines.size() >= _blockLines) {
+					sealTail(channel);
+					tailBytes.reset();
+					tailBytesOffset = _tailOffset;
+				}
+				byte[] lineBytes = encodeLine(lines.get(i));
+				tailBytes.write(lineBytes, 0, lineBytes.length);
+				_tailLines.add(lines.get(i));
+				_tailLength += lineBytes.length;
+			}
+			byte[] footer = encodeFooter(_blocks, _tailLines.size());
+			tailBytes.write(footer, 0, footer.length);
+			channel.truncate(writeFully(channel, tailBytes.toByteArray(), tailBytesOffset));
+		} catch (IOException exceptionMessage) {
+			// The lines in memory are ahead of the file, read them back.
+			try {
+				reload();
+			} catch (IOException reloadException) {
+				exceptionMessage.addSuppressed(reloadException);
+			}
+			throw exceptionMessage;
+		}
+	}
+	
+	@Override
+	public synchronized String remove(int index) throws IOException {
+		return removeAll(new int[] { index }).get(0);
+	}
+	
+	/**
+	 * This method removes all the lines with a single rewrite of the file, 
+	 * in which only the blocks losing a line are decompressed.
+	 * @param indices	The indices of the lines to remove, in order.
+	 * @return			The lines that were removed, in the same order.
+	 * @throws IOException	If the file cannot be rewritten.
+	 */
+	@Override
+	public synchronized ArrayList<String> removeAll(int[] indices) throws IOException {
+		IntList originalIndices = DirectLineStore.toOriginalIndices(indices, size());
+		IntList sortedOriginalIndices = new IntList(indices.length);
+		for (int i = 0; i < originalIndices.size(); i++) {
+			sortedOriginalIndices.add(originalIndices.get(i));
+		}
+		sortedOriginalIndices.sort();
+		
+		HashMap<Integer, String> removedLineByIndex = new HashMap<Integer, String>();
+		int nextPosition = 0;
+		// Initialize the required writer objects to rewrite the storage file.
+		try (BlockFileWriter writer = new BlockFileWriter()) {
+			for (int i = 0; i < _blocks.size(); i++) {
+				int blockStart = _blockStarts.get(i);
+				int blockEnd = blockStart + _blocks.get(i)._lineCount;
+				if (nextPosition == sortedOriginalIndices.size() 
+					|| sortedOriginalIndices.get(nextPosition) >= blockEnd) {
+					writer.copyBlock(_blocks.get(i));
+					continue;
+				}
+				String[] lines = getBlockLines(i);
+				ArrayList<String> keptLines = new ArrayList<String>(lines.length);
+				for (int j = 0; j < lines.length; j++) {
+					if (nextPosition < sortedOriginalIndices.size() 
+						&& sortedOriginalIndices.get(nextPosition) == blockStart + j) {
+						removedLineByIndex.put(blockStart + j, lines[j]);
+						nextPosition++;
+					} else {
+						keptLines.add(lines[j]);
+					}
+				}
+				writer.writeBlock(keptLines);
+			}
+			ArrayList<String> keptTailLines = new ArrayList<String>(_tailLines.size());
+			for (int i = 0; i < _tailLines.size(); i++) {
+				if (nextPosition < sortedOriginalIndices.size() 
+					&& sortedOriginalIndices.get(nextPosition) == _blockLineCount + i) {
+					removedLineByIndex.put(_blockLineCount + i, _tailLines.get(i));
+					nextPosition++;
+				} else {
+					keptTailLines.add(_tailLines.get(i));
+				}
+			}
+			writer.commit(keptTailLines);
+		}
+		
+		ArrayList<String> removedLines = new ArrayList<String>(indices.length);
+		for (int i = 0; i < indices.length; i++) {
+			removedLines.add(removedLineByIndex.get(originalIndices.get(i)));
+		}
+		return removedLines;
+	}
+	
+	/**
+	 * This method inserts the line with a single rewrite of the file, in 
+	 * which only the block gaining the line is decompressed.
+	 * @param index		The index the line will have.
+	 * @param line		The line to insert.
+	 * @throws IOException	If the file cannot be rewritten.
+	 */
+	@Override
+	public synchronized void insert(int index, String line) throws IOException {
+		if (index < 0 || index > size()) {
+			throw new IndexOutOfBoundsException("line " + index + " cannot be inserted");
+		} else if (index == size()) {
+			add(line);
+			return;
+		}
+		// Initialize the required writer objects to rewrite the storage file.
+		try (BlockFileWriter writer = new BlockFileWriter()) {
+			for (int i = 0; i < _blocks.size(); i++) {
+				int blockStart = _blockStarts.get(i);
+				if (index < blockStart || index >= blockStart + _blocks.get(i)._lineCount) {
+					writer.copyBlock(_blocks.get(i));
+					continue;
+				}
+				ArrayList<String> blockLines = new ArrayList<String>(_blocks.get(i)._lineCount + 1);
+				Collections.addAll(blockLines, getBlockLines(i));
+				blockLines.add(index - blockStart, line);
+				writer.writeBlock(blockLines);
+			}
+			ArrayList<String> tailLines = new ArrayList<String>(_tailLines);
+			if (index >= _blockLineCount) {
+				tailLines.add(index - _blockLineCount, line);
+			}
+			writer.commit(tailLines);
+		}
+	}
+	
+	/**
+	 * This method sorts the lines in memory and rewrites the blocks from 
+	 * the one holding the first line that moved, copying the blocks before 
+	 * it. A file that is already sorted is not rewritten.
+	 * @return	True if any line moved.
+	 * @throws IOException	If the file cannot be rewritten.
+	 */
+	@Override
+	public synchronized boolean sort() throws IOException {
+		final ArrayList<String> lines = new ArrayList<String>(size());
+		scan(0, Integer.MAX_VALUE, new LineVisitor() {
+			@Override
+			public boolean visit(int index, String line) {
+				lines.add(line);
+				return true;
+			}
+		});
+		int sortedLength = LineSorter.getSortedLength(lines);
+		if (sortedLength == lines.size()) {
+			return false;
+		}
+		int[] order = LineSorter.sortWithOrder(lines, sortedLength);
+		int firstMovedIndex = 0;
+		while (order[firstMovedIndex] == firstMovedIndex) {
+			firstMovedIndex++;
+		}
+		rewrite(lines, firstMovedIndex);
+		return true;
+	}
+	
+	@Override
+	public synchronized void clear() throws IOException {
+		rewrite(new ArrayList<String>());
+	}
+	
+	/**
+	 * This method passes the lines containing the specified token, ignoring 
+	 * case, to the visitor in the order they are stored. Blocks are 
+	 * decompressed on the search threads if there are any, and ASCII lines 
+	 * are matched on their bytes so that only the matching lines are 
+	 * decoded. The matches are passed one block at a time.
+	 * @param searchToken	The substring to search for.
+	 * @param visitor		The visitor to pass the matching lines to.
+	 * @return				The number of lines passed to the visitor.
+	 * @throws IOException	If the blocks cannot be read or the visitor fails.
+	 */
+	@Override
+	public synchronized int search(String searchToken, LineVisitor visitor) throws IOException {
+		final String searchTokenLowerCase = searchToken.toLowerCase();
+		final FileChannel channel = getChannel();
+		SearchMatches matches = new SearchMatches(visitor);
+		
+		Metrics.recordLinesScanned(size());
+		if (_searchPool != null && _blocks.size() > 1) {
+			ArrayList<Future<ArrayList<String>>> blockResults = 
+					new ArrayList<Future<ArrayList<String>>>(_blocks.size());
+			for (int i = 0; i < _blocks.size(); i++) {
+				final Block block = _blocks.get(i);
+				blockResults.add(_searchPool.submit(new Callable<ArrayList<String>>() {
+					@Override
+					public ArrayList<String> call() throws IOException {
+						return searchBlock(channel, block, searchTokenLowerCase);
+					}
+				}));
+			}
+			for (int i = 0; i < blockResults.size(); i++) {
+				if (!matches.addAll(getResult(blockResults.get(i)))) {
+					return matches.getCount();
+				}
+			}
+		} else {
+			for (int i = 0; i < _blocks.size(); i++) {
+				if (!matches.addAll(searchBlock(channel, _blocks.get(i), searchTokenLowerCase))) {
+					return matches.getCount();
+				}
+			}
+		}
+		for (int i = 0; i < _tailLines.size(); i++) {
+			if (_tailLines.get(i).toLowerCase().contains(searchTokenLowerCase) 
+				&& !matches.add(_tailLines.get(i))) {
+				break;
+			}
+		}
+		return matches.getCount();
+	}
+	
+	@Override
+	public void commit() {
+		// Every change is written before the method making it returns.
+	}
+	
+	/**
+	 * This method closes the storage file and stops the search threads.
+	 * @throws IOException	If the storage file cannot be closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (_searchPool != null) {
+			_searchPool.shutdown();
+		}
+		closeChannel();
+	}
+	
+	private void reload() throws IOException {
+		closeChannel();
+		setBlocks(new ArrayList<Block>(), HEADER_LENGTH);
+		if (_file.length() > 0) {
+			readFooter();
+		}
+	}
+	
+	private void readFooter() throws IOException {
+		FileChannel channel = getChannel();
+		long fileLength = channel.size();
+		if (fileLength < HEADER_LENGTH + TRAILER_LENGTH) {
+			throw new IOException(_file.getName() + " is not a compressed storage file");
+		}
+		ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+		if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION) {
+			throw new IOException(_file.getName() + " is not a compressed storage file");
+		}
+		ByteBuffer trailer = readFully(channel, fileLength - TRAILER_LENGTH, TRAILER_LENGTH);
+		int footerLength = trailer.getInt();
+		if (trailer.getInt() != FILE_MAGIC || footerLength < 8 
+			|| footerLength > fileLength - HEADER_LENGTH - TRAILER_LENGTH) {
+			throw new IOException(_file.getName() + " is damaged, its footer cannot be found");
+		}
+		long footerOffset = fileLength - TRAILER_LENGTH - footerLength;
+		ByteBuffer footer = readFully(channel, footerOffset, footerLength);
+		int blockCount = footer.getInt();
+		if (blockCount < 0 || footerLength != 8 + (long) blockCount * BLOCK_ENTRY_LENGTH) {
+			throw new IOException(_file.getName() + " is damaged, its footer is invalid");
+		}
+		ArrayList<Block> blocks = new ArrayList<Block>(blockCount);
+		long tailOffset = HEADER_LENGTH;
+		for (int i = 0; i < blockCount; i++) {
+			Block block = new Block(footer.getLong(), footer.getInt(), footer.getInt(), footer.getInt());
+			// Blocks follow each other without gaps.
+			if (block._offset != tailOffset || block._storedLength < 0 || block._rawLength < 0 
+				|| block._lineCount < 0) {
+				throw new IOException(_file.getName() + " is damaged, its footer is invalid");
+			}
+			blocks.add(block);
+			tailOffset = block.getEnd();
+		}
+		int tailLineCount = footer.getInt();
+		if (tailOffset > footerOffset || footerOffset - tailOffset > Integer.MAX_VALUE 
+			|| tailLineCount < 0) {
+			throw new IOException(_file.getName() + " is damaged, its footer is invalid");
+		}
+		ByteBuffer tail = readFully(channel, tailOffset, (int) (footerOffset - tailOffset));
+		String[] tailLines = decodeLines(tail.array(), tailLineCount);
+		
+		setBlocks(blocks, tailOffset);
+		for (int i = 0; i < tailLines.length; i++) {
+			_tailLines.add(tailLines[i]);
+		}
+		_tailLength = footerOffset - tailOffset;
+	}
+	
+	/**
+	 * This method compresses the full tail into a block where the tail 
+	 * starts, leaving an empty tail after it.
+	 */
+	private void sealTail(FileChannel channel) throws IOException {
+		byte[] rawBytes = encodeLines(_tailLines);
+		byte[] storedBytes = compress(rawBytes);
+		writeFully(channel, storedBytes, _tailOffset);
+		_blocks.add(new Block(_tailOffset, storedBytes.length, rawBytes.length, _tailLines.size()));
+		_blockStarts.add(_blockLineCount);
+		_blockLineCount += _tailLines.size();
+		_tailOffset += storedBytes.length;
+		_tailLength = 0;
+		_tailLines.clear();
+	}
+	
+	/**
+	 * This method replaces the file with the specified lines in full blocks 
+	 * and a tail holding the lines left over.
+	 */
+	private void rewrite(List<String> lines) throws IOException {
+		rewrite(lines, 0);
+	}
+	
+	/**
+	 * This method replaces the file with the specified lines, copying the 
+	 * blocks that end before the first changed index as they are.
+	 */
+	private void rewrite(List<String> lines, int firstChangedIndex) throws IOException {
+		// Initialize the required writer objects to rewrite the storage file.
+		try (BlockFileWriter writer = new BlockFileWriter()) {
+			int blockStart = 0;
+			for (int i = 0; i < _blocks.size(); i++) {
+				if (blockStart + _blocks.get(i)._lineCount > firstChangedIndex) {
+					break;
+				}
+				writer.copyBlock(_blocks.get(i));
+				blockStart += _blocks.get(i)._lineCount;
+			}
+			int tailStart = lines.size() - (lines.size() - blockStart) % _blockLines;
+			for (int i = blockStart; i < tailStart; i += _blockLines) {
+				writer.writeBlock(lines.subList(i, i + _blockLines));
+			}
+			writer.commit(lines.subList(tailStart, lines.size()));
+		}
+	}
+	
+	private void setBlocks(ArrayList<Block> blocks, long tailOffset) {
+		_blocks = blocks;
+		_blockStarts = new IntList(blocks.size());
+		_blockLineCount = 0;
+		for (int i = 0; i < blocks.size(); i++) {
+			_blockStarts.add(_blockLineCount);
+			_blockLineCount += blocks.get(i)._lineCount;
+		}
+		_tailOffset = tailOffset;
+		_tailLength = 0;
+		_tailLines = new ArrayList<String>();
+		_cachedBlock = -1;
+		_cachedLines = null;
+	}
+	
+	/**
+	 * This method returns the index of the block holding the line.
+	 */
+	private int findBlock(int index) {
+		int low = 0;
+		int high = _blockStarts.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (_blockStarts.get(middle) <= index) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+	
+	private String[] getBlockLines(int blockIndex) throws IOException {
+		if (blockIndex != _cachedBlock) {
+			Block block = _blocks.get(blockIndex);
+			_cachedLines = decodeLines(readBlock(getChannel(), block), block._lineCount);
+			_cachedBlock = blockIndex;
+		}
+		return _cachedLines;
+	}
+	
+	/**
+	 * This method reads and decompresses a block. It only uses positional 
+	 * reads, so blocks can be read by several search threads at once.
+	 */
+	private byte[] readBlock(FileChannel channel, Block block) throws IOException {
+		ByteBuffer storedBytes = readFully(channel, block._offset, block._storedLength);
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(storedBytes.array());
+			byte[] rawBytes = new byte[block._rawLength];
+			int rawLength = 0;
+			while (rawLength < rawBytes.length && !inflater.finished()) {
+				int inflatedLength = inflater.inflate(rawBytes, rawLength, rawBytes.length - rawLength);
+				if (inflatedLength == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				rawLength += inflatedLength;
+			}
+			if (rawLength != rawBytes.length) {
+				throw new IOException(_file.getName() + " is damaged, a block is cut short");
+			}
+			return rawBytes;
+		} catch (DataFormatException exceptionMessage) {
+			throw new IOException(_file.getName() + " is damaged, a block cannot be decompressed");
+		} finally {
+			inflater.end();
+		}
+	}
+	
+	private ArrayList<String> searchBlock(FileChannel channel, Block block, 
+										  String searchTokenLowerCase) throws IOException {
+		byte[] rawBytes = readBlock(channel, block);
+		byte[] tokenBytes = IS_BYTE_SEARCH_SUPPORTED ? AsciiCase.getBytes(searchTokenLowerCase) : null;
+		ArrayList<String> searchResult = new ArrayList<String>();
+		int lineStart = 0;
+		boolean isAscii = true;
+		
+		for (int i = 0; i < rawBytes.length; i++) {
+			if (rawBytes[i] < 0) {
+				isAscii = false;
+			} else if (rawBytes[i] == LINE_FEED) {
+				if (IS_BYTE_SEARCH_SUPPORTED && isAscii) {
+					// An ASCII line cannot contain a token with other characters.
+					if (tokenBytes != null && AsciiCase.contains(rawBytes, lineStart, i, tokenBytes)) {
+						searchResult.add(decode(rawBytes, lineStart, i));
+					}
+				} else {
+					String line = decode(rawBytes, lineStart, i);
+					if (line.toLowerCase().contains(searchTokenLowerCase)) {
+						searchResult.add(line);
+					}
+				}
+				lineStart = i + 1;
+				isAscii = true;
+			}
+		}
+		return searchResult;
+	}
+	
+	private static byte[] encodeFooter(ArrayList<Block> blocks, int tailLineCount) {
+		ByteBuffer footer = ByteBuffer.allocate(8 + blocks.size() * BLOCK_ENTRY_LENGTH + TRAILER_LENGTH);
+		footer.putInt(blocks.size());
+		for (int i = 0; i < blocks.size(); i++) {
+			Block block = blocks.get(i);
+			footer.putLong(block._offset);
+			footer.putInt(block._storedLength);
+			footer.putInt(block._rawLength);
+			footer.putInt(block._lineCount);
+		}
+		footer.putInt(tailLineCount);
+		footer.putInt(footer.position());
+		footer.putInt(FILE_MAGIC);
+		return footer.array();
+	}
+	
+	private FileChannel getChannel() throws IOException {
+		if (_channel == null) {
+			_channel = FileChannel.open(_file.toPath(), StandardOpenOption.CREATE, 
+										StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		return _channel;
+	}
+	
+	/**
+	 * This method closes the channel before the storage file is replaced, 
+	 * as some platforms do not allow replacing an open file.
+	 */
+	private void closeChannel() throws IOException {
+		if (_channel != null) {
+			_channel.close();
+			_channel = null;
+		}
+	}
+	
+	private static byte[] encodeHeader() {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.putInt(FILE_MAGIC);
+		header.putInt(FILE_VERSION);
+		return header.array();
+	}
+	
+	private static byte[] encodeLine(String line) {
+		return (line + (char) LINE_FEED).getBytes(StandardCharsets.UTF_8);
+	}
+	
+	private static byte[] encodeLines(List<String> lines) {
+		ByteArrayOutputStream rawBytes = new ByteArrayOutputStream();
+		for (int i = 0; i < lines.size(); i++) {
+			byte[] lineBytes = encodeLine(lines.get(i));
+			rawBytes.write(lineBytes, 0, lineBytes.length);
+		}
+		return rawBytes.toByteArray();
+	}
+	
+	/**
+	 * This method splits bytes holding lines that each end with a line 
+	 * feed into the decoded lines.
+	 */
+	private String[] decodeLines(byte[] rawBytes, int lineCount) throws IOException {
+		String[] lines = new String[lineCount];
+		int lineStart = 0;
+		int lineIndex = 0;
+		for (int i = 0; i < rawBytes.length; i++) {
+			if (rawBytes[i] == LINE_FEED) {
+				if (lineIndex == lineCount) {
+					break;
+				}
+				lines[lineIndex++] = decode(rawBytes, lineStart, i);
+				lineStart = i + 1;
+			}
+		}
+		if (lineIndex != lineCount || lineStart != rawBytes.length) {
+			throw new IOException(_file.getName() + " is damaged, a block has the wrong lines");
+		}
+		return lines;
+	}
+	
+	private static String decode(byte[] rawBytes, int start, int end) {
+		return new String(rawBytes, start, end - start, StandardCharsets.UTF_8);
+	}
+	
+	private static byte[] compress(byte[] rawBytes) {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(rawBytes);
+			deflater.finish();
+			ByteArrayOutputStream storedBytes = new ByteArrayOutputStream(rawBytes.length / 4 + 64);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (!deflater.finished()) {
+				int deflatedLength = deflater.deflate(buffer);
+				storedBytes.write(buffer, 0, deflatedLength);
+			}
+			return storedBytes.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) 
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("unexpected end of file at offset " + position);
+			}
+		}
+		Metrics.recordBytesRead(length);
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * @return	The position after the written bytes.
+	 */
+	private static long writeFully(FileChannel channel, byte[] bytes, long position) 
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+		Metrics.recordBytesWritten(bytes.length);
+		return position + bytes.length;
+	}
+	
+	private static ArrayList<String> getResult(Future<ArrayList<String>> blockResult) 
+			throws IOException {
+		try {
+			return blockResult.get();
+		} catch (ExecutionException exceptionMessage) {
+			throw exceptionMessage.getCause() instanceof IOException 
+				  ? (IOException) exceptionMessage.getCause() 
+				  : new IOException(exceptionMessage.getCause());
+		} catch (InterruptedException exceptionMessage) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while searching");
+		}
+	}
+	
+	/**
+	 * This class describes where a compressed block is in the file.
+	 */
+	private static class Block {
+		
+		final long _offset;
+		final int _storedLength;
+		final int _rawLength;
+		final int _lineCount;
+		
+		Block(long offset, int storedLength, int rawLength, int lineCount) {
+			_offset = offset;
+			_storedLength = storedLength;
+			_rawLength = rawLength;
+			_lineCount = lineCount;
+		}
+		
+		long getEnd() {
+			return _offset + _storedLength;
+		}
+	}
+	
+	/**
+	 * This class writes a new storage file into a temporary file next to 
+	 * it, which commit moves over the storage file and loads into the store.
+	 */
+	private class BlockFileWriter implements Closeable {
+		
+		private final Path _temporaryFile;
+		private final FileChannel _output;
+		private final ArrayList<Block> _writtenBlocks = new ArrayList<Block>();
+		private long _position = HEADER_LENGTH;
+		private boolean _isClosed = false;
+		
+		BlockFileWriter() throws IOException {
+			Path target = _file.toPath().toAbsolutePath();
+			_temporaryFile = Files.createTempFile(target.getParent(), 
+												  target.getFileName() + ".", ".tmp");
+			_output = FileChannel.open(_temporaryFile, StandardOpenOption.WRITE);
+			writeFully(_output, encodeHeader(), 0);
+		}
+		
+		/**
+		 * This method compresses the lines into a new block, unless there 
+		 * are none.
+		 */
+		void writeBlock(List<String> lines) throws IOException {
+			if (lines.isEmpty()) {
+				return;
+			}
+			byte[] rawBytes = encodeLines(lines);
+			byte[] storedBytes = compress(rawBytes);
+			_writtenBlocks.add(new Block(_position, storedBytes.length, rawBytes.length, lines.size()));
+			_position = writeFully(_output, storedBytes, _position);
+		}
+		
+		/**
+		 * This method copies a block of the current file without 
+		 * decompressing it.
+		 */
+		void copyBlock(Block block) throws IOException {
+			FileChannel input = getChannel();
+			long copiedLength = 0;
+			while (copiedLength < block._storedLength) {
+				long transferredLength = input.transferTo(block._offset + copiedLength, 
+						block._storedLength - copiedLength, _output.position(_position + copiedLength));
+				if (transferredLength <= 0) {
+					throw new IOException("unexpected end of file at offset " + block._offset);
+				}
+				copiedLength += transferredLength;
+			}
+			Metrics.recordBytesRead(copiedLength);
+			Metrics.recordBytesWritten(copiedLength);
+			_writtenBlocks.add(new Block(_position, block._storedLength, block._rawLength, 
+										 block._lineCount));
+			_position += block._storedLength;
+		}
+		
+		/**
+		 * This method writes the tail and the footer, forces the file to 
+		 * disk and moves it over the storage file.
+		 */
+		void commit(List<String> tailLines) throws IOException {
+			long tailOffset = _position;
+			byte[] tailBytes = encodeLines(tailLines);
+			_position = writeFully(_output, tailBytes, _position);
+			writeFully(_output, encodeFooter(_writtenBlocks, tailLines.size()), _position);
+			_output.force(true);
+			_output.close();
+			closeChannel();
+			AtomicFileWriter.replace(_temporaryFile, _file.toPath().toAbsolutePath());
+			_isClosed = true;
+			Metrics.recordRewrite();
+			
+			setBlocks(_writtenBlocks, tailOffset);
+			_tailLines.addAll(tailLines);
+			_tailLength = tailBytes.length;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if (!_isClosed) {
+				_isClosed = true;
+				try {
+					_output.close();
+				} finally {
+					Files.deleteIfExists(_temporaryFile);
+				}
+			}
+		}
+	}
+}
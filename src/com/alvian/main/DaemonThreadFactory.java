@@ -0,0 +1,24 @@
+package com.alvian.main;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class creates named daemon threads so that background work never 
+ * keeps the program alive after the user exits.
+ * @author Alvian Prasetya
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+	
+	private final String _threadName;
+	
+	public DaemonThreadFactory(String threadName) {
+		_threadName = threadName;
+	}
+	
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, _threadName);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
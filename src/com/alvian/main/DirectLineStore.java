@@ -0,0 +1,439 @@
+package com.alvian.main;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class works on the storage file itself instead of keeping its lines 
+ * in memory, for files too large to load. A LineOffsetIndex lets it read 
+ * any range of lines with one seek, so displaying a page of a huge file 
+ * costs a small read rather than a full scan. Added lines are appended to 
+ * the file straight away; insert, delete, sort and clear rewrite the file 
+ * through an AtomicFileWriter and leave the offset index to be rebuilt 
+ * when it is next needed. Files larger than the sort memory budget are 
+ * sorted with an ExternalSorter, unless only a tail that fits the budget 
+ * is out of order, in which case the tail is merged into the file. With 
+ * the mapped read path, display and search read the file through a 
+ * MappedLineScanner, if the charset allows it. Every change is on disk 
+ * when the method returns, so the durability options do not apply.
+ * All methods are synchronized on the store.
+ * @author Alvian Prasetya
+ */
+public class DirectLineStore implements LineStore {
+	
+	private final File _file;
+	private final Charset _charset = Charset.defaultCharset();
+	private final byte[] _lineSeparator;
+	private final LineOffsetIndex _offsetIndex;
+	private final long _sortMemory;
+	private final boolean _isMapped;
+	private FileChannel _channel;
+	
+	/**
+	 * This is the default constructor for DirectLineStore object. Only the 
+	 * saved offset index, if any, is read.
+	 * @param file		The storage file to work on.
+	 * @param options	The options of the store.
+	 * @throws IOException	If the charset of the platform cannot be read by line offset.
+	 */
+	public DirectLineStore(File file, TextBuddyOptions options) throws IOException {
+		if (!ChannelLineReader.isSupported(_charset)) {
+			throw new IOException("charset " + _charset + " cannot be read by line offset");
+		}
+		_file = file;
+		_lineSeparator = System.lineSeparator().getBytes(_charset);
+		_offsetIndex = new LineOffsetIndex(file);
+		_sortMemory = options.getSortMemory();
+		_isMapped = options.getReadPath() == ReadPath.MAPPED 
+					&& MappedLineScanner.isSupported(_charset);
+	}
+	
+	@Override
+	public synchronized int size() throws IOException {
+		return _offsetIndex.getLineCount();
+	}
+	
+	@Override
+	public synchronized int countLines(int limit) throws IOException {
+		return Math.min(size(), limit);
+	}
+	
+	@Override
+	public synchronized boolean isEmpty() throws IOException {
+		return size() == 0;
+	}
+	
+	@Override
+	public synchronized String get(int index) throws IOException {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("line " + index + " does not exist");
+		}
+		return openReaderAt(index).readLine();
+	}
+	
+	@Override
+	public synchronized void scan(int fromIndex, int toIndex, LineVisitor visitor) 
+			throws IOException {
+		int lastIndex = Math.min(toIndex, size());
+		if (fromIndex >= lastIndex) {
+			return;
+		}
+		if (_isMapped) {
+			new MappedLineScanner(getChannel(), _charset).scan(
+					_offsetIndex.getCheckpointOffset(fromIndex), 
+					LineOffsetIndex.getCheckpointLine(fromIndex), fromIndex, lastIndex, visitor);
+			return;
+		}
+		ChannelLineReader reader = openReaderAt(fromIndex);
+		for (int i = fromIndex; i < lastIndex && visitor.visit(i, reader.readLine()); i++) {
+			// The visitor does all the work.
+		}
+	}
+	
+	@Override
+	public synchronized void add(String line) throws IOException {
+		long lineOffset = _file.length();
+		// Initialize the required stream objects to write into storage file.
+		try (FileOutputStream output = new FileOutputStream(_file, true)) {
+			byte[] lineBytes = line.getBytes(_charset);
+			output.write(lineBytes);
+			output.write(_lineSeparator);
+			Metrics.recordBytesWritten(lineBytes.length + _lineSeparator.length);
+		}
+		_offsetIndex.lineAppended(lineOffset);
+	}
+	
+	/**
+	 * This method appends all the lines with one buffered write.
+	 * @param lines		The lines to add.
+	 * @throws IOException	If the lines cannot be written.
+	 */
+	@Override
+	public synchronized void addAll(List<String> lines) throws IOException {
+		long fileLength = _file.length();
+		long lineOffset = fileLength;
+		// Initialize the required stream objects to write into storage file.
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(_file, true))) {
+			for (int i = 0; i < lines.size(); i++) {
+				byte[] lineBytes = lines.get(i).getBytes(_charset);
+				output.write(lineBytes);
+				output.write(_lineSeparator);
+				_offsetIndex.lineAppended(lineOffset);
+				lineOffset += lineBytes.length + _lineSeparator.length;
+			}
+		}
+		Metrics.recordBytesWritten(lineOffset - fileLength);
+	}
+	
+	@Override
+	public synchronized String remove(final int index) throws IOException {
+		final String[] removedLine = new String[1];
+		// Initialize the required writer objects to rewrite the storage file.
+		try (final AtomicFileWriter writer = new AtomicFileWriter(_file, _charset)) {
+			scan(0, Integer.MAX_VALUE, new LineVisitor() {
+				@Override
+				public boolean visit(int lineIndex, String line) throws IOException {
+					if (lineIndex == index) {
+						removedLine[0] = line;
+					} else {
+						writer.writeLine(line);
+					}
+					return true;
+				}
+			});
+			if (removedLine[0] == null) {
+				throw new IndexOutOfBoundsException("line " + index + " does not exist");
+			}
+			closeChannel();
+			writer.commit();
+		}
+		_offsetIndex.invalidate();
+		return removedLine[0];
+	}
+	
+	/**
+	 * This method removes all the lines with a single rewrite of the file. 
+	 * The indices are first translated to the positions the lines have in 
+	 * the file before any of them is removed.
+	 * @param indices	The indices of the lines to remove, in order.
+	 * @return			The lines that were removed, in the same order.
+	 * @throws IOException	If the file cannot be rewritten.
+	 */
+	@Override
+	public synchronized ArrayList<String> removeAll(int[] indices) throws IOException {
+		final IntList originalIndices = toOriginalIndices(indices, size());
+		final IntList sortedOriginalIndices = new IntList(indices.length);
+		for (int i = 0; i < originalIndices.size(); i++) {
+			sortedOriginalIndices.add(originalIndices.get(i));
+		}
+		sortedOriginalIndices.sort();
+		
+		final HashMap<Integer, String> removedLineByIndex = new HashMap<Integer, String>();
+		// Initialize the required writer objects to rewrite the storage file.
+		try (final AtomicFileWriter writer = new AtomicFileWriter(_file, _charset)) {
+			scan(0, Integer.MAX_VALUE, new LineVisitor() {
+				private int _nextPosition = 0;
+				
+				@Override
+				public boolean visit(int lineIndex, String line) throws IOException {
+					if (_nextPosition < sortedOriginalIndices.size() 
+						&& sortedOriginalIndices.get(_nextPosition) == lineIndex) {
+						removedLineByIndex.put(lineIndex, line);
+						_nextPosition++;
+					} else {
+						writer.writeLine(line);
+					}
+					return true;
+				}
+			});
+			closeChannel();
+			writer.commit();
+		}
+		_offsetIndex.invalidate();
+		
+		ArrayList<String> removedLines = new ArrayList<String>(indices.length);
+		for (int i = 0; i < indices.length; i++) {
+			removedLines.add(removedLineByIndex.get(originalIndices.get(i)));
+		}
+		return removedLines;
+	}
+	
+	@Override
+	public synchronized void insert(final int index, final String line) throws IOException {
+		final int lineCount = size();
+		if (index < 0 || index > lineCount) {
+			throw new IndexOutOfBoundsException("line " + index + " cannot be inserted");
+		} else if (index == lineCount) {
+			add(line);
+			return;
+		}
+		// Initialize the required writer objects to rewrite the storage file.
+		try (final AtomicFileWriter writer = new AtomicFileWriter(_file, _charset)) {
+			scan(0, Integer.MAX_VALUE, new LineVisitor() {
+				@Override
+				public boolean visit(int lineIndex, String currentLine) throws IOException {
+					if (lineIndex == index) {
+						writer.writeLine(line);
+					}
+					writer.writeLine(currentLine);
+					return true;
+				}
+			});
+			closeChannel();
+			writer.commit();
+		}
+		_offsetIndex.invalidate();
+	}
+	
+	/**
+	 * This method sorts the file, reading it only up to the first line out 
+	 * of order if it is already sorted. The lines after the sorted prefix 
+	 * are sorted in memory and merged into it if they fit the sort memory 
+	 * budget, even when the whole file does not.
+	 * @return	True if any line moved.
+	 * @throws IOException	If the file cannot be read or rewritten.
+	 */
+	@Override
+	public synchronized boolean sort() throws IOException {
+		int sortedLength = getSortedLength();
+		if (sortedLength == size()) {
+			return false;
+		}
+		if (_file.length() <= _sortMemory) {
+			ArrayList<String> lines = readAllLines();
+			LineSorter.sort(lines, sortedLength);
+			closeChannel();
+			AtomicFileWriter.writeLines(_file, lines, _charset);
+		} else if (_file.length() - _offsetIndex.getCheckpointOffset(sortedLength) <= _sortMemory) {
+			mergeTail(sortedLength);
+		} else {
+			closeChannel();
+			new ExternalSorter(_sortMemory).sort(_file, _charset);
+		}
+		_offsetIndex.invalidate();
+		return true;
+	}
+	
+	@Override
+	public synchronized void clear() throws IOException {
+		closeChannel();
+		AtomicFileWriter.writeLines(_file, new ArrayList<String>(), _charset);
+		_offsetIndex.cleared();
+	}
+	
+	@Override
+	public synchronized int search(String searchToken, LineVisitor visitor) throws IOException {
+		final String searchTokenLowerCase = searchToken.toLowerCase();
+		final SearchMatches matches = new SearchMatches(visitor);
+		
+		Metrics.recordLinesScanned(size());
+		if (_isMapped) {
+			new MappedLineScanner(getChannel(), _charset).search(searchTokenLowerCase, 
+																  matches.asVisitor());
+			return matches.getCount();
+		}
+		scan(0, Integer.MAX_VALUE, new LineVisitor() {
+			@Override
+			public boolean visit(int index, String line) throws IOException {
+				return !line.toLowerCase().contains(searchTokenLowerCase) || matches.add(line);
+			}
+		});
+		return matches.getCount();
+	}
+	
+	@Override
+	public void commit() {
+		// Every change is written before the method making it returns.
+	}
+	
+	/**
+	 * This method saves the offset index and closes the storage file.
+	 * @throws IOException	If the offset index cannot be saved.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		closeChannel();
+		_offsetIndex.save();
+	}
+	
+	/**
+	 * This method translates indices given one after another, as for 
+	 * removeAll, to the indices the lines have before any of them is removed.
+	 * @param indices		The indices of the lines to remove, in order.
+	 * @param lineCount		The number of lines before any removal.
+	 * @return				The original indices, in the same order.
+	 */
+	static IntList toOriginalIndices(int[] indices, int lineCount) {
+		IntList originalIndices = new IntList(indices.length);
+		IntList sortedOriginalIndices = new IntList(indices.length);
+		
+		for (int i = 0; i < indices.length; i++) {
+			if (indices[i] < 0 || indices[i] >= lineCount - i) {
+				throw new IndexOutOfBoundsException("line " + indices[i] + " does not exist");
+			}
+			int originalIndex = indices[i];
+			int position = 0;
+			while (position < sortedOriginalIndices.size() 
+				   && sortedOriginalIndices.get(position) <= originalIndex) {
+				originalIndex++;
+				position++;
+			}
+			originalIndices.add(originalIndex);
+			sortedOriginalIndices.insert(position, originalIndex);
+		}
+		return originalIndices;
+	}
+	
+	/**
+	 * This method returns the number of leading lines that are in order, 
+	 * reading the file only up to the first line that is not.
+	 */
+	private int getSortedLength() throws IOException {
+		final int[] sortedLength = new int[1];
+		scan(0, Integer.MAX_VALUE, new LineVisitor() {
+			private String _previousLine = null;
+			
+			@Override
+			public boolean visit(int index, String line) {
+				if (_previousLine != null 
+					&& String.CASE_INSENSITIVE_ORDER.compare(_previousLine, line) > 0) {
+					return false;
+				}
+				_previousLine = line;
+				sortedLength[0] = index + 1;
+				return true;
+			}
+		});
+		return sortedLength[0];
+	}
+	
+	/**
+	 * This method sorts the lines after the sorted prefix in memory and 
+	 * rewrites the file, merging them into the prefix as it is read.
+	 */
+	private void mergeTail(final int sortedLength) throws IOException {
+		final ArrayList<String> tailLines = new ArrayList<String>();
+		scan(sortedLength, Integer.MAX_VALUE, new LineVisitor() {
+			@Override
+			public boolean visit(int index, String line) {
+				tailLines.add(line);
+				return true;
+			}
+		});
+		LineSorter.sort(tailLines);
+		
+		// Initialize the required writer objects to rewrite the storage file.
+		try (final AtomicFileWriter writer = new AtomicFileWriter(_file, _charset)) {
+			final int[] tailPosition = new int[1];
+			scan(0, sortedLength, new LineVisitor() {
+				@Override
+				public boolean visit(int index, String line) throws IOException {
+					// Taking the prefix line on ties keeps the sort stable.
+					while (tailPosition[0] < tailLines.size() 
+						   && String.CASE_INSENSITIVE_ORDER.compare(tailLines.get(tailPosition[0]), 
+																	line) < 0) {
+						writer.writeLine(tailLines.get(tailPosition[0]++));
+					}
+					writer.writeLine(line);
+					return true;
+				}
+			});
+			for (; tailPosition[0] < tailLines.size(); tailPosition[0]++) {
+				writer.writeLine(tailLines.get(tailPosition[0]));
+			}
+			closeChannel();
+			writer.commit();
+		}
+	}
+	
+	private ArrayList<String> readAllLines() throws IOException {
+		final ArrayList<String> lines = new ArrayList<String>();
+		scan(0, Integer.MAX_VALUE, new LineVisitor() {
+			@Override
+			public boolean visit(int index, String line) {
+				lines.add(line);
+				return true;
+			}
+		});
+		return lines;
+	}
+	
+	/**
+	 * This method returns a reader positioned at the start of the specified 
+	 * line, by seeking to the closest recorded offset and skipping forward.
+	 */
+	private ChannelLineReader openReaderAt(int index) throws IOException {
+		ChannelLineReader reader = new ChannelLineReader(getChannel(), 
+				_offsetIndex.getCheckpointOffset(index), _charset);
+		reader.skipLines(index - LineOffsetIndex.getCheckpointLine(index));
+		return reader;
+	}
+	
+	private FileChannel getChannel() throws IOException {
+		if (_channel == null) {
+			_channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+		}
+		return _channel;
+	}
+	
+	/**
+	 * This method closes the read channel before the storage file is 
+	 * replaced, as some platforms do not allow replacing an open file.
+	 */
+	private void closeChannel() throws IOException {
+		if (_channel != null) {
+			_channel.close();
+			_channel = null;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.alvian.main;
+
+/**
+ * This enum lists the durability levels supported when writing the 
+ * in-memory lines back to the storage file.
+ * PER_COMMAND writes every change before the command returns.
+ * INTERVAL writes the accumulated changes periodically in the background.
+ * ON_EXIT writes the accumulated changes only when TextBuddy exits.
+ * @author Alvian Prasetya
+ */
+public enum Durability {
+	PER_COMMAND, INTERVAL, ON_EXIT;
+	
+	/**
+	 * This method returns the durability level with the specified name, 
+	 * e.g. "per-command", "interval" or "on-exit".
+	 * @param name	The name of the durability level, case is ignored.
+	 * @return		The matching durability level.
+	 */
+	public static Durability fromName(String name) {
+		for (Durability durability : values()) {
+			if (durability.getName().equalsIgnoreCase(name)) {
+				return durability;
+			}
+		}
+		throw new IllegalArgumentException("unknown durability \"" + name + "\"");
+	}
+	
+	public String getName() {
+		return name().toLowerCase().replace('_', '-');
+	}
+}
@@ -0,0 +1,26 @@
+package com.alvian.main;
+
+/**
+ * This enum lists the storage engines that a ResidentLineStore can use.
+ * PLAIN keeps only the plain text storage file and rewrites it on changes.
+ * LOG appends changes to an operation log next to the storage file and 
+ * folds the log back into the storage file from time to time.
+ * @author Alvian Prasetya
+ */
+public enum EngineType {
+	PLAIN, LOG;
+	
+	/**
+	 * This method returns the engine type with the specified name.
+	 * @param name	The name of the engine type, case is ignored.
+	 * @return		The matching engine type.
+	 */
+	public static EngineType fromName(String name) {
+		for (EngineType engineType : values()) {
+			if (engineType.name().equalsIgnoreCase(name)) {
+				return engineType;
+			}
+		}
+		throw new IllegalArgumentException("unknown engine \"" + name + "\"");
+	}
+}
@@ -0,0 +1,247 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This class sorts a storage file that may be larger than the heap. The 
+ * file is cut into runs that fit the memory budget; every run is sorted in 
+ * memory and spilled to a temporary file next to the storage file, and the 
+ * runs are then merged back with a priority queue. When more runs exist 
+ * than can be merged at once, consecutive runs are merged into bigger runs 
+ * first.
+ * The result is byte for byte what sorting in memory would give: runs are 
+ * cut from the file in order and sorted stably, and on equal lines the 
+ * merge always takes the earlier run first, so equal lines keep their 
+ * original order as String.CASE_INSENSITIVE_ORDER with a stable sort does.
+ * @author Alvian Prasetya
+ */
+public class ExternalSorter {
+	
+	private static final String RUN_FILE_SUFFIX = ".tmp";
+	// This bounds the number of open run files during a merge.
+	private static final int MAX_MERGE_WIDTH = 128;
+	// This estimates the heap taken by a String besides its characters.
+	private static final long LINE_OVERHEAD_BYTES = 48;
+	private static final Charset RUN_CHARSET = StandardCharsets.UTF_8;
+	private static final char RUN_LINE_SEPARATOR = '\n';
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final long _memoryBudget;
+	
+	/**
+	 * This is the default constructor for ExternalSorter object.
+	 * @param memoryBudget	The approximate heap in bytes that one run may take.
+	 */
+	public ExternalSorter(long memoryBudget) {
+		_memoryBudget = memoryBudget;
+	}
+	
+	/**
+	 * This method sorts the lines of the file in place. The file is only 
+	 * replaced once the sorted lines are completely written.
+	 * @param file		The file to sort.
+	 * @param charset	The charset the file is written in.
+	 * @throws IOException	If the file or the runs cannot be read or written.
+	 */
+	public void sort(File file, Charset charset) throws IOException {
+		ArrayList<File> runFiles = new ArrayList<File>();
+		
+		try {
+			ArrayList<String> run = new ArrayList<String>();
+			// Initialize the required channel objects to read the storage file.
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				ChannelLineReader reader = new ChannelLineReader(channel, 0, charset);
+				long runBytes = 0;
+				
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					run.add(line);
+					runBytes += LINE_OVERHEAD_BYTES + 2L * line.length();
+					if (runBytes >= _memoryBudget) {
+						runFiles.add(writeRun(file, run));
+						run.clear();
+						runBytes = 0;
+					}
+				}
+			}
+			
+			if (runFiles.isEmpty()) {
+				// Everything fit in one run, no merge is needed.
+				Collections.sort(run, String.CASE_INSENSITIVE_ORDER);
+				AtomicFileWriter.writeLines(file, run, charset);
+				return;
+			}
+			if (!run.isEmpty()) {
+				runFiles.add(writeRun(file, run));
+				run = null;
+			}
+			while (runFiles.size() > MAX_MERGE_WIDTH) {
+				runFiles = mergeRunsIntoRuns(file, runFiles);
+			}
+			// Initialize the required writer objects to rewrite the storage file.
+			try (final AtomicFileWriter writer = new AtomicFileWriter(file, charset)) {
+				merge(runFiles, new LineVisitor() {
+					@Override
+					public boolean visit(int index, String line) throws IOException {
+						writer.writeLine(line);
+						return true;
+					}
+				});
+				writer.commit();
+			}
+		} finally {
+			for (int i = 0; i < runFiles.size(); i++) {
+				Files.deleteIfExists(runFiles.get(i).toPath());
+			}
+		}
+	}
+	
+	/**
+	 * This method merges every MAX_MERGE_WIDTH consecutive runs into one.
+	 * @return	The merged runs, in order.
+	 */
+	private ArrayList<File> mergeRunsIntoRuns(File file, ArrayList<File> runFiles) 
+			throws IOException {
+		ArrayList<File> mergedRunFiles = new ArrayList<File>();
+		
+		try {
+			for (int i = 0; i < runFiles.size(); i += MAX_MERGE_WIDTH) {
+				List<File> group = runFiles.subList(i, Math.min(i + MAX_MERGE_WIDTH, runFiles.size()));
+				File mergedRunFile = createRunFile(file);
+				mergedRunFiles.add(mergedRunFile);
+				try (final Writer writer = openRunWriter(mergedRunFile)) {
+					merge(group, new LineVisitor() {
+						@Override
+						public boolean visit(int index, String line) throws IOException {
+							writer.write(line);
+							writer.write(RUN_LINE_SEPARATOR);
+							return true;
+						}
+					});
+				}
+			}
+		} catch (IOException exceptionMessage) {
+			for (int i = 0; i < mergedRunFiles.size(); i++) {
+				Files.deleteIfExists(mergedRunFiles.get(i).toPath());
+			}
+			throw exceptionMessage;
+		}
+		for (int i = 0; i < runFiles.size(); i++) {
+			Files.deleteIfExists(runFiles.get(i).toPath());
+		}
+		return mergedRunFiles;
+	}
+	
+	/**
+	 * This method merges sorted runs, passing the merged lines in order to 
+	 * the sink. On equal lines the earlier run goes first.
+	 */
+	private static void merge(List<File> runFiles, LineVisitor sink) throws IOException {
+		PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>(runFiles.size(), 
+																	  RunCursor.MERGE_ORDER);
+		ArrayList<RunCursor> cursors = new ArrayList<RunCursor>();
+		
+		try {
+			for (int i = 0; i < runFiles.size(); i++) {
+				RunCursor cursor = new RunCursor(i, runFiles.get(i));
+				cursors.add(cursor);
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+			int lineIndex = 0;
+			while (!queue.isEmpty()) {
+				RunCursor cursor = queue.poll();
+				sink.visit(lineIndex++, cursor._line);
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+		} finally {
+			for (int i = 0; i < cursors.size(); i++) {
+				cursors.get(i).close();
+			}
+		}
+	}
+	
+	private static File writeRun(File file, ArrayList<String> run) throws IOException {
+		// The sort is stable, so equal lines keep their relative order.
+		Collections.sort(run, String.CASE_INSENSITIVE_ORDER);
+		File runFile = createRunFile(file);
+		try (Writer writer = openRunWriter(runFile)) {
+			for (int i = 0; i < run.size(); i++) {
+				writer.write(run.get(i));
+				writer.write(RUN_LINE_SEPARATOR);
+			}
+		} catch (IOException exceptionMessage) {
+			Files.deleteIfExists(runFile.toPath());
+			throw exceptionMessage;
+		}
+		return runFile;
+	}
+	
+	private static File createRunFile(File file) throws IOException {
+		Path filePath = file.toPath().toAbsolutePath();
+		return Files.createTempFile(filePath.getParent(), filePath.getFileName() + ".run.", 
+									RUN_FILE_SUFFIX).toFile();
+	}
+	
+	private static Writer openRunWriter(File runFile) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(runFile), 
+								  RUN_CHARSET), BUFFER_SIZE);
+	}
+	
+	/**
+	 * This class reads one sorted run during a merge.
+	 */
+	private static class RunCursor {
+		
+		static final Comparator<RunCursor> MERGE_ORDER = new Comparator<RunCursor>() {
+			@Override
+			public int compare(RunCursor first, RunCursor second) {
+				int lineOrder = String.CASE_INSENSITIVE_ORDER.compare(first._line, second._line);
+				return lineOrder != 0 ? lineOrder : Integer.compare(first._runIndex, second._runIndex);
+			}
+		};
+		
+		final int _runIndex;
+		final FileChannel _channel;
+		final ChannelLineReader _reader;
+		String _line;
+		
+		RunCursor(int runIndex, File runFile) throws IOException {
+			_runIndex = runIndex;
+			_channel = FileChannel.open(runFile.toPath(), StandardOpenOption.READ);
+			_reader = new ChannelLineReader(_channel, 0, RUN_CHARSET);
+		}
+		
+		/**
+		 * This method moves to the next line of the run.
+		 * @return	False if the run has no more lines.
+		 */
+		boolean advance() throws IOException {
+			_line = _reader.readLine();
+			return _line != null;
+		}
+		
+		void close() throws IOException {
+			_channel.close();
+		}
+	}
+}
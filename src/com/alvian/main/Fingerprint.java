@@ -0,0 +1,82 @@
+package com.alvian.main;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This class identifies the exact bytes of a storage file by their length 
+ * and CRC-32 checksum. It is used to tell which version of the storage 
+ * file an operation log was written against.
+ * @author Alvian Prasetya
+ */
+public class Fingerprint {
+	
+	private static final String FIELD_SEPARATOR = " ";
+	
+	private final long _byteLength;
+	private final long _checksum;
+	
+	public Fingerprint(long byteLength, long checksum) {
+		_byteLength = byteLength;
+		_checksum = checksum;
+	}
+	
+	/**
+	 * This method computes the fingerprint of the storage file that would 
+	 * be written for the specified lines.
+	 * @param lines		The lines of the storage file.
+	 * @param charset	The charset the storage file is written in.
+	 * @return			The fingerprint of the written storage file.
+	 */
+	public static Fingerprint of(List<String> lines, Charset charset) {
+		CRC32 checksum = new CRC32();
+		byte[] lineSeparator = System.lineSeparator().getBytes(charset);
+		long byteLength = 0;
+		
+		for (int i = 0; i < lines.size(); i++) {
+			byte[] lineBytes = lines.get(i).getBytes(charset);
+			checksum.update(lineBytes, 0, lineBytes.length);
+			checksum.update(lineSeparator, 0, lineSeparator.length);
+			byteLength += lineBytes.length + lineSeparator.length;
+		}
+		return new Fingerprint(byteLength, checksum.getValue());
+	}
+	
+	/**
+	 * This method reads a fingerprint written by toString.
+	 * @param text	The text form of the fingerprint.
+	 * @return		The fingerprint, or null if the text is malformed.
+	 */
+	public static Fingerprint parse(String text) {
+		String[] fields = text.split(FIELD_SEPARATOR);
+		if (fields.length != 2) {
+			return null;
+		}
+		try {
+			return new Fingerprint(Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+		} catch (NumberFormatException exceptionMessage) {
+			return null;
+		}
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof Fingerprint)) {
+			return false;
+		}
+		Fingerprint otherFingerprint = (Fingerprint) other;
+		return _byteLength == otherFingerprint._byteLength 
+			   && _checksum == otherFingerprint._checksum;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (int) (_byteLength * 31 + _checksum);
+	}
+	
+	@Override
+	public String toString() {
+		return _byteLength + FIELD_SEPARATOR + _checksum;
+	}
+}
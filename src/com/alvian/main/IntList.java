@@ -0,0 +1,128 @@
+package com.alvian.main;
+
+import java.util.Arrays;
+
+/**
+ * This class is a growable list of primitive ints, used where an 
+ * ArrayList of Integer would cost an object per element.
+ * @author Alvian Prasetya
+ */
+public class IntList {
+	
+	private static final int DEFAULT_CAPACITY = 4;
+	
+	private int[] _values;
+	private int _size = 0;
+	
+	public IntList() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public IntList(int capacity) {
+		_values = new int[Math.max(capacity, 1)];
+	}
+	
+	public int size() {
+		return _size;
+	}
+	
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+	
+	public int get(int index) {
+		return _values[index];
+	}
+	
+	public void set(int index, int value) {
+		_values[index] = value;
+	}
+	
+	public void add(int value) {
+		ensureCapacity(_size + 1);
+		_values[_size++] = value;
+	}
+	
+	/**
+	 * This method inserts the value at the specified index, shifting the 
+	 * following values up by one.
+	 * @param index		The index to insert at.
+	 * @param value		The value to insert.
+	 */
+	public void insert(int index, int value) {
+		ensureCapacity(_size + 1);
+		System.arraycopy(_values, index, _values, index + 1, _size - index);
+		_values[index] = value;
+		_size++;
+	}
+	
+	/**
+	 * This method removes the value at the specified index, shifting the 
+	 * following values down by one.
+	 * @param index		The index to remove.
+	 * @return			The value that was removed.
+	 */
+	public int removeAt(int index) {
+		int removedValue = _values[index];
+		System.arraycopy(_values, index + 1, _values, index, _size - index - 1);
+		_size--;
+		return removedValue;
+	}
+	
+	/**
+	 * This method removes a value from a list sorted in ascending order.
+	 * @param value		The value to remove.
+	 * @return			True if the value was found and removed.
+	 */
+	public boolean removeSorted(int value) {
+		int index = Arrays.binarySearch(_values, 0, _size, value);
+		if (index < 0) {
+			return false;
+		}
+		removeAt(index);
+		return true;
+	}
+	
+	public void clear() {
+		_size = 0;
+	}
+	
+	public void sort() {
+		Arrays.sort(_values, 0, _size);
+	}
+	
+	public int[] toArray() {
+		return Arrays.copyOf(_values, _size);
+	}
+	
+	/**
+	 * This method returns the values present in both lists, which must be 
+	 * sorted in ascending order.
+	 * @param other		The other sorted list.
+	 * @return			The sorted list of common values.
+	 */
+	public IntList intersect(IntList other) {
+		IntList common = new IntList(Math.min(_size, other._size));
+		int i = 0;
+		int j = 0;
+		
+		while (i < _size && j < other._size) {
+			if (_values[i] < other._values[j]) {
+				i++;
+			} else if (_values[i] > other._values[j]) {
+				j++;
+			} else {
+				common.add(_values[i]);
+				i++;
+				j++;
+			}
+		}
+		return common;
+	}
+	
+	private void ensureCapacity(int capacity) {
+		if (capacity > _values.length) {
+			_values = Arrays.copyOf(_values, Math.max(capacity, _values.length * 2));
+		}
+	}
+}
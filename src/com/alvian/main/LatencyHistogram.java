@@ -0,0 +1,122 @@
+package com.alvian.main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts recorded durations in log-linear buckets, the way 
+ * HdrHistogram does: every power of two is split into SUB_BUCKET_COUNT 
+ * equal buckets, so a percentile is reported within about 3% of the true 
+ * value whatever its magnitude, in a fixed amount of memory.
+ * Recording is a few arithmetic operations and one atomic increment, 
+ * without locks or allocation, so any number of threads may record at 
+ * the same time. Reads are not atomic with respect to recording; a 
+ * percentile read while commands run may miss the latest durations.
+ * @author Alvian Prasetya
+ */
+public class LatencyHistogram {
+	
+	// Every power of two is split into this many buckets.
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	// Values below SUB_BUCKET_COUNT each have their own bucket.
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+	
+	private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder _count = new LongAdder();
+	private final LongAdder _total = new LongAdder();
+	private final AtomicLong _max = new AtomicLong();
+	
+	/**
+	 * This method records one duration.
+	 * @param value		The duration, in any unit; negative values count as 0.
+	 */
+	public void record(long value) {
+		record(value, 1);
+	}
+	
+	/**
+	 * This method records the same duration several times, e.g. the 
+	 * average duration of the commands of a batch.
+	 * @param value		The duration, in any unit; negative values count as 0.
+	 * @param count		The number of times the duration is recorded.
+	 */
+	public void record(long value, long count) {
+		if (count <= 0) {
+			return;
+		}
+		long positiveValue = Math.max(value, 0);
+		_buckets.addAndGet(getBucketIndex(positiveValue), count);
+		_count.add(count);
+		_total.add(positiveValue * count);
+		long max = _max.get();
+		while (positiveValue > max && !_max.compareAndSet(max, positiveValue)) {
+			max = _max.get();
+		}
+	}
+	
+	public long getCount() {
+		return _count.sum();
+	}
+	
+	public long getMax() {
+		return _max.get();
+	}
+	
+	/**
+	 * This method returns the mean of the recorded durations.
+	 * @return	The mean, or 0 if nothing was recorded.
+	 */
+	public double getMean() {
+		long count = _count.sum();
+		return count == 0 ? 0 : (double) _total.sum() / count;
+	}
+	
+	/**
+	 * This method returns the duration that the specified percentage of the 
+	 * recorded durations do not exceed, as the highest value of its bucket.
+	 * @param percentile	The percentage, from 0 to 100.
+	 * @return				The duration, or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += _buckets.get(i);
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+		long seen = 0;
+		
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += _buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(getBucketEnd(i), _max.get());
+			}
+		}
+		return _max.get();
+	}
+	
+	/**
+	 * This method gives every value below SUB_BUCKET_COUNT its own bucket, 
+	 * and splits every higher power of two into SUB_BUCKET_COUNT buckets.
+	 */
+	private static int getBucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+	}
+	
+	private static long getBucketEnd(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long bucketStart = (long) (index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+		return bucketStart + (1L << shift) - 1;
+	}
+}
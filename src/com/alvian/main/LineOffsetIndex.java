@@ -0,0 +1,244 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class records the byte offset of every LINES_PER_CHECKPOINT-th line 
+ * of a storage file, so that any line can be reached with one seek and a 
+ * short forward read instead of a scan from the start of the file. The 
+ * index is saved to "<file>.offsets" together with the length and 
+ * modification time of the storage file it describes, and is rebuilt 
+ * lazily whenever the storage file no longer matches.
+ * Appends are recorded as they happen. Any other change to the storage 
+ * file makes the index stale until it is next needed.
+ * @author Alvian Prasetya
+ */
+public class LineOffsetIndex {
+	
+	private static final String OFFSETS_SUFFIX = ".offsets";
+	// This identifies the offsets file format, "TBOF" followed by its version.
+	private static final int FILE_MAGIC = 0x54424F46;
+	private static final int FILE_VERSION = 1;
+	private static final int LINES_PER_CHECKPOINT = 64;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final File _file;
+	private final File _offsetsFile;
+	private long[] _checkpoints = new long[16];
+	private int _checkpointCount = 0;
+	private int _lineCount = 0;
+	// Length and modification time of the storage file the index describes.
+	private long _indexedLength = -1;
+	private long _indexedModified = -1;
+	private boolean _isSaved = false;
+	
+	/**
+	 * This is the default constructor for LineOffsetIndex object. It loads 
+	 * the saved index of the storage file if there is one.
+	 * @param file	The storage file to index.
+	 */
+	public LineOffsetIndex(File file) {
+		_file = file;
+		_offsetsFile = new File(file.getPath() + OFFSETS_SUFFIX);
+		load();
+	}
+	
+	/**
+	 * This method returns the number of lines in the storage file.
+	 * @return	The number of lines.
+	 * @throws IOException	If the index has to be rebuilt and the file cannot be read.
+	 */
+	public int getLineCount() throws IOException {
+		ensureCurrent();
+		return _lineCount;
+	}
+	
+	/**
+	 * This method returns the index of the closest line at or before the 
+	 * specified line whose offset is recorded.
+	 * @param lineIndex		The zero-based index of the wanted line.
+	 * @return				The index of the line to start reading from.
+	 */
+	public static int getCheckpointLine(int lineIndex) {
+		return lineIndex - lineIndex % LINES_PER_CHECKPOINT;
+	}
+	
+	/**
+	 * This method returns the byte offset of the line returned by 
+	 * getCheckpointLine for the specified line.
+	 * @param lineIndex		The zero-based index of the wanted line.
+	 * @return				The byte offset to start reading from.
+	 * @throws IOException	If the index has to be rebuilt and the file cannot be read.
+	 */
+	public long getCheckpointOffset(int lineIndex) throws IOException {
+		ensureCurrent();
+		if (lineIndex >= _lineCount) {
+			return _indexedLength;
+		}
+		return _checkpoints[lineIndex / LINES_PER_CHECKPOINT];
+	}
+	
+	/**
+	 * This method records a line appended to the storage file.
+	 * @param lineOffset	The byte offset the line was written at.
+	 */
+	public void lineAppended(long lineOffset) {
+		if (_indexedLength != lineOffset) {
+			// The index was stale already and will be rebuilt anyway.
+			return;
+		}
+		addLine(lineOffset);
+		markCurrent();
+	}
+	
+	/**
+	 * This method records that the storage file was emptied.
+	 */
+	public void cleared() {
+		_checkpointCount = 0;
+		_lineCount = 0;
+		markCurrent();
+	}
+	
+	/**
+	 * This method records that the storage file was rewritten, so that the 
+	 * index is rebuilt the next time it is needed.
+	 */
+	public void invalidate() {
+		_indexedLength = -1;
+		_isSaved = false;
+	}
+	
+	/**
+	 * This method saves the index next to the storage file if it changed.
+	 * @throws IOException	If the index cannot be written.
+	 */
+	public void save() throws IOException {
+		if (_isSaved || !isCurrent()) {
+			return;
+		}
+		Path offsetsPath = _offsetsFile.toPath().toAbsolutePath();
+		Path temporaryFile = Files.createTempFile(offsetsPath.getParent(), 
+												  offsetsPath.getFileName() + ".", ".tmp");
+		try {
+			// Initialize the required writer objects to write into offsets file.
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temporaryFile.toFile()), BUFFER_SIZE))) {
+				output.writeInt(FILE_MAGIC);
+				output.writeInt(FILE_VERSION);
+				output.writeLong(_indexedLength);
+				output.writeLong(_indexedModified);
+				output.writeInt(_lineCount);
+				for (int i = 0; i < _checkpointCount; i++) {
+					output.writeLong(_checkpoints[i]);
+				}
+			}
+			AtomicFileWriter.replace(temporaryFile, offsetsPath);
+			_isSaved = true;
+		} finally {
+			Files.deleteIfExists(temporaryFile);
+		}
+	}
+	
+	private void load() {
+		if (!_offsetsFile.exists()) {
+			return;
+		}
+		// Initialize the required reader objects to read the offsets file.
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(_offsetsFile), BUFFER_SIZE))) {
+			if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION) {
+				return;
+			}
+			long indexedLength = input.readLong();
+			long indexedModified = input.readLong();
+			int lineCount = input.readInt();
+			int checkpointCount = (lineCount + LINES_PER_CHECKPOINT - 1) / LINES_PER_CHECKPOINT;
+			long[] checkpoints = new long[Math.max(checkpointCount, 16)];
+			for (int i = 0; i < checkpointCount; i++) {
+				checkpoints[i] = input.readLong();
+			}
+			_checkpoints = checkpoints;
+			_checkpointCount = checkpointCount;
+			_lineCount = lineCount;
+			_indexedLength = indexedLength;
+			_indexedModified = indexedModified;
+			_isSaved = true;
+		} catch (IOException exceptionMessage) {
+			invalidate();
+		}
+	}
+	
+	private boolean isCurrent() {
+		return _indexedLength == _file.length() && _indexedModified == _file.lastModified();
+	}
+	
+	private void ensureCurrent() throws IOException {
+		if (!isCurrent()) {
+			rebuild();
+		}
+	}
+	
+	private void markCurrent() {
+		_indexedLength = _file.length();
+		_indexedModified = _file.lastModified();
+		_isSaved = false;
+	}
+	
+	/**
+	 * This method scans the storage file for line feeds, recording the 
+	 * offset of every LINES_PER_CHECKPOINT-th line. A last line without a 
+	 * line feed still counts, as it does for BufferedReader.
+	 */
+	private void rebuild() throws IOException {
+		_checkpointCount = 0;
+		_lineCount = 0;
+		// Initialize the required channel objects to read the storage file.
+		try (FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			long position = 0;
+			boolean isAtLineStart = true;
+			
+			while (channel.read(buffer) > 0) {
+				buffer.flip();
+				Metrics.recordBytesRead(buffer.remaining());
+				while (buffer.hasRemaining()) {
+					if (isAtLineStart) {
+						addLine(position);
+						isAtLineStart = false;
+					}
+					if (buffer.get() == '\n') {
+						isAtLineStart = true;
+					}
+					position++;
+				}
+				buffer.clear();
+			}
+		}
+		markCurrent();
+	}
+	
+	private void addLine(long lineOffset) {
+		if (_lineCount % LINES_PER_CHECKPOINT == 0) {
+			if (_checkpointCount == _checkpoints.length) {
+				_checkpoints = Arrays.copyOf(_checkpoints, _checkpointCount * 2);
+			}
+			_checkpoints[_checkpointCount++] = lineOffset;
+		}
+		_lineCount++;
+	}
+}
@@ -0,0 +1,209 @@
+package com.alvian.main;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class sorts lines the way TextBuddy always has, alphabetically 
+ * ignoring case and keeping equal lines in their original order, while 
+ * also reporting where every sorted line came from.
+ * Lines usually arrive sorted with a few lines added after them, so only 
+ * the lines after the longest sorted prefix are sorted, and then merged 
+ * into the prefix from the first position they change.
+ * @author Alvian Prasetya
+ */
+public class LineSorter {
+	
+	/**
+	 * This method sorts the lines in place without reporting the order.
+	 * @param lines		The lines to sort.
+	 */
+	public static void sort(List<String> lines) {
+		sort(lines, getSortedLength(lines));
+	}
+	
+	/**
+	 * This method sorts the lines in place like sortWithOrder, given that the 
+	 * lines before the sorted length are already in order, without building 
+	 * the order.
+	 * @param lines			The lines to sort.
+	 * @param sortedLength	The number of leading lines already in order.
+	 */
+	public static void sort(List<String> lines, int sortedLength) {
+		if (lines instanceof CompactLineList) {
+			((CompactLineList) lines).sortWithOrder(sortedLength);
+			return;
+		}
+		if (sortedLength == lines.size()) {
+			return;
+		}
+		String[] tailLines = lines.subList(sortedLength, lines.size()).toArray(new String[0]);
+		// Entries are sorted alphabetically ignoring different cases.
+		Arrays.sort(tailLines, String.CASE_INSENSITIVE_ORDER);
+		
+		int mergeStart = getUpperBound(lines, sortedLength, tailLines[0]);
+		String[] prefixLines = lines.subList(mergeStart, sortedLength).toArray(new String[0]);
+		int prefixPosition = 0;
+		int tailPosition = 0;
+		for (int i = mergeStart; i < lines.size(); i++) {
+			if (tailPosition == tailLines.length 
+				|| (prefixPosition < prefixLines.length 
+					&& String.CASE_INSENSITIVE_ORDER.compare(prefixLines[prefixPosition], 
+															 tailLines[tailPosition]) <= 0)) {
+				lines.set(i, prefixLines[prefixPosition++]);
+			} else {
+				lines.set(i, tailLines[tailPosition++]);
+			}
+		}
+	}
+	
+	/**
+	 * This method sorts the lines in place.
+	 * @param lines		The lines to sort.
+	 * @return			For every new index, the index the line had before.
+	 */
+	public static int[] sortWithOrder(List<String> lines) {
+		return sortWithOrder(lines, getSortedLength(lines));
+	}
+	
+	/**
+	 * This method sorts the lines in place, given that the lines before the 
+	 * sorted length are already in order. Only the lines after it are 
+	 * sorted, and the lines of the prefix are only moved from the position 
+	 * the first of them is merged into.
+	 * @param lines			The lines to sort.
+	 * @param sortedLength	The number of leading lines already in order.
+	 * @return				For every new index, the index the line had before.
+	 */
+	public static int[] sortWithOrder(List<String> lines, int sortedLength) {
+		if (lines instanceof CompactLineList) {
+			return ((CompactLineList) lines).sortWithOrder(sortedLength);
+		}
+		int[] order = new int[lines.size()];
+		if (sortedLength == lines.size()) {
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			return order;
+		}
+		IndexedLine[] tailLines = new IndexedLine[lines.size() - sortedLength];
+		for (int i = 0; i < tailLines.length; i++) {
+			tailLines[i] = new IndexedLine(sortedLength + i, lines.get(sortedLength + i));
+		}
+		sort(tailLines, 0, tailLines.length);
+		
+		// Prefix lines up to the first tail line keep their position.
+		int mergeStart = getUpperBound(lines, sortedLength, tailLines[0]._line);
+		for (int i = 0; i < mergeStart; i++) {
+			order[i] = i;
+		}
+		String[] prefixLines = new String[sortedLength - mergeStart];
+		for (int i = 0; i < prefixLines.length; i++) {
+			prefixLines[i] = lines.get(mergeStart + i);
+		}
+		int prefixPosition = 0;
+		int tailPosition = 0;
+		for (int i = mergeStart; i < order.length; i++) {
+			// Taking the prefix line on ties keeps the sort stable.
+			if (tailPosition == tailLines.length 
+				|| (prefixPosition < prefixLines.length 
+					&& String.CASE_INSENSITIVE_ORDER.compare(prefixLines[prefixPosition], 
+															 tailLines[tailPosition]._line) <= 0)) {
+				order[i] = mergeStart + prefixPosition;
+				lines.set(i, prefixLines[prefixPosition++]);
+			} else {
+				order[i] = tailLines[tailPosition]._index;
+				lines.set(i, tailLines[tailPosition++]._line);
+			}
+		}
+		return order;
+	}
+	
+	/**
+	 * This method returns the number of leading lines that are in order.
+	 * @param lines		The lines to check.
+	 * @return			The length of the sorted prefix, which is the number 
+	 * 					of lines if they are all in order.
+	 */
+	public static int getSortedLength(List<String> lines) {
+		if (lines instanceof CompactLineList) {
+			return ((CompactLineList) lines).getSortedLength();
+		}
+		for (int i = 1; i < lines.size(); i++) {
+			if (String.CASE_INSENSITIVE_ORDER.compare(lines.get(i - 1), lines.get(i)) > 0) {
+				return i;
+			}
+		}
+		return lines.size();
+	}
+	
+	/**
+	 * This method returns the position the line would be inserted at to 
+	 * keep the first lines in order, after any lines equal to it.
+	 * @param lines		The lines, in order up to the length.
+	 * @param length	The number of leading lines to search.
+	 * @param line		The line to find the position of.
+	 * @return			The index of the first line greater than the line.
+	 */
+	public static int getUpperBound(List<String> lines, int length, String line) {
+		int low = 0;
+		int high = length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (String.CASE_INSENSITIVE_ORDER.compare(lines.get(middle), line) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	static IndexedLine[] toIndexedLines(List<String> lines) {
+		IndexedLine[] indexedLines = new IndexedLine[lines.size()];
+		for (int i = 0; i < indexedLines.length; i++) {
+			indexedLines[i] = new IndexedLine(i, lines.get(i));
+		}
+		return indexedLines;
+	}
+	
+	static void sort(IndexedLine[] indexedLines, int fromIndex, int toIndex) {
+		// The sort is stable, so equal lines keep their relative order.
+		Arrays.sort(indexedLines, fromIndex, toIndex, IndexedLine.CASE_INSENSITIVE_ORDER);
+	}
+	
+	/**
+	 * This method writes the sorted lines back into the list.
+	 * @return	For every new index, the index the line had before.
+	 */
+	static int[] fromIndexedLines(IndexedLine[] indexedLines, List<String> lines) {
+		int[] order = new int[indexedLines.length];
+		for (int i = 0; i < indexedLines.length; i++) {
+			order[i] = indexedLines[i]._index;
+			lines.set(i, indexedLines[i]._line);
+		}
+		return order;
+	}
+	
+	/**
+	 * This class pairs a line with the index it had before sorting.
+	 */
+	static class IndexedLine {
+		
+		static final Comparator<IndexedLine> CASE_INSENSITIVE_ORDER = new Comparator<IndexedLine>() {
+			@Override
+			public int compare(IndexedLine first, IndexedLine second) {
+				return String.CASE_INSENSITIVE_ORDER.compare(first._line, second._line);
+			}
+		};
+		
+		final int _index;
+		final String _line;
+		
+		IndexedLine(int index, String line) {
+			_index = index;
+			_line = line;
+		}
+	}
+}
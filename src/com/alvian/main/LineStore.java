@@ -0,0 +1,110 @@
+package com.alvian.main;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This interface describes where TextBuddy keeps the lines of a storage 
+ * file. ResidentLineStore holds every line in memory, while DirectLineStore 
+ * works on the storage file itself and only reads the lines it needs.
+ * Indexes are zero-based; TextBuddy adds one for the numbering it shows.
+ * @author Alvian Prasetya
+ */
+public interface LineStore extends Closeable {
+	
+	public int size() throws IOException;
+	
+	public boolean isEmpty() throws IOException;
+	
+	/**
+	 * This method returns the number of lines, but never more than the 
+	 * limit, so that a store still loading its lines can answer as soon as 
+	 * it has loaded that many.
+	 * @param limit		The largest number to return.
+	 * @return			The number of lines, or the limit if there are more.
+	 * @throws IOException	If the lines cannot be counted.
+	 */
+	public int countLines(int limit) throws IOException;
+	
+	public String get(int index) throws IOException;
+	
+	/**
+	 * This method passes the lines from the start index (inclusive) to the 
+	 * end index (exclusive) to the visitor, in order. An end index past the 
+	 * last line stops at the last line.
+	 * @param fromIndex		The index of the first line to visit.
+	 * @param toIndex		The index after the last line to visit.
+	 * @param visitor		The visitor to pass the lines to.
+	 * @throws IOException	If the lines cannot be read or the visitor fails.
+	 */
+	public void scan(int fromIndex, int toIndex, LineVisitor visitor) throws IOException;
+	
+	public void add(String line) throws IOException;
+	
+	/**
+	 * This method adds the lines to the end, in order, as one write where 
+	 * the store can.
+	 * @param lines		The lines to add.
+	 * @throws IOException	If the lines cannot be added.
+	 */
+	public void addAll(List<String> lines) throws IOException;
+	
+	/**
+	 * This method removes the line at the specified index.
+	 * @param index		The index of the line to remove.
+	 * @return			The line that was removed.
+	 * @throws IOException	If the line cannot be removed.
+	 */
+	public String remove(int index) throws IOException;
+	
+	/**
+	 * This method removes lines one after another, as if remove were called 
+	 * with every index in turn, so every index refers to the lines left by 
+	 * the removals before it. The store may do all removals in one rewrite.
+	 * @param indices	The indices of the lines to remove, in order.
+	 * @return			The lines that were removed, in the same order.
+	 * @throws IOException	If the lines cannot be removed.
+	 */
+	public ArrayList<String> removeAll(int[] indices) throws IOException;
+	
+	/**
+	 * This method inserts the line at the specified index, moving the line 
+	 * at that index and the lines after it down by one.
+	 * @param index		The index the line will have, up to the size.
+	 * @param line		The line to insert.
+	 * @throws IOException	If the line cannot be inserted.
+	 */
+	public void insert(int index, String line) throws IOException;
+	
+	/**
+	 * This method sorts the lines alphabetically ignoring case, keeping 
+	 * equal lines in their original order. Lines that are already sorted 
+	 * are left as they are, without writing anything.
+	 * @return	True if any line moved.
+	 * @throws IOException	If the lines cannot be sorted.
+	 */
+	public boolean sort() throws IOException;
+	
+	public void clear() throws IOException;
+	
+	/**
+	 * This method passes the lines containing the specified token, ignoring 
+	 * case, to the visitor in the order they are stored, as they are found. 
+	 * The index passed with every line is its position among the matches.
+	 * @param searchToken	The substring to search for.
+	 * @param visitor		The visitor to pass the matching lines to.
+	 * @return				The number of lines passed to the visitor.
+	 * @throws IOException	If the lines cannot be read or the visitor fails.
+	 */
+	public int search(String searchToken, LineVisitor visitor) throws IOException;
+	
+	/**
+	 * This method marks the end of a command, after which its changes must 
+	 * be as durable as the options require.
+	 * @throws IOException	If the changes cannot be written.
+	 */
+	public void commit() throws IOException;
+}
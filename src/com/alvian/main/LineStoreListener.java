@@ -0,0 +1,37 @@
+package com.alvian.main;
+
+/**
+ * This interface is notified of every change made to the lines of a store, 
+ * so that structures derived from the lines can be kept up to date without 
+ * being rebuilt. Listeners are called while the store is locked.
+ * @author Alvian Prasetya
+ */
+public interface LineStoreListener {
+	
+	/**
+	 * This method is called after a line has been inserted.
+	 * @param index		The zero-based index the line was inserted at.
+	 * @param line		The line that was inserted.
+	 */
+	public void lineAdded(int index, String line);
+	
+	/**
+	 * This method is called after a line has been removed.
+	 * @param index		The zero-based index the line was removed from.
+	 * @param line		The line that was removed.
+	 */
+	public void lineRemoved(int index, String line);
+	
+	/**
+	 * This method is called after the lines have been reordered. A store 
+	 * with listeners must keep track of the order whenever it sorts.
+	 * @param order		For every new index, the index the line had before, 
+	 * 					never null.
+	 */
+	public void linesSorted(int[] order);
+	
+	/**
+	 * This method is called after all lines have been removed.
+	 */
+	public void linesCleared();
+}
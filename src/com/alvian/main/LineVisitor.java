@@ -0,0 +1,20 @@
+package com.alvian.main;
+
+import java.io.IOException;
+
+/**
+ * This interface receives lines one at a time from a store, so that they 
+ * can be processed without collecting them first.
+ * @author Alvian Prasetya
+ */
+public interface LineVisitor {
+	
+	/**
+	 * This method is called for every visited line, in order.
+	 * @param index		The zero-based index of the line.
+	 * @param line		The line.
+	 * @return			True to visit the next line, false to stop.
+	 * @throws IOException	If the line cannot be processed.
+	 */
+	public boolean visit(int index, String line) throws IOException;
+}
@@ -0,0 +1,29 @@
+package com.alvian.main;
+
+/**
+ * This enum lists how a ResidentLineStore reads the storage file when it 
+ * is opened.
+ * SEQUENTIAL reads and decodes the lines on the opening thread.
+ * PARALLEL reads the file in chunks and decodes the chunks on the 
+ * parallelism threads while the next chunks are read (see ChunkedLineLoader).
+ * LAZY loads like PARALLEL on a background thread and returns at once; a 
+ * command waits only until the lines it needs are loaded.
+ * @author Alvian Prasetya
+ */
+public enum LoadMode {
+	SEQUENTIAL, PARALLEL, LAZY;
+	
+	/**
+	 * This method returns the load mode with the specified name.
+	 * @param name	The name of the load mode, case is ignored.
+	 * @return		The matching load mode.
+	 */
+	public static LoadMode fromName(String name) {
+		for (LoadMode loadMode : values()) {
+			if (loadMode.name().equalsIgnoreCase(name)) {
+				return loadMode;
+			}
+		}
+		throw new IllegalArgumentException("unknown load mode \"" + name + "\"");
+	}
+}
@@ -0,0 +1,175 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class stores the lines as a plain text snapshot (the storage file 
+ * itself) plus an OperationLog of the mutations made since the snapshot was 
+ * written. Every mutation costs one short append to the log, so deleting a 
+ * line no longer rewrites the storage file.
+ * Once the log grows past the compaction threshold, and when the store is 
+ * closed, the log is folded into a fresh snapshot on a background thread: 
+ * the current log is renamed to "<file>.log.old", a new log is started 
+ * against the snapshot about to be written, and the old log is deleted 
+ * once the snapshot is in place. Loading replays whichever logs match the 
+ * snapshot found on disk, so a crash at any point loses no flushed mutation.
+ * @author Alvian Prasetya
+ */
+public class LoggedStorageEngine implements StorageEngine {
+	
+	private static final String LOG_SUFFIX = ".log";
+	private static final String OLD_LOG_SUFFIX = ".log.old";
+	private static final String COMPACTOR_THREAD_NAME = "TextBuddy-compactor";
+	
+	private final File _file;
+	private final File _oldLogFile;
+	private final PlainTextStorageEngine _snapshotEngine;
+	private final OperationLog _log;
+	private final long _compactThreshold;
+	private final ExecutorService _compactor;
+	private Future<Void> _compaction;
+	private IOException _compactionException;
+	
+	/**
+	 * This is the default constructor for LoggedStorageEngine object.
+	 * @param file		The storage file holding the snapshot.
+	 * @param options	The options holding the compaction threshold.
+	 */
+	public LoggedStorageEngine(File file, TextBuddyOptions options) {
+		_file = file;
+		_oldLogFile = new File(file.getPath() + OLD_LOG_SUFFIX);
+		_snapshotEngine = new PlainTextStorageEngine(file, options);
+		_log = new OperationLog(new File(file.getPath() + LOG_SUFFIX));
+		_compactThreshold = options.getCompactThreshold();
+		_compactor = Executors.newSingleThreadExecutor(new DaemonThreadFactory(COMPACTOR_THREAD_NAME));
+	}
+	
+	@Override
+	public void load(List<String> lines) throws IOException {
+		_snapshotEngine.load(lines);
+		Fingerprint base = _snapshotEngine.getLoadedFingerprint();
+		boolean isOldLogReplayed = false;
+		
+		// A compaction was interrupted before its snapshot was in place.
+		if (_oldLogFile.exists() && new OperationLog(_oldLogFile).replay(base, lines)) {
+			base = Fingerprint.of(lines, _snapshotEngine.getCharset());
+			isOldLogReplayed = true;
+		}
+		boolean isLogReplayed = _log.getFile().exists() && _log.replay(base, lines);
+		
+		if (isOldLogReplayed) {
+			compactNow(lines);
+		} else if (!isLogReplayed) {
+			// The log is missing, or belongs to a snapshot that is gone.
+			_log.create(base);
+			Files.deleteIfExists(_oldLogFile.toPath());
+		}
+	}
+	
+	@Override
+	public boolean isLogged() {
+		return true;
+	}
+	
+	@Override
+	public boolean isCompactionDue(boolean isClosing) {
+		if (_compaction != null && !_compaction.isDone()) {
+			return false;
+		} else if (isClosing) {
+			return _log.hasRecords() || _oldLogFile.exists();
+		} else {
+			return _log.getLength() > _compactThreshold;
+		}
+	}
+	
+	@Override
+	public void write(ArrayList<Mutation> mutations, List<String> snapshot) throws IOException {
+		_log.append(mutations);
+		if (snapshot != null) {
+			// The mutations are safely logged, so a failed compaction is 
+			// only reported on close and retried on the next compaction.
+			try {
+				startCompaction(snapshot);
+			} catch (IOException exceptionMessage) {
+				_compactionException = exceptionMessage;
+			}
+		}
+	}
+	
+	/**
+	 * This method waits for a running compaction and closes the log.
+	 * @throws IOException	If the log cannot be closed or a compaction failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			awaitCompaction();
+		} finally {
+			_compactor.shutdown();
+			_log.close();
+		}
+		if (_compactionException != null) {
+			IOException exceptionToThrow = _compactionException;
+			_compactionException = null;
+			throw exceptionToThrow;
+		}
+	}
+	
+	private void startCompaction(final List<String> snapshot) throws IOException {
+		awaitCompaction();
+		if (_oldLogFile.exists()) {
+			// An earlier compaction failed, fold everything in one go.
+			compactNow(snapshot);
+			return;
+		}
+		_log.close();
+		AtomicFileWriter.replace(_log.getFile().toPath(), _oldLogFile.toPath());
+		_log.create(Fingerprint.of(snapshot, _snapshotEngine.getCharset()));
+		_compaction = _compactor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				writeSnapshot(snapshot);
+				Files.delete(_oldLogFile.toPath());
+				return null;
+			}
+		});
+	}
+	
+	private void compactNow(List<String> snapshot) throws IOException {
+		writeSnapshot(snapshot);
+		_log.create(Fingerprint.of(snapshot, _snapshotEngine.getCharset()));
+		Files.deleteIfExists(_oldLogFile.toPath());
+	}
+	
+	private void awaitCompaction() throws IOException {
+		if (_compaction == null) {
+			return;
+		}
+		try {
+			_compaction.get();
+		} catch (ExecutionException exceptionMessage) {
+			_compactionException = exceptionMessage.getCause() instanceof IOException 
+								   ? (IOException) exceptionMessage.getCause() 
+								   : new IOException(exceptionMessage.getCause());
+		} catch (InterruptedException exceptionMessage) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while compacting " + _file.getName());
+		} finally {
+			_compaction = null;
+		}
+	}
+	
+	private void writeSnapshot(List<String> snapshot) throws IOException {
+		AtomicFileWriter.writeLines(_file, snapshot, _snapshotEngine.getCharset());
+	}
+}
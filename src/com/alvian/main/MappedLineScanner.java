@@ -0,0 +1,204 @@
+package com.alvian.main;
+
+import java.io.IOException;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * This class reads lines of a storage file through memory-mapped windows 
+ * of the file instead of copying it through a buffer. Line boundaries are 
+ * found on the bytes, and a line is only decoded into a String when it is 
+ * handed to the visitor.
+ * Search matches the token with AsciiCase on the bytes of every line made 
+ * of ASCII bytes only; such a line decodes to the same ASCII characters in 
+ * every charset this class supports, so the result is the same as 
+ * lower-casing the decoded line. Lines with any other byte are 
+ * decoded and matched as Strings, so the results never differ from the 
+ * stream read path.
+ * A mapping stays in place until it is garbage collected, which on some 
+ * platforms keeps the storage file from being replaced until then.
+ * The channel is not closed by the scanner.
+ * @author Alvian Prasetya
+ */
+public class MappedLineScanner {
+	
+	// This is the most bytes mapped at once; a line may not be longer.
+	private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+	// This is the number of bytes scanned at once; it grows for longer lines.
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	private static final byte LINE_FEED = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+	
+	private final FileChannel _channel;
+	private final Charset _charset;
+	private byte[] _chunk = new byte[CHUNK_SIZE];
+	
+	/**
+	 * This is the default constructor for MappedLineScanner object.
+	 * @param channel	The channel of the storage file.
+	 * @param charset	The charset the lines are encoded in.
+	 */
+	public MappedLineScanner(FileChannel channel, Charset charset) {
+		_channel = channel;
+		_charset = charset;
+	}
+	
+	/**
+	 * This method tells whether lines in the charset can be matched on 
+	 * their bytes: every ASCII character must be encoded as its own single 
+	 * byte, and lower-casing ASCII letters in the default locale must give 
+	 * ASCII letters, which is not the case in e.g. a Turkish locale.
+	 * @param charset	The charset to check.
+	 * @return			True if the mapped read path gives correct results.
+	 */
+	public static boolean isSupported(Charset charset) {
+		return ChannelLineReader.isSupported(charset) && AsciiCase.isSupported(charset);
+	}
+	
+	/**
+	 * This method passes the lines from the start index (inclusive) to the 
+	 * end index (exclusive) to the visitor, in order.
+	 * @param offset		The byte offset of a line at or before the start index.
+	 * @param offsetLine	The index of the line at that offset.
+	 * @param fromIndex		The index of the first line to visit.
+	 * @param toIndex		The index after the last line to visit.
+	 * @param visitor		The visitor to pass the lines to.
+	 * @throws IOException	If the file cannot be read or the visitor fails.
+	 */
+	public void scan(long offset, int offsetLine, final int fromIndex, final int toIndex, 
+					 final LineVisitor visitor) throws IOException {
+		if (fromIndex >= toIndex) {
+			return;
+		}
+		forEachLine(offset, offsetLine, new LineHandler() {
+			@Override
+			public boolean handle(byte[] chunk, int start, int end, boolean isAscii, int index) 
+					throws IOException {
+				if (index < fromIndex) {
+					return true;
+				}
+				return visitor.visit(index, decode(chunk, start, end)) && index + 1 < toIndex;
+			}
+		});
+	}
+	
+	/**
+	 * This method passes the lines containing the token, ignoring case, to 
+	 * the visitor in order, decoding only those lines.
+	 * @param tokenLowerCase	The lower-cased token to search for.
+	 * @param visitor			The visitor to pass the matching lines to.
+	 * @throws IOException		If the file cannot be read or the visitor fails.
+	 */
+	public void search(final String tokenLowerCase, final LineVisitor visitor) throws IOException {
+		final byte[] tokenBytes = AsciiCase.getBytes(tokenLowerCase);
+		
+		forEachLine(0, 0, new LineHandler() {
+			@Override
+			public boolean handle(byte[] chunk, int start, int end, boolean isAscii, int index) 
+					throws IOException {
+				if (isAscii) {
+					// An ASCII line cannot contain a token with other characters.
+					if (tokenBytes != null && AsciiCase.contains(chunk, start, end, tokenBytes)) {
+						return visitor.visit(index, decode(chunk, start, end));
+					}
+					return true;
+				}
+				String line = decode(chunk, start, end);
+				if (line.toLowerCase().contains(tokenLowerCase)) {
+					return visitor.visit(index, line);
+				}
+				return true;
+			}
+		});
+	}
+	
+	/**
+	 * This method maps the file window by window from the offset and hands 
+	 * every line to the handler as a range of bytes, without the line feed 
+	 * and the carriage return before it. The bytes are copied from the 
+	 * window into a chunk array in bulk, as scanning an array is much faster 
+	 * than reading a buffer byte by byte.
+	 */
+	private void forEachLine(long offset, int offsetLine, LineHandler handler) throws IOException {
+		long fileSize = _channel.size();
+		long position = offset;
+		int lineIndex = offsetLine;
+		MappedByteBuffer window = null;
+		long windowStart = 0;
+		long windowEnd = 0;
+		
+		while (position < fileSize) {
+			if (window == null || (windowEnd - position < _chunk.length && windowEnd < fileSize)) {
+				windowStart = position;
+				windowEnd = Math.min(position + WINDOW_SIZE, fileSize);
+				window = _channel.map(FileChannel.MapMode.READ_ONLY, windowStart, 
+									  windowEnd - windowStart);
+			}
+			int chunkLength = (int) Math.min(_chunk.length, windowEnd - position);
+			window.position((int) (position - windowStart));
+			window.get(_chunk, 0, chunkLength);
+			Metrics.recordBytesRead(chunkLength);
+			boolean isFileEnd = position + chunkLength == fileSize;
+			int lineStart = 0;
+			boolean isAscii = true;
+			
+			for (int i = 0; i < chunkLength; i++) {
+				byte currentByte = _chunk[i];
+				if (currentByte == LINE_FEED) {
+					if (!handler.handle(_chunk, lineStart, getLineEnd(_chunk, lineStart, i), isAscii, 
+										lineIndex++)) {
+						return;
+					}
+					lineStart = i + 1;
+					isAscii = true;
+				} else if (currentByte < 0) {
+					isAscii = false;
+				}
+			}
+			
+			if (isFileEnd) {
+				// The last line of the file may have no line feed.
+				if (lineStart < chunkLength) {
+					handler.handle(_chunk, lineStart, getLineEnd(_chunk, lineStart, chunkLength), 
+								   isAscii, lineIndex);
+				}
+				return;
+			}
+			if (lineStart == 0 && chunkLength == _chunk.length) {
+				// The line does not fit the chunk, read it again into a larger one.
+				if (_chunk.length >= WINDOW_SIZE) {
+					throw new IOException("line at offset " + position + " is longer than " 
+										  + WINDOW_SIZE + " bytes");
+				}
+				_chunk = new byte[(int) Math.min(_chunk.length * 2L, WINDOW_SIZE)];
+			}
+			// The next chunk starts at the line cut off by this one.
+			position += lineStart;
+		}
+	}
+	
+	private String decode(byte[] chunk, int start, int end) {
+		return new String(chunk, start, end - start, _charset);
+	}
+	
+	private static int getLineEnd(byte[] chunk, int lineStart, int lineFeedPosition) {
+		if (lineFeedPosition > lineStart && chunk[lineFeedPosition - 1] == CARRIAGE_RETURN) {
+			return lineFeedPosition - 1;
+		}
+		return lineFeedPosition;
+	}
+	
+	/**
+	 * This interface receives the lines found by forEachLine.
+	 */
+	private interface LineHandler {
+		
+		/**
+		 * @return	False to stop at this line.
+		 */
+		boolean handle(byte[] chunk, int start, int end, boolean isAscii, int index) 
+				throws IOException;
+	}
+}
@@ -0,0 +1,197 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class holds the statistics of every TextBuddy in the process: one 
+ * CommandStats per command verb, one StorageStats for the work done on 
+ * storage files and one CacheStats for the result caches. Each is 
+ * registered as an MBean the first time it is used, so it can be watched 
+ * with any JMX client; if the platform MBean server refuses it, the 
+ * statistics are still kept and shown by "stats". The registration runs on 
+ * a background thread, as starting the platform MBean server takes longer 
+ * than TextBuddy itself takes to start.
+ * Recording never locks: looking up the statistics of a verb is one map 
+ * read, and the counters are atomic.
+ * The report can also be written to a file periodically, replacing its 
+ * content every time.
+ * @author Alvian Prasetya
+ */
+public class Metrics {
+	
+	private static final String OBJECT_NAME_DOMAIN = "com.alvian.textbuddy";
+	private static final String OBJECT_NAME_COMMAND = OBJECT_NAME_DOMAIN + ":type=Command,name=";
+	private static final String OBJECT_NAME_STORAGE = OBJECT_NAME_DOMAIN + ":type=Storage";
+	private static final String OBJECT_NAME_CACHE = OBJECT_NAME_DOMAIN + ":type=ResultCache";
+	private static final String BACKGROUND_THREAD_NAME = "TextBuddy-metrics";
+	private static final String FORMAT_COMMAND_HEADER = "%1$-10s %2$10s %3$12s %4$10s %5$10s %6$10s%n";
+	private static final String FORMAT_COMMAND_ROW = "%1$-10s %2$10d %3$12.1f %4$10d %5$10d %6$10d%n";
+	private static final String FORMAT_STORAGE_ROW = "%1$-16s %2$d%n";
+	
+	// This thread registers the MBeans and writes the periodic dumps.
+	private static final ScheduledExecutorService BACKGROUND_EXECUTOR 
+			= Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(BACKGROUND_THREAD_NAME));
+	private static final StorageStats STORAGE_STATS = register(new StorageStats(), OBJECT_NAME_STORAGE);
+	private static final CacheStats CACHE_STATS = register(new CacheStats(), OBJECT_NAME_CACHE);
+	private static final ConcurrentHashMap<String, CommandStats> COMMAND_STATS 
+			= new ConcurrentHashMap<String, CommandStats>();
+	private static boolean _isDumpStarted = false;
+	
+	private Metrics() {
+		// Only the static methods are used.
+	}
+	
+	/**
+	 * This method returns the statistics of the command, creating and 
+	 * registering them the first time the verb is seen.
+	 * @param verb	The verb of the command.
+	 * @return		The statistics of the command.
+	 */
+	public static CommandStats getCommandStats(String verb) {
+		CommandStats commandStats = COMMAND_STATS.get(verb);
+		if (commandStats != null) {
+			return commandStats;
+		}
+		CommandStats newCommandStats = new CommandStats(verb);
+		commandStats = COMMAND_STATS.putIfAbsent(verb, newCommandStats);
+		if (commandStats != null) {
+			return commandStats;
+		}
+		return register(newCommandStats, OBJECT_NAME_COMMAND + ObjectName.quote(verb));
+	}
+	
+	public static StorageStats getStorageStats() {
+		return STORAGE_STATS;
+	}
+	
+	public static CacheStats getCacheStats() {
+		return CACHE_STATS;
+	}
+	
+	public static void recordBytesRead(long bytes) {
+		STORAGE_STATS.addBytesRead(bytes);
+	}
+	
+	public static void recordBytesWritten(long bytes) {
+		STORAGE_STATS.addBytesWritten(bytes);
+	}
+	
+	public static void recordLinesScanned(long lineCount) {
+		STORAGE_STATS.addLinesScanned(lineCount);
+	}
+	
+	public static void recordRewrite() {
+		STORAGE_STATS.addRewrite();
+	}
+	
+	public static void recordException() {
+		STORAGE_STATS.addException();
+	}
+	
+	/**
+	 * This method writes a table of the command statistics, ordered by 
+	 * verb, followed by the storage and the cache statistics.
+	 * @param output	The writer receiving the report.
+	 * @throws IOException	If the report cannot be written.
+	 */
+	public static void writeReport(Writer output) throws IOException {
+		output.write(String.format(FORMAT_COMMAND_HEADER, "command", "count", "mean(us)", "p50(us)", 
+								   "p99(us)", "max(us)"));
+		TreeMap<String, CommandStats> sortedStats = new TreeMap<String, CommandStats>(COMMAND_STATS);
+		for (CommandStats commandStats : sortedStats.values()) {
+			output.write(String.format(FORMAT_COMMAND_ROW, commandStats.getVerb(), 
+						 commandStats.getCount(), commandStats.getMeanMicros(), 
+						 commandStats.getMedianMicros(), commandStats.getP99Micros(), 
+						 commandStats.getMaxMicros()));
+		}
+		output.write(String.format(FORMAT_STORAGE_ROW, "bytes read", STORAGE_STATS.getBytesRead()));
+		output.write(String.format(FORMAT_STORAGE_ROW, "bytes written", 
+					 STORAGE_STATS.getBytesWritten()));
+		output.write(String.format(FORMAT_STORAGE_ROW, "lines scanned", 
+					 STORAGE_STATS.getLinesScanned()));
+		output.write(String.format(FORMAT_STORAGE_ROW, "rewrites", STORAGE_STATS.getRewriteCount()));
+		output.write(String.format(FORMAT_STORAGE_ROW, "exceptions", 
+					 STORAGE_STATS.getExceptionCount()));
+		output.write(String.format(FORMAT_STORAGE_ROW, "cache hits", CACHE_STATS.getHitCount()));
+		output.write(String.format(FORMAT_STORAGE_ROW, "cache misses", CACHE_STATS.getMissCount()));
+		output.write(String.format(FORMAT_STORAGE_ROW, "cache evictions", 
+					 CACHE_STATS.getEvictionCount()));
+	}
+	
+	/**
+	 * This method replaces the content of the file with the report. The 
+	 * file is written next to its final place first, so a reader never 
+	 * sees half a report.
+	 * @param file	The file to write the report to.
+	 * @throws IOException	If the report cannot be written.
+	 */
+	public static void dump(File file) throws IOException {
+		StringWriter report = new StringWriter();
+		writeReport(report);
+		Path target = file.toPath().toAbsolutePath();
+		Path temporaryFile = Files.createTempFile(target.getParent(), target.getFileName() + ".", 
+												  ".tmp");
+		try {
+			Files.write(temporaryFile, report.toString().getBytes(StandardCharsets.UTF_8));
+			AtomicFileWriter.replace(temporaryFile, target);
+		} finally {
+			Files.deleteIfExists(temporaryFile);
+		}
+	}
+	
+	/**
+	 * This method starts writing the report to the file at a fixed interval 
+	 * on a daemon thread. Only the first call starts the dump; later calls 
+	 * are ignored, as every TextBuddy of the process shares the statistics.
+	 * A failed dump is skipped and tried again at the next interval.
+	 * @param file				The file to write the report to.
+	 * @param intervalMillis	The time between two dumps, in milliseconds.
+	 */
+	public static synchronized void startDump(final File file, long intervalMillis) {
+		if (_isDumpStarted) {
+			return;
+		}
+		_isDumpStarted = true;
+		BACKGROUND_EXECUTOR.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					dump(file);
+				} catch (IOException exceptionMessage) {
+					// The next dump tries again.
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	private static <T> T register(final T mbean, final String objectName) {
+		BACKGROUND_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, 
+																			 new ObjectName(objectName));
+				} catch (JMException | SecurityException exceptionMessage) {
+					// The statistics are still kept, only not visible through JMX.
+				}
+			}
+		});
+		return mbean;
+	}
+}
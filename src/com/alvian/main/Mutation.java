@@ -0,0 +1,68 @@
+package com.alvian.main;
+
+/**
+ * This class describes a single change made to the lines of a store, so 
+ * that a StorageEngine can write the change without looking at the lines.
+ * @author Alvian Prasetya
+ */
+public class Mutation {
+	
+	public enum Type {
+		ADD, INSERT, DELETE, SORT, CLEAR 
+	}
+	
+	private static final Mutation SORT_MUTATION = new Mutation(Type.SORT, -1, null);
+	private static final Mutation CLEAR_MUTATION = new Mutation(Type.CLEAR, -1, null);
+	
+	private final Type _type;
+	private final int _index;
+	private final String _line;
+	
+	private Mutation(Type type, int index, String line) {
+		_type = type;
+		_index = index;
+		_line = line;
+	}
+	
+	public static Mutation add(String line) {
+		return new Mutation(Type.ADD, -1, line);
+	}
+	
+	public static Mutation insert(int index, String line) {
+		return new Mutation(Type.INSERT, index, line);
+	}
+	
+	public static Mutation delete(int index) {
+		return new Mutation(Type.DELETE, index, null);
+	}
+	
+	public static Mutation sort() {
+		return SORT_MUTATION;
+	}
+	
+	public static Mutation clear() {
+		return CLEAR_MUTATION;
+	}
+	
+	public Type getType() {
+		return _type;
+	}
+	
+	/**
+	 * This method returns the zero-based index of the inserted or deleted 
+	 * line, or -1 if the mutation is neither an insert nor a delete.
+	 * @return	The index affected by the mutation.
+	 */
+	public int getIndex() {
+		return _index;
+	}
+	
+	/**
+	 * This method returns the added or inserted line, or null if the 
+	 * mutation is neither an add nor an insert.
+	 * @return	The line added by the mutation.
+	 */
+	public String getLine() {
+		return _line;
+	}
+}
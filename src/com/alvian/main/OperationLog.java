@@ -0,0 +1,341 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * This class reads and appends the operation log kept next to a storage 
+ * file by LoggedStorageEngine. The log is a UTF-8 text file with one record 
+ * per line. The first record is a header holding the fingerprint of the 
+ * storage file the log applies to, and every following record is one 
+ * mutation:
+ 
+ # <byte length> <checksum>
+ A	<added line>
+ I	<zero-based index of inserted line>	<inserted line>
+ D	<zero-based index of deleted line>
+ S
+ C
+ 
+ * Backslashes and line breaks inside added lines are escaped. A record 
+ * that is not terminated by a line break was cut short by a crash and is 
+ * ignored, along with anything after it.
+ * @author Alvian Prasetya
+ */
+public class OperationLog implements Closeable {
+	
+	private static final char RECORD_HEADER = '#';
+	private static final char RECORD_ADD = 'A';
+	private static final char RECORD_INSERT = 'I';
+	private static final char RECORD_DELETE = 'D';
+	private static final char RECORD_SORT = 'S';
+	private static final char RECORD_CLEAR = 'C';
+	private static final char FIELD_SEPARATOR = '\t';
+	private static final byte RECORD_SEPARATOR = '\n';
+	private static final char ESCAPE = '\\';
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final File _file;
+	private FileOutputStream _stream;
+	private BufferedOutputStream _output;
+	// Number of bytes of the log known to hold complete records.
+	private long _length = 0;
+	private long _headerLength = 0;
+	private boolean _isTruncateRequired = false;
+	
+	public OperationLog(File file) {
+		_file = file;
+	}
+	
+	public File getFile() {
+		return _file;
+	}
+	
+	/**
+	 * This method returns the number of bytes of complete records in the log, 
+	 * including the header.
+	 * @return	The length of the log in bytes.
+	 */
+	public long getLength() {
+		return _length;
+	}
+	
+	/**
+	 * This method tells whether the log holds any record after its header.
+	 * @return	True if at least one mutation has been logged.
+	 */
+	public boolean hasRecords() {
+		return _length > _headerLength;
+	}
+	
+	/**
+	 * This method applies the records of an existing log to the specified 
+	 * lines, provided that the log was written against the storage file 
+	 * with the specified fingerprint. Later appends continue after the last 
+	 * complete record.
+	 * @param base		The fingerprint of the storage file the lines were read from.
+	 * @param lines		The lines to apply the records to.
+	 * @return			True if the log applied to the lines and was replayed.
+	 * @throws IOException	If the log cannot be read.
+	 */
+	public boolean replay(Fingerprint base, List<String> lines) throws IOException {
+		byte[] content = Files.readAllBytes(_file.toPath());
+		Metrics.recordBytesRead(content.length);
+		int recordStart = 0;
+		int recordEnd = indexOf(content, RECORD_SEPARATOR, recordStart);
+		
+		if (recordEnd < 0 || !isHeaderFor(base, decode(content, recordStart, recordEnd))) {
+			return false;
+		}
+		_headerLength = recordEnd + 1;
+		recordStart = recordEnd + 1;
+		recordEnd = indexOf(content, RECORD_SEPARATOR, recordStart);
+		while (recordEnd >= 0 && applyRecord(decode(content, recordStart, recordEnd), lines)) {
+			recordStart = recordEnd + 1;
+			recordEnd = indexOf(content, RECORD_SEPARATOR, recordStart);
+		}
+		_length = recordStart;
+		// Drop the remains of a record that was cut short.
+		_isTruncateRequired = _length < content.length;
+		return true;
+	}
+	
+	/**
+	 * This method starts a new, empty log for the storage file with the 
+	 * specified fingerprint, replacing any existing log.
+	 * @param base	The fingerprint of the storage file the log applies to.
+	 * @throws IOException	If the log cannot be written.
+	 */
+	public void create(Fingerprint base) throws IOException {
+		close();
+		_stream = new FileOutputStream(_file, false);
+		_output = new BufferedOutputStream(_stream, BUFFER_SIZE);
+		_length = 0;
+		_headerLength = 0;
+		_isTruncateRequired = false;
+		writeRecord(RECORD_HEADER + " " + base);
+		_output.flush();
+		_headerLength = _length;
+	}
+	
+	/**
+	 * This method appends the specified mutations to the log.
+	 * @param mutations		The mutations to append, in order.
+	 * @throws IOException	If the mutations cannot be written. The log is 
+	 * 						cut back to its last complete record before the 
+	 * 						next append.
+	 */
+	public void append(List<Mutation> mutations) throws IOException {
+		long lengthBeforeAppend = _length;
+		try {
+			ensureOpen();
+			for (int i = 0; i < mutations.size(); i++) {
+				writeRecord(encode(mutations.get(i)));
+			}
+			_output.flush();
+		} catch (IOException exceptionMessage) {
+			_length = lengthBeforeAppend;
+			_isTruncateRequired = true;
+			close();
+			throw exceptionMessage;
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (_output != null) {
+			try {
+				_output.close();
+			} finally {
+				_output = null;
+				_stream = null;
+			}
+		}
+	}
+	
+	/**
+	 * This method applies a single mutation to the specified lines, exactly 
+	 * as ResidentLineStore applied it when it was logged.
+	 * @param mutation	The mutation to apply.
+	 * @param lines		The lines to change.
+	 */
+	public static void apply(Mutation mutation, List<String> lines) {
+		switch (mutation.getType()) {
+			case ADD :
+				lines.add(mutation.getLine());
+				break;
+			case INSERT :
+				lines.add(mutation.getIndex(), mutation.getLine());
+				break;
+			case DELETE :
+				lines.remove(mutation.getIndex());
+				break;
+			case SORT :
+				LineSorter.sort(lines);
+				break;
+			case CLEAR :
+				lines.clear();
+				break;
+			default :
+				throw new IllegalArgumentException("unknown mutation " + mutation.getType());
+		}
+	}
+	
+	private void ensureOpen() throws IOException {
+		if (_output != null) {
+			return;
+		}
+		if (_headerLength == 0) {
+			throw new IOException("operation log " + _file.getName() + " has no header");
+		}
+		_stream = new FileOutputStream(_file, true);
+		if (_isTruncateRequired) {
+			FileChannel channel = _stream.getChannel();
+			channel.truncate(_length);
+			channel.position(_length);
+			_isTruncateRequired = false;
+		}
+		_output = new BufferedOutputStream(_stream, BUFFER_SIZE);
+	}
+	
+	private void writeRecord(String record) throws IOException {
+		byte[] recordBytes = record.getBytes(StandardCharsets.UTF_8);
+		_output.write(recordBytes);
+		_output.write(RECORD_SEPARATOR);
+		_length += recordBytes.length + 1;
+		Metrics.recordBytesWritten(recordBytes.length + 1);
+	}
+	
+	private static boolean isHeaderFor(Fingerprint base, String header) {
+		if (header.length() < 2 || header.charAt(0) != RECORD_HEADER) {
+			return false;
+		}
+		return base.equals(Fingerprint.parse(header.substring(2)));
+	}
+	
+	private static String encode(Mutation mutation) {
+		switch (mutation.getType()) {
+			case ADD :
+				return RECORD_ADD + String.valueOf(FIELD_SEPARATOR) + escape(mutation.getLine());
+			case INSERT :
+				return RECORD_INSERT + String.valueOf(FIELD_SEPARATOR) + mutation.getIndex() 
+					   + FIELD_SEPARATOR + escape(mutation.getLine());
+			case DELETE :
+				return RECORD_DELETE + String.valueOf(FIELD_SEPARATOR) + mutation.getIndex();
+			case SORT :
+				return String.valueOf(RECORD_SORT);
+			case CLEAR :
+				return String.valueOf(RECORD_CLEAR);
+			default :
+				throw new IllegalArgumentException("unknown mutation " + mutation.getType());
+		}
+	}
+	
+	/**
+	 * This method applies one record to the lines.
+	 * @return	False if the record is malformed and replay should stop.
+	 */
+	private static boolean applyRecord(String record, List<String> lines) {
+		if (record.isEmpty()) {
+			return false;
+		}
+		char recordType = record.charAt(0);
+		String field = record.length() > 1 && record.charAt(1) == FIELD_SEPARATOR 
+					   ? record.substring(2) : null;
+		
+		if (recordType == RECORD_ADD && field != null) {
+			apply(Mutation.add(unescape(field)), lines);
+		} else if (recordType == RECORD_INSERT && field != null) {
+			int separatorIndex = field.indexOf(FIELD_SEPARATOR);
+			if (separatorIndex < 0) {
+				return false;
+			}
+			int index;
+			try {
+				index = Integer.parseInt(field.substring(0, separatorIndex));
+			} catch (NumberFormatException exceptionMessage) {
+				return false;
+			}
+			if (index < 0 || index > lines.size()) {
+				return false;
+			}
+			apply(Mutation.insert(index, unescape(field.substring(separatorIndex + 1))), lines);
+		} else if (recordType == RECORD_DELETE && field != null) {
+			int index;
+			try {
+				index = Integer.parseInt(field);
+			} catch (NumberFormatException exceptionMessage) {
+				return false;
+			}
+			if (index < 0 || index >= lines.size()) {
+				return false;
+			}
+			apply(Mutation.delete(index), lines);
+		} else if (recordType == RECORD_SORT && record.length() == 1) {
+			apply(Mutation.sort(), lines);
+		} else if (recordType == RECORD_CLEAR && record.length() == 1) {
+			apply(Mutation.clear(), lines);
+		} else {
+			return false;
+		}
+		return true;
+	}
+	
+	private static String escape(String line) {
+		if (line.indexOf(ESCAPE) < 0 && line.indexOf('\n') < 0 && line.indexOf('\r') < 0) {
+			return line;
+		}
+		StringBuilder escapedLine = new StringBuilder(line.length() + 8);
+		for (int i = 0; i < line.length(); i++) {
+			char currentChar = line.charAt(i);
+			if (currentChar == ESCAPE) {
+				escapedLine.append(ESCAPE).append(ESCAPE);
+			} else if (currentChar == '\n') {
+				escapedLine.append(ESCAPE).append('n');
+			} else if (currentChar == '\r') {
+				escapedLine.append(ESCAPE).append('r');
+			} else {
+				escapedLine.append(currentChar);
+			}
+		}
+		return escapedLine.toString();
+	}
+	
+	private static String unescape(String field) {
+		if (field.indexOf(ESCAPE) < 0) {
+			return field;
+		}
+		StringBuilder line = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++) {
+			char currentChar = field.charAt(i);
+			if (currentChar == ESCAPE && i + 1 < field.length()) {
+				char escapedChar = field.charAt(++i);
+				line.append(escapedChar == 'n' ? '\n' : escapedChar == 'r' ? '\r' : escapedChar);
+			} else {
+				line.append(currentChar);
+			}
+		}
+		return line.toString();
+	}
+	
+	private static String decode(byte[] content, int start, int end) {
+		return new String(content, start, end - start, StandardCharsets.UTF_8);
+	}
+	
+	private static int indexOf(byte[] content, byte value, int start) {
+		for (int i = start; i < content.length; i++) {
+			if (content[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,180 @@
+package com.alvian.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class sorts and searches resident lines on a fork-join pool of the 
+ * configured parallelism. Lists shorter than the cutoff are handled by the 
+ * caller sequentially, since splitting them costs more than it saves.
+ * Results are identical to the sequential path: the sort is a stable merge 
+ * sort under String.CASE_INSENSITIVE_ORDER, and search results are joined 
+ * back in the order the lines are stored.
+ * @author Alvian Prasetya
+ */
+public class ParallelLineProcessor {
+	
+	// This is the number of chunks handed to every thread of the pool.
+	private static final int CHUNKS_PER_THREAD = 4;
+	
+	private final ForkJoinPool _pool;
+	private final int _cutoff;
+	
+	/**
+	 * This is the default constructor for ParallelLineProcessor object.
+	 * @param parallelism	The number of threads of the pool.
+	 * @param cutoff		The minimum number of lines worth splitting.
+	 */
+	public ParallelLineProcessor(int parallelism, int cutoff) {
+		_pool = new ForkJoinPool(parallelism);
+		_cutoff = cutoff;
+	}
+	
+	/**
+	 * This method tells whether the lines are numerous enough to be 
+	 * processed in parallel.
+	 * @param lineCount		The number of lines to process.
+	 * @return				True if the lines should be processed in parallel.
+	 */
+	public boolean isWorthwhile(int lineCount) {
+		return lineCount >= _cutoff;
+	}
+	
+	/**
+	 * This method sorts the lines in place, like LineSorter.sortWithOrder.
+	 * @param lines		The lines to sort.
+	 * @return			For every new index, the index the line had before.
+	 */
+	public int[] sortWithOrder(List<String> lines) {
+		final LineSorter.IndexedLine[] indexedLines = LineSorter.toIndexedLines(lines);
+		final int chunkSize = getChunkSize(indexedLines.length);
+		_pool.invoke(new MergeSortTask(indexedLines, 
+									   new LineSorter.IndexedLine[indexedLines.length], 
+									   0, indexedLines.length, chunkSize));
+		return LineSorter.fromIndexedLines(indexedLines, lines);
+	}
+	
+	/**
+	 * This method returns the lines containing the token, in stored order.
+	 * @param lines					The lines to search.
+	 * @param searchTokenLowerCase	The lower case substring to search for.
+	 * @return						The array list of matching lines.
+	 */
+	public ArrayList<String> search(List<String> lines, String searchTokenLowerCase) {
+		return _pool.invoke(new SearchTask(lines, searchTokenLowerCase, 0, lines.size(), 
+										   getChunkSize(lines.size())));
+	}
+	
+	/**
+	 * This method stops the threads of the pool.
+	 */
+	public void close() {
+		_pool.shutdown();
+	}
+	
+	private int getChunkSize(int lineCount) {
+		int chunkCount = _pool.getParallelism() * CHUNKS_PER_THREAD;
+		return Math.max(1, (lineCount + chunkCount - 1) / chunkCount);
+	}
+	
+	/**
+	 * This class sorts a range of lines, using the buffer for merging.
+	 */
+	private static class MergeSortTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final LineSorter.IndexedLine[] _lines;
+		private final LineSorter.IndexedLine[] _buffer;
+		private final int _fromIndex;
+		private final int _toIndex;
+		private final int _chunkSize;
+		
+		MergeSortTask(LineSorter.IndexedLine[] lines, LineSorter.IndexedLine[] buffer, 
+					  int fromIndex, int toIndex, int chunkSize) {
+			_lines = lines;
+			_buffer = buffer;
+			_fromIndex = fromIndex;
+			_toIndex = toIndex;
+			_chunkSize = chunkSize;
+		}
+		
+		@Override
+		protected void compute() {
+			if (_toIndex - _fromIndex <= _chunkSize) {
+				LineSorter.sort(_lines, _fromIndex, _toIndex);
+				return;
+			}
+			int middleIndex = (_fromIndex + _toIndex) >>> 1;
+			invokeAll(new MergeSortTask(_lines, _buffer, _fromIndex, middleIndex, _chunkSize), 
+					  new MergeSortTask(_lines, _buffer, middleIndex, _toIndex, _chunkSize));
+			merge(middleIndex);
+		}
+		
+		private void merge(int middleIndex) {
+			System.arraycopy(_lines, _fromIndex, _buffer, _fromIndex, _toIndex - _fromIndex);
+			int leftIndex = _fromIndex;
+			int rightIndex = middleIndex;
+			for (int i = _fromIndex; i < _toIndex; i++) {
+				// On equal lines the left half goes first to keep the sort stable.
+				if (rightIndex >= _toIndex || (leftIndex < middleIndex && 
+						LineSorter.IndexedLine.CASE_INSENSITIVE_ORDER.compare(
+						_buffer[leftIndex], _buffer[rightIndex]) <= 0)) {
+					_lines[i] = _buffer[leftIndex++];
+				} else {
+					_lines[i] = _buffer[rightIndex++];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * This class searches a range of lines.
+	 */
+	private static class SearchTask extends RecursiveTask<ArrayList<String>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final List<String> _lines;
+		private final String _searchTokenLowerCase;
+		private final int _fromIndex;
+		private final int _toIndex;
+		private final int _chunkSize;
+		
+		SearchTask(List<String> lines, String searchTokenLowerCase, int fromIndex, int toIndex, 
+				   int chunkSize) {
+			_lines = lines;
+			_searchTokenLowerCase = searchTokenLowerCase;
+			_fromIndex = fromIndex;
+			_toIndex = toIndex;
+			_chunkSize = chunkSize;
+		}
+		
+		@Override
+		protected ArrayList<String> compute() {
+			if (_toIndex - _fromIndex <= _chunkSize) {
+				ArrayList<String> searchResult = new ArrayList<String>();
+				for (int i = _fromIndex; i < _toIndex; i++) {
+					String line = _lines.get(i);
+					if (line.toLowerCase().contains(_searchTokenLowerCase)) {
+						searchResult.add(line);
+					}
+				}
+				return searchResult;
+			}
+			int middleIndex = (_fromIndex + _toIndex) >>> 1;
+			SearchTask rightTask = new SearchTask(_lines, _searchTokenLowerCase, middleIndex, 
+												  _toIndex, _chunkSize);
+			rightTask.fork();
+			ArrayList<String> searchResult = new SearchTask(_lines, _searchTokenLowerCase, 
+															_fromIndex, middleIndex, 
+															_chunkSize).compute();
+			// Joining the right half after the left keeps the stored order.
+			searchResult.addAll(rightTask.join());
+			return searchResult;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * This class stores the lines as a plain text storage file, one line per 
+ * line of the file. Added lines are appended to the file and every other 
+ * change rewrites the whole file through an AtomicFileWriter, so the file 
+ * always holds either the old or the new lines. Unless the load mode is 
+ * sequential, the file is loaded by a ChunkedLineLoader.
+ * @author Alvian Prasetya
+ */
+public class PlainTextStorageEngine implements StorageEngine {
+	
+	private final File _file;
+	private final Charset _charset = Charset.defaultCharset();
+	private final int _loadThreads;
+	private Fingerprint _loadedFingerprint;
+	
+	/**
+	 * This is the default constructor for PlainTextStorageEngine object.
+	 * @param file		The storage file.
+	 * @param options	The options holding the load mode and parallelism.
+	 */
+	public PlainTextStorageEngine(File file, TextBuddyOptions options) {
+		_file = file;
+		boolean isChunked = options.getLoadMode() != LoadMode.SEQUENTIAL 
+							&& ChunkedLineLoader.isSupported(_charset);
+		_loadThreads = isChunked ? options.getParallelism() : 0;
+	}
+	
+	@Override
+	public void load(List<String> lines) throws IOException {
+		if (_loadThreads > 0) {
+			_loadedFingerprint = new ChunkedLineLoader(_charset, _loadThreads).load(_file, lines);
+			return;
+		}
+		CRC32 checksum = new CRC32();
+		// Initialize the required reader objects to read the storage file.
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new CheckedInputStream(new FileInputStream(_file), checksum), _charset))) {
+			String currentLine = reader.readLine();
+			
+			while (currentLine != null) {
+				lines.add(currentLine);
+				currentLine = reader.readLine();
+			}
+			long fileLength = _file.length();
+			_loadedFingerprint = new Fingerprint(fileLength, checksum.getValue());
+			Metrics.recordBytesRead(fileLength);
+		}
+	}
+	
+	/**
+	 * This method returns the fingerprint of the storage file as it was 
+	 * read by the last call to load.
+	 * @return	The fingerprint of the loaded storage file.
+	 */
+	public Fingerprint getLoadedFingerprint() {
+		return _loadedFingerprint;
+	}
+	
+	public Charset getCharset() {
+		return _charset;
+	}
+	
+	@Override
+	public boolean isLogged() {
+		return false;
+	}
+	
+	@Override
+	public boolean isCompactionDue(boolean isClosing) {
+		return false;
+	}
+	
+	@Override
+	public void write(ArrayList<Mutation> mutations, List<String> snapshot) throws IOException {
+		if (snapshot != null) {
+			AtomicFileWriter.writeLines(_file, snapshot, _charset);
+		} else {
+			appendLines(mutations);
+		}
+	}
+	
+	@Override
+	public void close() {
+		// Nothing is kept open between writes.
+	}
+	
+	private void appendLines(ArrayList<Mutation> mutations) throws IOException {
+		long fileLength = _file.length();
+		// Initialize the required writer objects to write into storage file.
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(_file, true))) {
+			for (int i = 0; i < mutations.size(); i++) {
+				writer.write(mutations.get(i).getLine());
+				writer.newLine();
+			}
+		} finally {
+			Metrics.recordBytesWritten(_file.length() - fileLength);
+		}
+	}
+}
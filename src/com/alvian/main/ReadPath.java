@@ -0,0 +1,26 @@
+package com.alvian.main;
+
+/**
+ * This enum lists how a DirectLineStore reads the storage file.
+ * STREAM reads the file through a buffer and decodes every line it reads.
+ * MAPPED memory-maps the file and decodes only the lines it returns, 
+ * matching search tokens on the bytes (see MappedLineScanner).
+ * @author Alvian Prasetya
+ */
+public enum ReadPath {
+	STREAM, MAPPED;
+	
+	/**
+	 * This method returns the read path with the specified name.
+	 * @param name	The name of the read path, case is ignored.
+	 * @return		The matching read path.
+	 */
+	public static ReadPath fromName(String name) {
+		for (ReadPath readPath : values()) {
+			if (readPath.name().equalsIgnoreCase(name)) {
+				return readPath;
+			}
+		}
+		throw new IllegalArgumentException("unknown read path \"" + name + "\"");
+	}
+}
@@ -0,0 +1,516 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps every line of a storage file resident in memory. The 
+ * storage file is read once when the store is created, after which the 
+ * in-memory lines are the authoritative copy and commands never re-read 
+ * the file. Changes are handed to a WriteBehindFlusher which writes them 
+ * through the configured StorageEngine according to the durability, and 
+ * to the TrigramIndex if the store is indexed.
+ * Methods that change the lines are synchronized on the store so that a 
+ * background flush always sees a consistent set of lines, and also hold 
+ * the write lock of the store. Methods that only read the lines hold the 
+ * read lock, so any number of them run at the same time. With a 
+ * parallelism above 1, sort and search of large stores are spread over a 
+ * ParallelLineProcessor.
+ * With the compact option the lines are held in a CompactLineList, which 
+ * sorts and searches them on their bytes instead.
+ * With the lazy load mode the lines are loaded on a background thread and 
+ * the constructor returns at once. Reading a range of lines waits only 
+ * until the range is loaded, while every other method waits for the whole 
+ * load; with the log engine no line is shown before the log is replayed.
+ * @author Alvian Prasetya
+ */
+public class ResidentLineStore implements LineStore {
+	
+	private static final String LOADER_THREAD_NAME = "TextBuddy-loader";
+	
+	private final List<String> _lines;
+	private final CompactLineList _compactLines;
+	private final StorageEngine _engine;
+	private final WriteBehindFlusher _flusher;
+	private final ArrayList<LineStoreListener> _listeners = new ArrayList<LineStoreListener>();
+	private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+	private final Lock _readLock = _lock.readLock();
+	private final Lock _writeLock = _lock.writeLock();
+	private final Object _loadMonitor = new Object();
+	private volatile boolean _isLoaded = false;
+	// Number of lines a lazy load has made visible, guarded by the load monitor.
+	private int _loadedLineCount = 0;
+	private IOException _loadException;
+	private TrigramIndex _index;
+	private ParallelLineProcessor _processor;
+	// A shared processor belongs to the Workspace and is not closed here.
+	private boolean _isProcessorShared = false;
+	
+	/**
+	 * This is the default constructor for ResidentLineStore object. It loads 
+	 * all lines of the specified storage file into memory, or starts loading 
+	 * them in the background with the lazy load mode.
+	 * @param file		The storage file backing this store.
+	 * @param options	The options deciding how and when changes are written back.
+	 * @throws IOException	If the storage file cannot be read.
+	 */
+	public ResidentLineStore(File file, TextBuddyOptions options) throws IOException {
+		_engine = createEngine(file, options);
+		_compactLines = options.isCompact() ? new CompactLineList(options.isOffHeap()) : null;
+		_lines = _compactLines != null ? _compactLines : new ArrayList<String>();
+		if (options.getLoadMode() == LoadMode.LAZY) {
+			_flusher = new WriteBehindFlusher(_engine, this, options);
+			startLoad(file, options.isIndexed());
+		} else {
+			load(file, options.isIndexed(), _lines);
+			_flusher = new WriteBehindFlusher(_engine, this, options);
+			_isLoaded = true;
+		}
+		if (options.getSharedProcessor() != null && _compactLines == null) {
+			_processor = options.getSharedProcessor();
+			_isProcessorShared = true;
+		} else if (options.getParallelism() > 1 && _compactLines == null) {
+			_processor = new ParallelLineProcessor(options.getParallelism(), 
+												   options.getParallelCutoff());
+		}
+	}
+	
+	/**
+	 * This method reads the lines through the engine into the target list 
+	 * and builds the trigram index if it is enabled.
+	 */
+	private void load(File file, boolean isIndexed, List<String> target) throws IOException {
+		_engine.load(target);
+		if (isIndexed) {
+			TrigramIndex index = TrigramIndex.loadOrBuild(file, _lines);
+			_writeLock.lock();
+			try {
+				_index = index;
+				_listeners.add(index);
+			} finally {
+				_writeLock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * This method loads the lines on a background thread. Replaying a log 
+	 * may still change the loaded lines, so with the log engine the lines 
+	 * are only made visible once the whole load is done.
+	 */
+	private void startLoad(final File file, final boolean isIndexed) {
+		final List<String> target = _engine.isLogged() ? _lines : new LoadingLines();
+		new DaemonThreadFactory(LOADER_THREAD_NAME).newThread(new Runnable() {
+			@Override
+			public void run() {
+				IOException loadException = null;
+				boolean isSuccessful = false;
+				try {
+					load(file, isIndexed, target);
+					isSuccessful = true;
+				} catch (IOException exceptionMessage) {
+					loadException = exceptionMessage;
+				} finally {
+					if (!isSuccessful && loadException == null) {
+						loadException = new IOException("failed to load " + file.getName());
+					}
+					synchronized (_loadMonitor) {
+						_loadException = loadException;
+						_isLoaded = true;
+						_loadMonitor.notifyAll();
+					}
+				}
+			}
+		}).start();
+	}
+	
+	/**
+	 * This method waits until the specified number of lines is loaded, or 
+	 * the whole load is done.
+	 * @throws IOException	If the load failed before the lines were loaded.
+	 */
+	private void awaitLines(int lineCount) throws IOException {
+		if (!_isLoaded) {
+			synchronized (_loadMonitor) {
+				try {
+					while (!_isLoaded && _loadedLineCount < lineCount) {
+						_loadMonitor.wait();
+					}
+				} catch (InterruptedException exceptionMessage) {
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while loading lines");
+				}
+			}
+		}
+		if (_isLoaded && _loadException != null) {
+			throw new IOException(_loadException.getMessage(), _loadException);
+		}
+	}
+	
+	private void awaitLoaded() throws IOException {
+		awaitLines(Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public int size() throws IOException {
+		awaitLoaded();
+		_readLock.lock();
+		try {
+			return _lines.size();
+		} finally {
+			_readLock.unlock();
+		}
+	}
+	
+	@Override
+	public boolean isEmpty() throws IOException {
+		awaitLines(1);
+		_readLock.lock();
+		try {
+			return _lines.isEmpty();
+		} finally {
+			_readLock.unlock();
+		}
+	}
+	
+	/**
+	 * This method returns the number of lines, up to the limit.
+	 * @param limit		The largest number to return.
+	 * @return			The number of lines, or the limit if there are more.
+	 * @throws IOException	If the load failed before enough lines were loaded.
+	 */
+	@Override
+	public int countLines(int limit) throws IOException {
+		awaitLines(limit);
+		_readLock.lock();
+		try {
+			return Math.min(_lines.size(), limit);
+		} finally {
+			_readLock.unlock();
+		}
+	}
+	
+	@Override
+	public String get(int index) throws IOException {
+		awaitLines(index + 1);
+		_readLock.lock();
+		try {
+			return _lines.get(index);
+		} finally {
+			_readLock.unlock();
+		}
+	}
+	
+	/**
+	 * This method returns a copy of the lines currently in the store, so 
+	 * that the caller can iterate them while the store keeps changing.
+	 * @return	The list of the lines in the store.
+	 */
+	public List<String> getLines() {
+		_readLock.lock();
+		try {
+			if (_compactLines != null) {
+				return _compactLines.copy();
+			}
+			return new ArrayList<String>(_lines);
+		} finally {
+			_readLock.unlock();
+		}
+	}
+	
+	/**
+	 * This method passes the lines from the start index (inclusive) to the 
+	 * end index (exclusive) to the visitor, without copying them.
+	 * @param fromIndex		The index of the first line to visit.
+	 * @param toIndex		The index after the last line to visit.
+	 * @param visitor		The visitor to pass the lines to.
+	 * @throws IOException	If the visitor fails.
+	 */
+	@Override
+	public void scan(int fromIndex, int toIndex, LineVisitor visitor) throws IOException {
+		awaitLines(toIndex);
+		_readLock.lock();
+		try {
+			int lastIndex = Math.min(toIndex, _lines.size());
+			for (int i = fromIndex; i < lastIndex && visitor.visit(i, _lines.get(i)); i++) {
+				// The visitor does all the work.
+			}
+		} finally {
+			_readLock.unlock();
+		}
+	}
+	
+	@Override
+	public synchronized void add(String line) throws IOException {
+		awaitLoaded();
+		_writeLock.lock();
+		try {
+			_lines.add(line);
+			_flusher.record(Mutation.add(line));
+			for (int i = 0; i < _listeners.size(); i++) {
+				_listeners.get(i).lineAdded(_lines.size() - 1, line);
+			}
+		} finally {
+			_writeLock.unlock();
+		}
+	}
+	
+	@Override
+	public synchronized void addAll(List<String> lines) throws IOException {
+		for (int i = 0; i < lines.size(); i++) {
+			add(lines.get(i));
+		}
+	}
+	
+	/**
+	 * This method removes the line at the specified index.
+	 * @param index		The zero-based index of the line to remove.
+	 * @return			The line that was removed.
+	 * @throws IOException	If the lines could not be loaded.
+	 */
+	@Override
+	public synchronized String remove(int index) throws IOException {
+		awaitLoaded();
+		_writeLock.lock();
+		try {
+			String removedLine = _lines.remove(index);
+			_flusher.record(Mutation.delete(index));
+			for (int i = 0; i < _listeners.size(); i++) {
+				_listeners.get(i).lineRemoved(index, removedLine);
+			}
+			return removedLine;
+		} finally {
+			_writeLock.unlock();
+		}
+	}
+	
+	@Override
+	public synchronized ArrayList<String> removeAll(int[] indices) throws IOException {
+		ArrayList<String> removedLines = new ArrayList<String>(indices.length);
+		for (int i = 0; i < indices.length; i++) {
+			removedLines.add(remove(indices[i]));
+		}
+		return removedLines;
+	}
+	
+	/**
+	 * This method inserts the line at the specified index.
+	 * @param index		The zero-based index the line will have.
+	 * @param line		The line to insert.
+	 * @throws IOException	If the lines could not be loaded.
+	 */
+	@Override
+	public synchronized void insert(int index, String line) throws IOException {
+		awaitLoaded();
+		_writeLock.lock();
+		try {
+			_lines.add(index, line);
+			_flusher.record(Mutation.insert(index, line));
+			for (int i = 0; i < _listeners.size(); i++) {
+				_listeners.get(i).lineAdded(index, line);
+			}
+		} finally {
+			_writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * This method sorts the lines after the longest sorted prefix and merges 
+	 * them into it. Nothing is recorded if the lines are already sorted, so 
+	 * sorting a sorted store does not rewrite the storage file.
+	 * @return	True if any line moved.
+	 * @throws IOException	If the lines could not be loaded.
+	 */
+	@Override
+	public synchronized boolean sort() throws IOException {
+		awaitLoaded();
+		_writeLock.lock();
+		try {
+			int sortedLength = LineSorter.getSortedLength(_lines);
+			if (sortedLength == _lines.size()) {
+				return false;
+			}
+			// Only a long unsorted tail is worth sorting on several threads.
+			boolean isParallel = _processor != null 
+								 && _processor.isWorthwhile(_lines.size() - sortedLength);
+			
+			if (_listeners.isEmpty() && !isParallel) {
+				LineSorter.sort(_lines, sortedLength);
+			} else {
+				int[] order = isParallel ? _processor.sortWithOrder(_lines) 
+										 : LineSorter.sortWithOrder(_lines, sortedLength);
+				for (int i = 0; i < _listeners.size(); i++) {
+					_listeners.get(i).linesSorted(order);
+				}
+			}
+			_flusher.record(Mutation.sort());
+			return true;
+		} finally {
+			_writeLock.unlock();
+		}
+	}
+	
+	@Override
+	public synchronized void clear() throws IOException {
+		awaitLoaded();
+		_writeLock.lock();
+		try {
+			_lines.clear();
+			_flusher.record(Mutation.clear());
+			for (int i = 0; i < _listeners.size(); i++) {
+				_listeners.get(i).linesCleared();
+			}
+		} finally {
+			_writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * This method passes the lines containing the specified token, ignoring 
+	 * case, to the visitor in the order they are stored. The trigram index, 
+	 * if enabled, narrows the lines that need to be checked. A parallel 
+	 * search passes the matches once every thread has found its own.
+	 * @param searchToken	The substring to search for.
+	 * @param visitor		The visitor to pass the matching lines to.
+	 * @return				The number of lines passed to the visitor.
+	 * @throws IOException	If the lines could not be loaded or the visitor fails.
+	 */
+	@Override
+	public int search(String searchToken, LineVisitor visitor) throws IOException {
+		awaitLoaded();
+		_readLock.lock();
+		try {
+			String searchTokenLowerCase = searchToken.toLowerCase();
+			SearchMatches matches = new SearchMatches(visitor);
+			IntList candidates = _index == null ? null : _index.findCandidates(searchTokenLowerCase);
+			int lineCount = candidates == null ? _lines.size() : candidates.size();
+			
+			Metrics.recordLinesScanned(lineCount);
+			if (_compactLines != null) {
+				_compactLines.search(searchTokenLowerCase, candidates, matches.asVisitor());
+			} else if (candidates == null && _processor != null 
+					   && _processor.isWorthwhile(_lines.size())) {
+				matches.addAll(_processor.search(_lines, searchTokenLowerCase));
+			} else {
+				for (int i = 0; i < lineCount; i++) {
+					String line = _lines.get(candidates == null ? i : candidates.get(i));
+					if (line.toLowerCase().contains(searchTokenLowerCase) && !matches.add(line)) {
+						break;
+					}
+				}
+			}
+			return matches.getCount();
+		} finally {
+			_readLock.unlock();
+		}
+	}
+	
+	/**
+	 * This method marks the end of a command. Pending changes are written 
+	 * to the storage file here when the durability is per-command.
+	 * @throws IOException	If the pending changes cannot be written.
+	 */
+	@Override
+	public void commit() throws IOException {
+		_flusher.commit();
+	}
+	
+	/**
+	 * This method writes all pending changes to the storage file, saves the 
+	 * trigram index and stops any background flushing and parallel threads.
+	 * @throws IOException	If the pending changes cannot be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		boolean isLoadedWell = false;
+		// Nothing can change before the load is done, and an unfinished load 
+		// only reads the storage file unless it still has a log to replay.
+		if (_isLoaded || _engine.isLogged()) {
+			try {
+				awaitLoaded();
+				isLoadedWell = true;
+			} catch (IOException exceptionMessage) {
+				// A store that failed to load has no index worth saving.
+			}
+		}
+		_flusher.close();
+		if (_processor != null && !_isProcessorShared) {
+			_processor.close();
+		}
+		if (_index != null && isLoadedWell) {
+			_readLock.lock();
+			try {
+				_index.save(_lines);
+			} finally {
+				_readLock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * This class is the list a lazy load adds the lines to. Every chunk of 
+	 * lines is added to the store under the write lock, after which the 
+	 * commands waiting for those lines are woken up.
+	 */
+	private class LoadingLines extends AbstractList<String> {
+		
+		@Override
+		public String get(int index) {
+			return _lines.get(index);
+		}
+		
+		@Override
+		public int size() {
+			return _lines.size();
+		}
+		
+		@Override
+		public void add(int index, String line) {
+			if (index != _lines.size()) {
+				throw new UnsupportedOperationException("lines are only loaded in order");
+			}
+			_writeLock.lock();
+			try {
+				_lines.add(line);
+			} finally {
+				_writeLock.unlock();
+			}
+			publishLines();
+		}
+		
+		@Override
+		public boolean addAll(Collection<? extends String> lines) {
+			_writeLock.lock();
+			try {
+				_lines.addAll(lines);
+			} finally {
+				_writeLock.unlock();
+			}
+			publishLines();
+			return !lines.isEmpty();
+		}
+		
+		private void publishLines() {
+			synchronized (_loadMonitor) {
+				_loadedLineCount = _lines.size();
+				_loadMonitor.notifyAll();
+			}
+		}
+	}
+	
+	private static StorageEngine createEngine(File file, TextBuddyOptions options) {
+		switch (options.getEngineType()) {
+			case LOG :
+				return new LoggedStorageEngine(file, options);
+			default :
+				return new PlainTextStorageEngine(file, options);
+		}
+	}
+}
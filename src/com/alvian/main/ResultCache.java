@@ -0,0 +1,383 @@
+package com.alvian.main;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * This class keeps the formatted output of recent display and search 
+ * commands, so that repeating one between changes writes the kept output 
+ * instead of reading and formatting the lines again. Entries are keyed by 
+ * the command and its parameter, which for search is the lower-cased 
+ * token, and the least recently used entries are evicted once their 
+ * characters take more than the memory budget.
+ * There are two kinds of entries. A list entry holds numbered lines that 
+ * contain a token, where the full display is the list of lines containing 
+ * the empty token; an added line is tested against the token alone and 
+ * appended to the entry if it matches, so adding never discards them. A 
+ * fixed entry holds any other output together with the last line number 
+ * the output depends on, and is discarded when a line at or before that 
+ * number changes.
+ * The entries are locked for every call, so commands that only read may use 
+ * the cache at the same time. The output of an entry only changes when a 
+ * line is added or removed, which the caller must never do while another 
+ * thread is reading. The caches of several storage files may share one 
+ * budget, see share.
+ * @author Alvian Prasetya
+ */
+public class ResultCache {
+	
+	// This is the last line number of output that depends on the line count.
+	public static final int ALL_LINES = Integer.MAX_VALUE;
+	// Every entry is counted as this many bytes on top of its characters.
+	private static final long ENTRY_OVERHEAD_BYTES = 128;
+	private static final long BYTES_PER_CHAR = 2;
+	private static final int COPY_BUFFER_SIZE = 8192;
+	private static final char KEY_SEPARATOR = '\u0000';
+	private static final String NUMBERING_SEPARATOR = ". ";
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+	
+	// This holds the entries of this cache and of every cache shared with it.
+	private final Memory _memory;
+	// This tells the entries of this cache apart from those of shared caches.
+	private final String _scope;
+	
+	/**
+	 * This is the default constructor for ResultCache object.
+	 * @param memoryBudget	The most bytes the kept output may take.
+	 */
+	public ResultCache(long memoryBudget) {
+		this(new Memory(memoryBudget), "");
+	}
+	
+	private ResultCache(Memory memory, String scope) {
+		_memory = memory;
+		_scope = scope;
+	}
+	
+	/**
+	 * This method returns a cache for another storage file that keeps its 
+	 * entries in the same memory as this cache, so that the files share 
+	 * one budget and the least recently used entry of any of them is 
+	 * evicted first. Changes to the lines of one file never discard the 
+	 * entries of another.
+	 * @param scope		The name telling the file apart, e.g. its path.
+	 * @return			The cache for the file.
+	 */
+	public ResultCache share(String scope) {
+		return new ResultCache(_memory, scope);
+	}
+	
+	/**
+	 * This method returns the kept output of the command, and counts the 
+	 * lookup as a hit or a miss.
+	 * @param command		The verb of the command.
+	 * @param parameter		The parameter of the command, as used for the key.
+	 * @return				The entry, or null if the output is not kept.
+	 */
+	public Entry get(String command, String parameter) {
+		synchronized (_memory) {
+			Entry entry = _memory._entries.get(getKey(command, parameter));
+			if (entry == null) {
+				Metrics.getCacheStats().addMiss();
+			} else {
+				Metrics.getCacheStats().addHit();
+			}
+			return entry;
+		}
+	}
+	
+	/**
+	 * This method returns a writer that passes everything to the output and 
+	 * keeps a copy for the cache, until the copy would not fit the budget.
+	 * @param output	The writer receiving the output of the command.
+	 * @return			The writer to write the output to instead.
+	 */
+	public CapturingWriter capture(Writer output) {
+		return new CapturingWriter(output, 
+								   (_memory._budget - ENTRY_OVERHEAD_BYTES) / BYTES_PER_CHAR);
+	}
+	
+	/**
+	 * This method keeps the captured numbered lines containing the token.
+	 * @param command			The verb of the command.
+	 * @param parameter			The parameter of the command, as used for the key.
+	 * @param capture			The writer the numbered lines were written to.
+	 * @param tokenLowerCase	The lower-cased token every line contains.
+	 * @param lineCount			The number of lines written.
+	 */
+	public void putLines(String command, String parameter, CapturingWriter capture, 
+						 String tokenLowerCase, int lineCount) {
+		if (!capture.isOverflowed()) {
+			put(getKey(command, parameter), 
+				new Entry(_scope, capture.getCopy(), tokenLowerCase, lineCount, ALL_LINES));
+		}
+	}
+	
+	/**
+	 * This method keeps the captured output of a command that is discarded 
+	 * instead of extended when lines change.
+	 * @param command			The verb of the command.
+	 * @param parameter			The parameter of the command, as used for the key.
+	 * @param capture			The writer the output was written to.
+	 * @param lastLineNumber	The last line number the output depends on, or ALL_LINES.
+	 */
+	public void putOutput(String command, String parameter, CapturingWriter capture, 
+						  int lastLineNumber) {
+		if (!capture.isOverflowed()) {
+			put(getKey(command, parameter), 
+				new Entry(_scope, capture.getCopy(), null, 0, lastLineNumber));
+		}
+	}
+	
+	/**
+	 * This method updates the entries after a line was added at the end.
+	 * The line is lower-cased at most once, whatever the number of entries.
+	 * @param lineNumber	The line number of the added line.
+	 * @param line			The added line.
+	 */
+	public void lineAdded(int lineNumber, String line) {
+		synchronized (_memory) {
+			String lineLowerCase = null;
+			Iterator<Entry> iterator = _memory._entries.values().iterator();
+			
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next();
+				if (!entry._scope.equals(_scope)) {
+					continue;
+				}
+				if (entry._tokenLowerCase == null) {
+					if (entry._lastLineNumber >= lineNumber) {
+						removeEntry(iterator, entry);
+					}
+					continue;
+				}
+				if (!entry._tokenLowerCase.isEmpty()) {
+					if (lineLowerCase == null) {
+						lineLowerCase = line.toLowerCase();
+					}
+					if (!lineLowerCase.contains(entry._tokenLowerCase)) {
+						continue;
+					}
+				}
+				int lengthBefore = entry._output.length();
+				entry._lineCount++;
+				entry._output.append(entry._lineCount).append(NUMBERING_SEPARATOR).append(line) 
+							 .append(LINE_SEPARATOR);
+				_memory._used += (entry._output.length() - lengthBefore) * BYTES_PER_CHAR;
+			}
+			evictOverBudget();
+		}
+	}
+	
+	/**
+	 * This method discards the entries whose output contained the removed 
+	 * line or depended on its line number. A list entry whose token the 
+	 * line does not contain keeps its output, as its numbering only counts 
+	 * the lines that matched.
+	 * @param lineNumber	The line number the line had.
+	 * @param line			The removed line.
+	 */
+	public void lineRemoved(int lineNumber, String line) {
+		removeAffectedEntries(lineNumber, line);
+	}
+	
+	/**
+	 * This method discards the entries whose output the line inserted 
+	 * before the last line changes, which are the same as if the line had 
+	 * been removed from there.
+	 * @param lineNumber	The line number of the inserted line.
+	 * @param line			The inserted line.
+	 */
+	public void lineInserted(int lineNumber, String line) {
+		removeAffectedEntries(lineNumber, line);
+	}
+	
+	/**
+	 * This method discards every entry, e.g. after the lines were sorted or 
+	 * cleared.
+	 */
+	public void clear() {
+		synchronized (_memory) {
+			Iterator<Entry> iterator = _memory._entries.values().iterator();
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next();
+				if (entry._scope.equals(_scope)) {
+					removeEntry(iterator, entry);
+				}
+			}
+		}
+	}
+	
+	private void removeAffectedEntries(int lineNumber, String line) {
+		synchronized (_memory) {
+			String lineLowerCase = line.toLowerCase();
+			Iterator<Entry> iterator = _memory._entries.values().iterator();
+			
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next();
+				boolean isAffected = entry._tokenLowerCase == null 
+									 ? entry._lastLineNumber >= lineNumber 
+									 : lineLowerCase.contains(entry._tokenLowerCase);
+				if (isAffected && entry._scope.equals(_scope)) {
+					removeEntry(iterator, entry);
+				}
+			}
+		}
+	}
+	
+	private void put(String key, Entry entry) {
+		synchronized (_memory) {
+			Entry replacedEntry = _memory._entries.put(key, entry);
+			if (replacedEntry != null) {
+				_memory._used -= replacedEntry.getSize();
+			}
+			_memory._used += entry.getSize();
+			evictOverBudget();
+		}
+	}
+	
+	private void removeEntry(Iterator<Entry> iterator, Entry entry) {
+		iterator.remove();
+		_memory._used -= entry.getSize();
+		Metrics.getCacheStats().addInvalidations(1);
+	}
+	
+	private void evictOverBudget() {
+		Iterator<Entry> iterator = _memory._entries.values().iterator();
+		while (_memory._used > _memory._budget && iterator.hasNext()) {
+			_memory._used -= iterator.next().getSize();
+			iterator.remove();
+			Metrics.getCacheStats().addEviction();
+		}
+	}
+	
+	private String getKey(String command, String parameter) {
+		return _scope + KEY_SEPARATOR + command + KEY_SEPARATOR + parameter;
+	}
+	
+	/**
+	 * This class holds the entries of caches sharing one memory budget, and 
+	 * is locked for every use of them.
+	 */
+	private static class Memory {
+		
+		private final long _budget;
+		// The map is in access order, so the first entry is the least recently used.
+		private final LinkedHashMap<String, Entry> _entries 
+				= new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		private long _used = 0;
+		
+		private Memory(long budget) {
+			_budget = budget;
+		}
+	}
+	
+	/**
+	 * This class is the kept output of one command.
+	 */
+	public static class Entry {
+		
+		private final String _scope;
+		private final StringBuilder _output;
+		private final String _tokenLowerCase;
+		private final int _lastLineNumber;
+		private int _lineCount;
+		
+		private Entry(String scope, StringBuilder output, String tokenLowerCase, int lineCount, 
+					  int lastLineNumber) {
+			_scope = scope;
+			_output = output;
+			_tokenLowerCase = tokenLowerCase;
+			_lineCount = lineCount;
+			_lastLineNumber = lastLineNumber;
+		}
+		
+		/**
+		 * This method returns the number of lines of a list entry.
+		 * @return	The number of numbered lines kept.
+		 */
+		public int getLineCount() {
+			return _lineCount;
+		}
+		
+		/**
+		 * This method writes the kept output, a slice at a time so that it 
+		 * is never copied as a whole.
+		 * @param output	The writer receiving the output.
+		 * @throws IOException	If the output cannot be written.
+		 */
+		public void writeTo(Writer output) throws IOException {
+			char[] buffer = new char[Math.min(COPY_BUFFER_SIZE, Math.max(_output.length(), 1))];
+			for (int start = 0; start < _output.length(); start += buffer.length) {
+				int end = Math.min(start + buffer.length, _output.length());
+				_output.getChars(start, end, buffer, 0);
+				output.write(buffer, 0, end - start);
+			}
+		}
+		
+		private long getSize() {
+			return ENTRY_OVERHEAD_BYTES + _output.length() * BYTES_PER_CHAR;
+		}
+	}
+	
+	/**
+	 * This class passes everything written to it to another writer, and 
+	 * keeps a copy of it until the copy grows past its limit.
+	 */
+	public static class CapturingWriter extends Writer {
+		
+		private final Writer _output;
+		private final long _maxLength;
+		private StringBuilder _copy = new StringBuilder();
+		
+		private CapturingWriter(Writer output, long maxLength) {
+			_output = output;
+			_maxLength = maxLength;
+		}
+		
+		@Override
+		public void write(char[] characters, int offset, int length) throws IOException {
+			_output.write(characters, offset, length);
+			if (_copy != null) {
+				if (_copy.length() + length > _maxLength) {
+					_copy = null;
+				} else {
+					_copy.append(characters, offset, length);
+				}
+			}
+		}
+		
+		@Override
+		public void write(String string) throws IOException {
+			_output.write(string);
+			if (_copy != null) {
+				if (_copy.length() + string.length() > _maxLength) {
+					_copy = null;
+				} else {
+					_copy.append(string);
+				}
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			_output.flush();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			// The output belongs to the caller.
+		}
+		
+		public boolean isOverflowed() {
+			return _copy == null;
+		}
+		
+		private StringBuilder getCopy() {
+			return _copy;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.alvian.main;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This class passes the matching lines of a search to a LineVisitor as 
+ * they are found, numbering them from 0 in the order they are stored, so 
+ * that a store can search in parts without collecting every match.
+ * @author Alvian Prasetya
+ */
+class SearchMatches {
+	
+	private final LineVisitor _visitor;
+	private int _count = 0;
+	
+	SearchMatches(LineVisitor visitor) {
+		_visitor = visitor;
+	}
+	
+	/**
+	 * This method passes the next matching line to the visitor.
+	 * @param line		The matching line.
+	 * @return			True to pass the next line, false to stop searching.
+	 * @throws IOException	If the visitor fails.
+	 */
+	boolean add(String line) throws IOException {
+		return _visitor.visit(_count++, line);
+	}
+	
+	/**
+	 * This method passes the matching lines to the visitor, in order.
+	 * @param lines		The matching lines.
+	 * @return			True to pass the next line, false to stop searching.
+	 * @throws IOException	If the visitor fails.
+	 */
+	boolean addAll(List<String> lines) throws IOException {
+		for (int i = 0; i < lines.size(); i++) {
+			if (!add(lines.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * This method passes the matching lines to the visitor like add, while 
+	 * ignoring the index given with every line.
+	 * @return	The visitor to search with.
+	 */
+	LineVisitor asVisitor() {
+		return new LineVisitor() {
+			@Override
+			public boolean visit(int index, String line) throws IOException {
+				return add(line);
+			}
+		};
+	}
+	
+	/**
+	 * This method returns the number of lines passed to the visitor.
+	 */
+	int getCount() {
+		return _count;
+	}
+}
@@ -0,0 +1,236 @@
+package com.alvian.main;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * This class is a search for more than one substring, run by the "query" 
+ * command so that search keeps taking its token as a plain substring. A 
+ * query is made of terms joined by " AND " and " OR ", where AND binds 
+ * tighter, so "a AND b OR c" finds the lines containing both a and b, 
+ * or c. A term written as "/pattern/" is a regular expression found 
+ * anywhere in the line, any other term is a substring; both ignore case, 
+ * like search.
+ * A query may end with " limit <n>" to stop at the first n lines found.
+ * A pattern runs up to the first "/" followed by an operator or by the 
+ * end of the query, so operators inside a pattern do not split it.
+ * Text that would be read as an operator or a limit is found literally 
+ * by writing it as a pattern, e.g. "/cats AND dogs/" or "/x limit 3/".
+ * All terms are tested on a line before the next line is read, so the 
+ * lines are read once whatever the number of terms, and compiled patterns 
+ * are kept across queries in a small least recently used cache.
+ * @author Alvian Prasetya
+ */
+public class SearchQuery {
+	
+	private static final String OPERATOR_AND = " AND ";
+	private static final String OPERATOR_OR = " OR ";
+	private static final String LIMIT_PREFIX = " limit ";
+	private static final String PATTERN_DELIMITER = "/";
+	private static final int PATTERN_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+	// This is the number of compiled patterns kept across queries.
+	private static final int MAX_CACHED_PATTERNS = 64;
+	// This is the limit of a query that finds every matching line.
+	private static final int NO_LIMIT = Integer.MAX_VALUE;
+	
+	// The map is in access order, so the first pattern is the least recently used.
+	private static final LinkedHashMap<String, Pattern> CACHED_PATTERNS 
+			= new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > MAX_CACHED_PATTERNS;
+		}
+	};
+	
+	// A line matches if it matches every term of any of the groups.
+	private final ArrayList<ArrayList<Term>> _groups = new ArrayList<ArrayList<Term>>();
+	private final int _limit;
+	private boolean _hasTokens = false;
+	
+	private SearchQuery(String terms, int limit) {
+		_limit = limit;
+		ArrayList<Term> group = new ArrayList<Term>();
+		int termStart = 0;
+		while (true) {
+			int termEnd = getTermEnd(terms, termStart);
+			String term = terms.substring(termStart, termEnd);
+			group.add(new Term(term));
+			_hasTokens |= !isPattern(term);
+			
+			if (terms.startsWith(OPERATOR_AND, termEnd)) {
+				termStart = termEnd + OPERATOR_AND.length();
+				continue;
+			}
+			_groups.add(group);
+			if (termEnd == terms.length()) {
+				return;
+			}
+			group = new ArrayList<Term>();
+			termStart = termEnd + OPERATOR_OR.length();
+		}
+	}
+	
+	/**
+	 * This method reads the query from the parameter of the query command.
+	 * @param query		The parameter of the query command.
+	 * @return			The query.
+	 * @throws PatternSyntaxException	If a pattern of the query is not valid.
+	 */
+	public static SearchQuery parse(String query) {
+		int limitStart = query.lastIndexOf(LIMIT_PREFIX);
+		if (limitStart >= 0) {
+			long limit = CommandParser.parseNumber(query, limitStart + LIMIT_PREFIX.length(), 
+												   query.length());
+			if (limit != CommandParser.NOT_A_NUMBER && limit > 0) {
+				return new SearchQuery(query.substring(0, limitStart), (int) limit);
+			}
+		}
+		return new SearchQuery(query, NO_LIMIT);
+	}
+	
+	/**
+	 * This method tells whether the query is a single substring without a 
+	 * limit, which is found by search.
+	 * @return	True if the query is a plain search token.
+	 */
+	public boolean isPlain() {
+		return _groups.size() == 1 && _groups.get(0).size() == 1 
+			   && _groups.get(0).get(0)._pattern == null && _limit == NO_LIMIT;
+	}
+	
+	/**
+	 * This method tells whether the line matches the query.
+	 * @param line	The line to test.
+	 * @return		True if the line matches every term of a group.
+	 */
+	public boolean matches(String line) {
+		String lineLowerCase = _hasTokens ? line.toLowerCase() : null;
+		for (int i = 0; i < _groups.size(); i++) {
+			if (matchesAll(_groups.get(i), line, lineLowerCase)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * This method adds the matching lines of the store to the list, in 
+	 * stored order, reading the lines only until the limit is reached.
+	 * @param store				The store to search.
+	 * @param matchingLines		The list to add the matching lines to.
+	 * @return					The line number of the last line the result 
+	 * 							depends on, or ResultCache.ALL_LINES if every 
+	 * 							line was read.
+	 * @throws IOException		If the lines cannot be read.
+	 */
+	public int search(LineStore store, final List<String> matchingLines) throws IOException {
+		final int[] lastLineNumber = {ResultCache.ALL_LINES};
+		int lineCount = store.size();
+		
+		store.scan(0, lineCount, new LineVisitor() {
+			@Override
+			public boolean visit(int index, String line) {
+				if (!matches(line)) {
+					return true;
+				}
+				matchingLines.add(line);
+				if (matchingLines.size() < _limit) {
+					return true;
+				}
+				lastLineNumber[0] = index + 1;
+				return false;
+			}
+		});
+		Metrics.recordLinesScanned(Math.min(lastLineNumber[0], lineCount));
+		return lastLineNumber[0];
+	}
+	
+	private static boolean matchesAll(ArrayList<Term> group, String line, String lineLowerCase) {
+		for (int i = 0; i < group.size(); i++) {
+			if (!group.get(i).matches(line, lineLowerCase)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * This method returns where the term starting at the specified index 
+	 * ends, which is at the next operator or at the end of the terms. A 
+	 * term starting with "/" that is closed before an operator or the end 
+	 * is a pattern, and runs up to that "/" whatever operators it holds.
+	 */
+	private static int getTermEnd(String terms, int termStart) {
+		if (terms.startsWith(PATTERN_DELIMITER, termStart)) {
+			for (int delimiterStart = terms.indexOf(PATTERN_DELIMITER, termStart + 1); 
+				 delimiterStart >= 0; 
+				 delimiterStart = terms.indexOf(PATTERN_DELIMITER, delimiterStart + 1)) {
+				int patternEnd = delimiterStart + PATTERN_DELIMITER.length();
+				if (patternEnd == terms.length() || isOperatorAt(terms, patternEnd)) {
+					return patternEnd;
+				}
+			}
+		}
+		for (int i = termStart; i < terms.length(); i++) {
+			if (isOperatorAt(terms, i)) {
+				return i;
+			}
+		}
+		return terms.length();
+	}
+	
+	private static boolean isOperatorAt(String terms, int index) {
+		return terms.startsWith(OPERATOR_AND, index) || terms.startsWith(OPERATOR_OR, index);
+	}
+	
+	private static boolean isPattern(String term) {
+		return term.length() > PATTERN_DELIMITER.length() 
+			   && term.startsWith(PATTERN_DELIMITER) && term.endsWith(PATTERN_DELIMITER);
+	}
+	
+	private static Pattern compile(String regex) {
+		synchronized (CACHED_PATTERNS) {
+			Pattern pattern = CACHED_PATTERNS.get(regex);
+			if (pattern == null) {
+				pattern = Pattern.compile(regex, PATTERN_FLAGS);
+				CACHED_PATTERNS.put(regex, pattern);
+			}
+			return pattern;
+		}
+	}
+	
+	/**
+	 * This class is one substring or pattern of a query.
+	 */
+	private static class Term {
+		
+		private final String _tokenLowerCase;
+		private final Pattern _pattern;
+		
+		Term(String term) {
+			if (isPattern(term)) {
+				_tokenLowerCase = null;
+				_pattern = compile(term.substring(PATTERN_DELIMITER.length(), 
+												  term.length() - PATTERN_DELIMITER.length()));
+			} else {
+				_tokenLowerCase = term.toLowerCase();
+				_pattern = null;
+			}
+		}
+		
+		boolean matches(String line, String lineLowerCase) {
+			if (_pattern != null) {
+				return _pattern.matcher(line).find();
+			}
+			return lineLowerCase.contains(_tokenLowerCase);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.alvian.main;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class is one storage file served by a TextBuddyServer to any number 
+ * of clients. Commands that only read the lines ("display", "search" and 
+ * "query") share the read lock of the file and run at the same time; 
+ * every other command takes the write lock, so changes to the file are 
+ * applied one at a time and never interleave with a read. Commands on 
+ * different files do not wait for each other.
+ * The storage file is opened by the first client that uses it.
+ * @author Alvian Prasetya
+ */
+public class SharedStorage {
+	
+	private final String _fileName;
+	private final TextBuddyOptions _options;
+	private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+	// This is guarded by _lock.
+	private TextBuddy _textBuddy;
+	
+	/**
+	 * This is the default constructor for SharedStorage object. The storage 
+	 * file is not opened until open is called.
+	 * @param fileName	Name of the storage file.
+	 * @param options	The options for storing the lines.
+	 */
+	public SharedStorage(String fileName, TextBuddyOptions options) {
+		_fileName = fileName;
+		_options = options;
+	}
+	
+	/**
+	 * This method opens the storage file unless it is already open.
+	 * @throws IOException	If the storage file cannot be created or read.
+	 */
+	public void open() throws IOException {
+		_lock.writeLock().lock();
+		try {
+			if (_textBuddy == null) {
+				_textBuddy = TextBuddy.open(_fileName, _options);
+			}
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * This method runs the command on the storage file under the read or 
+	 * the write lock, writing the feedback to the output.
+	 * @param commandLine	The command, including the parameters.
+	 * @param output		The writer receiving the feedback.
+	 * @throws IOException	If the feedback cannot be written.
+	 */
+	public void execute(String commandLine, Writer output) throws IOException {
+		Lock lock = isReadOnly(commandLine) ? _lock.readLock() : _lock.writeLock();
+		lock.lock();
+		try {
+			if (_textBuddy == null) {
+				throw new IOException(_fileName + " is not open");
+			}
+			_textBuddy.executeCommand(commandLine, output);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * This method writes any pending changes and closes the storage file. 
+	 * Commands already running are finished first.
+	 */
+	public void close() {
+		_lock.writeLock().lock();
+		try {
+			if (_textBuddy != null) {
+				_textBuddy.exit();
+				_textBuddy = null;
+			}
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+	
+	private static boolean isReadOnly(String commandLine) {
+		int verbEnd = CommandParser.getVerbEnd(commandLine);
+		return CommandParser.isVerb(commandLine, verbEnd, "display") 
+			   || CommandParser.isVerb(commandLine, verbEnd, "search") 
+			   || CommandParser.isVerb(commandLine, verbEnd, "query");
+	}
+}
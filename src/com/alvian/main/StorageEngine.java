@@ -0,0 +1,49 @@
+package com.alvian.main;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This interface describes how the lines of a ResidentLineStore are kept 
+ * on disk. The store loads its lines from the engine once and then hands 
+ * it batches of mutations through a WriteBehindFlusher.
+ * @author Alvian Prasetya
+ */
+public interface StorageEngine extends Closeable {
+	
+	/**
+	 * This method reads the current lines from disk into the specified list, 
+	 * so that the store decides how its lines are held in memory.
+	 * @param lines		The empty list to add the stored lines to.
+	 * @throws IOException	If the lines cannot be read.
+	 */
+	public void load(List<String> lines) throws IOException;
+	
+	/**
+	 * This method tells whether the engine writes every mutation. An engine 
+	 * that does not only needs the added lines, and otherwise rewrites 
+	 * everything from a snapshot of the lines.
+	 * @return	True if every mutation must be passed to the engine.
+	 */
+	public boolean isLogged();
+	
+	/**
+	 * This method tells whether the next write should be given a snapshot 
+	 * of the lines so that the engine can compact what it has written.
+	 * @param isClosing		True if this is the last write before closing.
+	 * @return				True if the next write needs a snapshot.
+	 */
+	public boolean isCompactionDue(boolean isClosing);
+	
+	/**
+	 * This method writes a batch of mutations to disk.
+	 * @param mutations		The mutations made since the previous write, in order.
+	 * @param snapshot		The lines after the mutations, or null if the 
+	 * 						engine did not ask for them.
+	 * @throws IOException	If the mutations cannot be written.
+	 */
+	public void write(ArrayList<Mutation> mutations, List<String> snapshot) throws IOException;
+}
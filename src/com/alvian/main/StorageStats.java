@@ -0,0 +1,65 @@
+package com.alvian.main;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts the work done on storage files by every store of the 
+ * process: bytes read and written, lines checked by search, whole files 
+ * rewritten, and exceptions reported to the user instead of thrown.
+ * The counters are LongAdders, so stores counting from many threads do 
+ * not contend on them.
+ * @author Alvian Prasetya
+ */
+public class StorageStats implements StorageStatsMBean {
+	
+	private final LongAdder _bytesRead = new LongAdder();
+	private final LongAdder _bytesWritten = new LongAdder();
+	private final LongAdder _linesScanned = new LongAdder();
+	private final LongAdder _rewriteCount = new LongAdder();
+	private final LongAdder _exceptionCount = new LongAdder();
+	
+	public void addBytesRead(long bytes) {
+		_bytesRead.add(bytes);
+	}
+	
+	public void addBytesWritten(long bytes) {
+		_bytesWritten.add(bytes);
+	}
+	
+	public void addLinesScanned(long lineCount) {
+		_linesScanned.add(lineCount);
+	}
+	
+	public void addRewrite() {
+		_rewriteCount.increment();
+	}
+	
+	public void addException() {
+		_exceptionCount.increment();
+	}
+	
+	@Override
+	public long getBytesRead() {
+		return _bytesRead.sum();
+	}
+	
+	@Override
+	public long getBytesWritten() {
+		return _bytesWritten.sum();
+	}
+	
+	@Override
+	public long getLinesScanned() {
+		return _linesScanned.sum();
+	}
+	
+	@Override
+	public long getRewriteCount() {
+		return _rewriteCount.sum();
+	}
+	
+	@Override
+	public long getExceptionCount() {
+		return _exceptionCount.sum();
+	}
+}
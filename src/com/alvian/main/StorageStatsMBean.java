@@ -0,0 +1,19 @@
+package com.alvian.main;
+
+/**
+ * This interface exposes the storage statistics of the process through 
+ * JMX, under the name "com.alvian.textbuddy:type=Storage".
+ * @author Alvian Prasetya
+ */
+public interface StorageStatsMBean {
+	
+	long getBytesRead();
+	
+	long getBytesWritten();
+	
+	long getLinesScanned();
+	
+	long getRewriteCount();
+	
+	long getExceptionCount();
+}
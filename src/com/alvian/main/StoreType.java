@@ -0,0 +1,27 @@
+package com.alvian.main;
+
+/**
+ * This enum lists where TextBuddy can keep the lines of a storage file.
+ * RESIDENT loads every line into memory once (see ResidentLineStore).
+ * DIRECT reads and writes the storage file itself (see DirectLineStore).
+ * COMPRESSED reads and writes a storage file of compressed blocks of lines 
+ * (see CompressedLineStore).
+ * @author Alvian Prasetya
+ */
+public enum StoreType {
+	RESIDENT, DIRECT, COMPRESSED;
+	
+	/**
+	 * This method returns the store type with the specified name.
+	 * @param name	The name of the store type, case is ignored.
+	 * @return		The matching store type.
+	 */
+	public static StoreType fromName(String name) {
+		for (StoreType storeType : values()) {
+			if (storeType.name().equalsIgnoreCase(name)) {
+				return storeType;
+			}
+		}
+		throw new IllegalArgumentException("unknown store \"" + name + "\"");
+	}
+}
@@ -2,30 +2,59 @@ package com.alvian.main;
 
 import java.io.File;
 import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.BufferedReader;
-import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 
 import java.util.Scanner;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * This program stores and retrieves user specified lines into a storage 
  * file. It takes in user commands and prints the resulting output.
  * Valid commands include "add", "delete", "display", "clear", "sort", 
- * "search", and "exit".
+ * "search", "query", "stats", and "exit".
  * Add function adds the specified line to the end of the storage file.
  * Delete function delete the specified line number from the storage file.
- * Display function shows the user all of the lines stored in the storage file.
+ * Display function shows the user all of the lines stored in the storage file, 
+ * or only the lines given as "display <from>-<to>" or "display page <n>".
  * Clear function deletes all entries in the storage file.
  * Sort function sorts the entries in the storage file alphabetically.
  * Search function search the entries in the storage file containing a substring.
+ * Query function finds the entries matching a SearchQuery such as 
+ * "query /^[0-9]+$/", "query fox AND moon" or "query fox limit 10", so that 
+ * the token of search is always taken as it is.
+ * Stats function shows how often each command ran and how long it took, 
+ * and how much the storage files were read and written; the same figures 
+ * are exposed as JMX MBeans and, with "--stats-dump=<file>", written to 
+ * a file periodically.
  * Exit function terminates the program.
  * The program assumes that the user does not require to manually save as it 
  * will be done on every operation and exceptions are simply handled by showing 
- * the exception messages.
+ * the exception messages. The lines are read once at start-up and kept in 
+ * memory; by default every change is written to the storage file before the 
+ * command returns, but the writes can be deferred with the options in 
+ * TextBuddyOptions, e.g. "--durability=interval" or "--durability=on-exit".
+ * With "--batch=<file>" (or "--batch=-" for the standard input) commands are 
+ * read from a file without prompting; consecutive adds are written as one 
+ * append and consecutive deletes as one rewrite, with the same feedback.
+ * Storage files named "*.tbz", or any file with "--store=compressed", are 
+ * kept as compressed blocks of lines instead of plain text.
+ * With "--keep-sorted" the storage file is sorted when opened and add 
+ * inserts every line at its sorted position, so sort has nothing to do.
+ * With "--load=lazy" the prompt is shown while the lines are still being 
+ * loaded, and a command only waits for the lines it needs.
+ * The output of display and search is kept in a ResultCache, so repeating 
+ * them between changes does not read the lines again; every change to the 
+ * lines goes through this class, which keeps the cache up to date.
+ * With "--workspace" the name given is a directory, and every storage file 
+ * in it is kept open by one Workspace, see there for its commands.
  * The command format is given by the example interaction below:
  
  Welcome to TextBuddy. mytextfile.txt is ready for use
@@ -72,6 +101,9 @@ public class TextBuddy {
 	private static final String MESSAGE_DELETE_LINE_SUCCESS = "deleted from %1$s: \"%2$s\"%n";
 	private static final String MESSAGE_DELETE_LINE_FAILED = "failed to delete from %1$s, "
 														   + "line %2$s cannot be found%n";
+	private static final String MESSAGE_DELETE_LINE_INVALID = "failed to delete from %1$s, "
+														 + "\"%2$s\" is not a line number%n";
+	private static final String MESSAGE_PARAMETER_MISSING = "command \"%1$s\" needs a parameter%n";
 	private static final String MESSAGE_CLEAR_FILE_SUCCESS = "all content deleted from %1$s%n";
 	private static final String MESSAGE_SORT_FILE_SUCCESS = "all lines in file %1$s have been sorted%n";
 	private static final String MESSAGE_SORT_FILE_FAILED = "failed to sort lines in file %1$s, "
@@ -80,20 +112,44 @@ public class TextBuddy {
 													   + "with token \"%2$s\" in file %3$s%n";
 	private static final String MESSAGE_SEARCH_FAILED = "no line was found "
 			  										  + "with token \"%1$s\" in file %2$s%n";
+	private static final String MESSAGE_SEARCH_PATTERN_INVALID = "failed to search %1$s, "
+															  + "\"%2$s\" is not a valid pattern%n";
 	private static final String MESSAGE_COMMAND_UNRECOGNIZED = "command \"%1$s\" is not recognized, "
 															 + "please enter a valid command%n";
+	private static final String MESSAGE_DISPLAY_RANGE_INVALID = "failed to display lines %1$s of %2$s, "
+															 + "file has %3$s line(s)%n";
 	private static final String MESSAGE_EXCEPTION = "exception encountered: %1$s%n";
 	
-	// This defines the temporary file name used to copy from initial storage file.
-	private static final String TEMPORARY_FILE_NAME = "tempFile.txt";
-	// This defines the format for line of string with line break.
-	private static final String FORMAT_LINE = "%1$s%n";
+	// Unrecognized commands are counted under this name.
+	private static final String STATS_VERB_UNRECOGNIZED = "unrecognized";
+	
+	// This defines the line break written after every line of output.
+	private static final String LINE_SEPARATOR = System.lineSeparator();
 	// This defines the format for line of string with its numbering.
 	private static final String FORMAT_LINE_WITH_NUMBERING = "%1$s. %2$s";
+	// This separates the numbering from the line, as in FORMAT_LINE_WITH_NUMBERING.
+	private static final String NUMBERING_SEPARATOR = ". ";
+	// This separates the first and last line numbers of "display <from>-<to>".
+	private static final String RANGE_SEPARATOR = "-";
+	// This starts the parameter of "display page <n>".
+	private static final String PAGE_PREFIX = "page ";
+	// This stands for the standard input in "--batch=<file>".
+	private static final String BATCH_SOURCE_STANDARD_INPUT = "-";
+	// This bounds the number of commands grouped into one write in batch mode.
+	private static final int MAX_BATCH_SIZE = 10000;
 	// Position of filename in the Command-Line Argument array.
 	private static final int POSITION_OF_FILENAME = 0;
 	
+	// These are the commands every TextBuddy starts with.
+	private static final CommandTable DEFAULT_COMMANDS = createDefaultCommands();
+	
 	private File _file;
+	private LineStore _store;
+	private int _pageSize;
+	private File _statsDumpFile;
+	private ResultCache _cache;
+	private boolean _isKeepSorted;
+	private final CommandTable _commands = new CommandTable(DEFAULT_COMMANDS);
 	
 	/**
 	 * This is the default constructor for TextBuddy object. The constructor 
@@ -102,15 +158,78 @@ public class TextBuddy {
 	 * @param fileName	Name of the storage file.
 	 */
 	public TextBuddy(String storageFileName) {
+		this(storageFileName, new TextBuddyOptions());
+	}
+	
+	/**
+	 * This constructor instantiates the File with specified file name, loads 
+	 * its lines into memory using the specified options and shows welcome 
+	 * message to user.
+	 * @param storageFileName	Name of the storage file.
+	 * @param options			The options for storing the lines.
+	 */
+	public TextBuddy(String storageFileName, TextBuddyOptions options) {
 		try {
-			_file = new File(storageFileName);			
-			// Create new file if the file does not exist.
-			if (!_file.exists()) {
-				_file.createNewFile();
-			}
+			initialize(storageFileName, options, new ResultCache(options.getCacheMemory()));
 			showToUser(String.format(MESSAGE_WELCOME, storageFileName));
 		} catch (Exception exceptionMessage) {
-			showToUser(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+			showToUser(formatException(exceptionMessage));
+		}
+	}
+	
+	private TextBuddy() {
+		// The fields are set by initialize.
+	}
+	
+	/**
+	 * This method opens the storage file the way the constructor does, but 
+	 * leaves failures to the caller instead of showing them to the user, and 
+	 * shows no welcome message.
+	 * @param storageFileName	Name of the storage file.
+	 * @param options			The options for storing the lines.
+	 * @return					The TextBuddy working on the storage file.
+	 * @throws IOException		If the storage file cannot be created or read.
+	 */
+	public static TextBuddy open(String storageFileName, TextBuddyOptions options) 
+			throws IOException {
+		return open(storageFileName, options, new ResultCache(options.getCacheMemory()));
+	}
+	
+	/**
+	 * This method opens the storage file like open, keeping the output of 
+	 * display and search in the specified cache, e.g. one made by 
+	 * ResultCache.share.
+	 * @param storageFileName	Name of the storage file.
+	 * @param options			The options for storing the lines.
+	 * @param cache				The cache used by no other storage file.
+	 * @return					The TextBuddy working on the storage file.
+	 * @throws IOException		If the storage file cannot be created or read.
+	 */
+	public static TextBuddy open(String storageFileName, TextBuddyOptions options, 
+								 ResultCache cache) throws IOException {
+		TextBuddy textBuddy = new TextBuddy();
+		textBuddy.initialize(storageFileName, options, cache);
+		return textBuddy;
+	}
+	
+	private void initialize(String storageFileName, TextBuddyOptions options, ResultCache cache) 
+			throws IOException {
+		_file = new File(storageFileName);			
+		// Create new file if the file does not exist.
+		if (!_file.exists()) {
+			_file.createNewFile();
+		}
+		_store = createStore(_file, options);
+		_pageSize = options.getPageSize();
+		_cache = cache;
+		_isKeepSorted = options.isKeepSorted();
+		if (_isKeepSorted) {
+			_store.sort();
+			_store.commit();
+		}
+		if (options.getStatsDumpFile() != null) {
+			_statsDumpFile = new File(options.getStatsDumpFile());
+			Metrics.startDump(_statsDumpFile, options.getStatsIntervalMillis());
 		}
 	}
 	
@@ -121,8 +240,56 @@ public class TextBuddy {
 			showToUser(MESSAGE_FILE_NAME_EMPTY);
 			System.exit(0);
 		}
-		TextBuddy newTextBuddy = new TextBuddy(storageFileName);
-		newTextBuddy.runCommandsUntilExit(scannerObject);
+		TextBuddyOptions options;
+		try {
+			options = TextBuddyOptions.fromArguments(args);
+		} catch (IllegalArgumentException exceptionMessage) {
+			showToUser(formatException(exceptionMessage));
+			System.exit(0);
+			return;
+		}
+		if (options.isWorkspace()) {
+			runWorkspace(storageFileName, options, scannerObject);
+			return;
+		}
+		TextBuddy newTextBuddy = new TextBuddy(storageFileName, options);
+		if (options.getBatchSource() == null) {
+			newTextBuddy.runCommandsUntilExit(scannerObject);
+			return;
+		}
+		// Initialize the required reader objects to read the batch commands.
+		try (BufferedReader commandReader = new BufferedReader(openBatchSource(options))) {
+			newTextBuddy.runBatch(commandReader, 
+								  new BufferedWriter(new OutputStreamWriter(System.out)));
+		} catch (IOException exceptionMessage) {
+			showToUser(formatException(exceptionMessage));
+		}
+	}
+	
+	/**
+	 * This method opens the directory as a Workspace and runs its commands 
+	 * the way main runs the commands of a single storage file.
+	 */
+	private static void runWorkspace(String directoryName, TextBuddyOptions options, 
+									 Scanner scannerObject) {
+		Workspace workspace;
+		try {
+			workspace = new Workspace(new File(directoryName), options);
+		} catch (IOException exceptionMessage) {
+			showToUser(formatException(exceptionMessage));
+			return;
+		}
+		if (options.getBatchSource() == null) {
+			workspace.runCommandsUntilExit(scannerObject);
+			return;
+		}
+		// Initialize the required reader objects to read the batch commands.
+		try (BufferedReader commandReader = new BufferedReader(openBatchSource(options))) {
+			workspace.runBatch(commandReader, 
+							   new BufferedWriter(new OutputStreamWriter(System.out)));
+		} catch (IOException exceptionMessage) {
+			showToUser(formatException(exceptionMessage));
+		}
 	}
 	
 	/**
@@ -131,14 +298,77 @@ public class TextBuddy {
 	 * @param scannerObject		Scanner for receiving typed inputs from user.
 	 */
 	public void runCommandsUntilExit(Scanner scannerObject) {
+		Writer output = new BufferedWriter(new OutputStreamWriter(System.out));
 		String commandLine = new String();
-		String feedback = new String();
+		boolean isRunning = true;
 		
 		do {
 			commandLine = readCommandLine(scannerObject);
-			feedback = executeCommand(commandLine);
-			if (feedback != null) showToUser(feedback);
-		} while (feedback != null);
+			try {
+				isRunning = executeCommand(commandLine, output);
+			} catch (IOException exceptionMessage) {
+				showToUser(formatException(exceptionMessage));
+			}
+			try {
+				output.flush();
+			} catch (IOException exceptionMessage) {
+				showToUser(formatException(exceptionMessage));
+			}
+		} while (isRunning);
+	}
+	
+	/**
+	 * This method runs commands from the reader until "exit" or the end of 
+	 * the input, without prompting. Consecutive adds and consecutive deletes 
+	 * are grouped, up to MAX_BATCH_SIZE at a time, and applied with one 
+	 * write and one commit per group; every command still gets the feedback 
+	 * it would get when typed. The store is closed at the end of the input.
+	 * @param commandReader		The reader the commands are read from.
+	 * @param output			The writer receiving the feedback.
+	 * @throws IOException		If the commands cannot be read or the feedback 
+	 * 							cannot be written.
+	 */
+	public void runBatch(BufferedReader commandReader, Writer output) throws IOException {
+		ArrayList<String> linesToAdd = new ArrayList<String>();
+		IntList lineNumbersToDelete = new IntList();
+		boolean isRunning = true;
+		
+		for (String commandLine = commandReader.readLine(); isRunning && commandLine != null; 
+			 commandLine = commandReader.readLine()) {
+			int verbEnd = CommandParser.getVerbEnd(commandLine);
+			int parameterStart = CommandParser.getParameterStart(commandLine, verbEnd);
+			long lineNumberToDelete = CommandParser.NOT_A_NUMBER;
+			if (parameterStart != CommandParser.NO_PARAMETER 
+				&& CommandParser.isVerb(commandLine, verbEnd, "delete")) {
+				lineNumberToDelete = CommandParser.parseNumber(commandLine, parameterStart, 
+															   commandLine.length());
+			}
+			
+			if (parameterStart != CommandParser.NO_PARAMETER 
+				&& CommandParser.isVerb(commandLine, verbEnd, "add")) {
+				delete(lineNumbersToDelete, output);
+				linesToAdd.add(commandLine.substring(parameterStart));
+				if (linesToAdd.size() >= MAX_BATCH_SIZE) {
+					add(linesToAdd, output);
+				}
+			} else if (lineNumberToDelete != CommandParser.NOT_A_NUMBER) {
+				add(linesToAdd, output);
+				lineNumbersToDelete.add((int) lineNumberToDelete);
+				if (lineNumbersToDelete.size() >= MAX_BATCH_SIZE) {
+					delete(lineNumbersToDelete, output);
+				}
+			} else {
+				add(linesToAdd, output);
+				delete(lineNumbersToDelete, output);
+				isRunning = executeCommand(commandLine, output);
+			}
+		}
+		add(linesToAdd, output);
+		delete(lineNumbersToDelete, output);
+		if (isRunning) {
+			exit();
+		}
+		output.flush();
 	}
 	
 	/**
@@ -148,30 +378,56 @@ public class TextBuddy {
 	 * @return					The feedback string given after the execution of command.
 	 */
 	public String executeCommand(String commandLine) {
-		String commandType = getCommandType(commandLine).toLowerCase();
+		StringWriter output = new StringWriter();
 		
-		if (commandType.equals("display")) {
-			return display();
-		} else if (commandType.equals("add")) {
-			String stringToAdd = getCommandParameter(commandLine);
-			return add(stringToAdd);
-		} else if (commandType.equals("delete")) {
-			int lineNumberToDelete = Integer.parseInt(getCommandParameter(commandLine));
-			return delete(lineNumberToDelete);
-		} else if (commandType.equals("clear")) {
-			return clear();
-		} else if (commandType.equals("sort")) {
-			return sort();
-		} else if (commandType.equals("search")) {
-			String searchToken = getCommandParameter(commandLine);
-			return search(searchToken);
-		} else if (commandType.equals("exit")) {
-			return null;
-		} else {
-			return String.format(MESSAGE_COMMAND_UNRECOGNIZED, commandType);
+		try {
+			if (!executeCommand(commandLine, output)) {
+				return null;
+			}
+			return output.toString();
+		} catch (IOException exceptionMessage) {
+			return formatException(exceptionMessage);
+		}
+	}
+	
+	/**
+	 * This method runs the specified command and writes the feedback given 
+	 * by the program to the output as it is produced, so that long results 
+	 * such as display and search are never held in memory as one String.
+	 * @param commandLine		The user-specified command, including the parameters.
+	 * @param output			The writer receiving the feedback.
+	 * @return					False if the command was "exit", true otherwise.
+	 * @throws IOException		If the feedback cannot be written.
+	 */
+	public boolean executeCommand(String commandLine, Writer output) throws IOException {
+		long startNanos = System.nanoTime();
+		int verbEnd = CommandParser.getVerbEnd(commandLine);
+		int position = _commands.indexOf(commandLine, verbEnd);
+		
+		if (position < 0) {
+			output.write(String.format(MESSAGE_COMMAND_UNRECOGNIZED, 
+						 commandLine.substring(0, verbEnd).toLowerCase()));
+			recordCommands(STATS_VERB_UNRECOGNIZED, startNanos, 1);
+			return true;
+		}
+		try {
+			return _commands.getHandler(position).execute(this, commandLine, 
+					CommandParser.getParameterStart(commandLine, verbEnd), output);
+		} finally {
+			recordCommands(_commands.getVerb(position), startNanos, 1);
 		}
 	}
 	
+	/**
+	 * This method adds a command that executeCommand will run, or replaces 
+	 * the handler of an existing one.
+	 * @param verb		The first word of the command, matched ignoring case.
+	 * @param handler	The handler running the command.
+	 */
+	public void registerCommand(String verb, CommandHandler handler) {
+		_commands.register(verb, handler);
+	}
+	
 	/**
 	 * This method returns a string of all the entries in the storage file 
 	 * along with each of their corresponding numbering.
@@ -179,34 +435,222 @@ public class TextBuddy {
 	 * 			exception occurs.
 	 */
 	public String display() {
-		if (isEmptyFile(_file)) {
-			return String.format(MESSAGE_FILE_IS_EMPTY, _file.getName());
+		StringWriter output = new StringWriter();
+		
+		try {
+			display(output);
+			return output.toString();
+		} catch (IOException exceptionMessage) {
+			return formatException(exceptionMessage);
+		}
+	}
+	
+	/**
+	 * This method writes all the entries in the storage file along with each 
+	 * of their corresponding numbering to the output, one line at a time.
+	 * @param output	The writer receiving the lines to be displayed.
+	 * @throws IOException	If the lines cannot be written.
+	 */
+	public void display(final Writer output) throws IOException {
+		if (_store.isEmpty()) {
+			output.write(String.format(MESSAGE_FILE_IS_EMPTY, _file.getName()));
 		} else {
-			// Initialize the required reader objects to read the storage file.
-			try (BufferedReader reader = new BufferedReader(new FileReader(_file))) {
-				return getCompressedString(addNumberings(getFileContent(reader)));
-			} catch (IOException exceptionMessage) {
-				return String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage());
+			_store.scan(0, _store.size(), new LineVisitor() {
+				@Override
+				public boolean visit(int index, String line) throws IOException {
+					writeNumberedLine(output, index + 1, line);
+					return true;
+				}
+			});
+		}
+	}
+	
+	/**
+	 * This method returns a string of the entries from the first to the last 
+	 * specified line number (both inclusive) along with their numbering.
+	 * @param fromLineNumber	The line number of the first entry to display.
+	 * @param toLineNumber		The line number of the last entry to display.
+	 * @return	Returns the lines to be displayed, or error message if the 
+	 * 			range is invalid or exception message if exception occurs.
+	 */
+	public String display(int fromLineNumber, int toLineNumber) {
+		StringWriter output = new StringWriter();
+		
+		try {
+			display(fromLineNumber, toLineNumber, output);
+			return output.toString();
+		} catch (IOException exceptionMessage) {
+			return formatException(exceptionMessage);
+		}
+	}
+	
+	/**
+	 * This method writes the entries from the first to the last specified 
+	 * line number (both inclusive) along with their numbering to the output. 
+	 * A last line number past the end of the file is cut to the last line. 
+	 * Only the requested lines are read from the store.
+	 * @param fromLineNumber	The line number of the first entry to display.
+	 * @param toLineNumber		The line number of the last entry to display.
+	 * @param output			The writer receiving the lines to be displayed.
+	 * @throws IOException		If the lines cannot be read or written.
+	 */
+	public void display(int fromLineNumber, int toLineNumber, Writer output) throws IOException {
+		displayLines(fromLineNumber, toLineNumber, output);
+	}
+	
+	/**
+	 * This method displays the lines like display(int, int, Writer) does.
+	 * @return	The last line number the output depends on, which is 
+	 * 			ResultCache.ALL_LINES if the output depends on the line count.
+	 */
+	private int displayLines(int fromLineNumber, int toLineNumber, final Writer output) 
+			throws IOException {
+		boolean isRangeValid = fromLineNumber >= 1 && fromLineNumber <= toLineNumber;
+		// A valid range only needs to know whether the lines up to its end 
+		// exist, which a store still loading can tell before it has loaded all.
+		int lineCount = isRangeValid ? _store.countLines(toLineNumber) : _store.size();
+		
+		if (lineCount == 0) {
+			output.write(String.format(MESSAGE_FILE_IS_EMPTY, _file.getName()));
+		} else if (!isRangeValid || !isLineNumberValid(fromLineNumber, lineCount)) {
+			output.write(String.format(MESSAGE_DISPLAY_RANGE_INVALID, 
+						 fromLineNumber + RANGE_SEPARATOR + toLineNumber, _file.getName(), lineCount));
+		} else {
+			_store.scan(fromLineNumber - 1, toLineNumber, new LineVisitor() {
+				@Override
+				public boolean visit(int index, String line) throws IOException {
+					writeNumberedLine(output, index + 1, line);
+					return true;
+				}
+			});
+			if (toLineNumber <= lineCount) {
+				return toLineNumber;
 			}
 		}
+		return ResultCache.ALL_LINES;
 	}
-
+	
+	/**
+	 * This method returns a string of the entries on the specified page, 
+	 * where every page holds the number of lines given by "--page-size".
+	 * @param pageNumber	The page to display, starting from 1.
+	 * @return	Returns the lines to be displayed, or error message if the 
+	 * 			page is invalid or exception message if exception occurs.
+	 */
+	public String displayPage(int pageNumber) {
+		StringWriter output = new StringWriter();
+		
+		try {
+			displayPage(pageNumber, output);
+			return output.toString();
+		} catch (IOException exceptionMessage) {
+			return formatException(exceptionMessage);
+		}
+	}
+	
+	/**
+	 * This method writes the entries on the specified page to the output.
+	 * @param pageNumber	The page to display, starting from 1.
+	 * @param output		The writer receiving the lines to be displayed.
+	 * @throws IOException	If the lines cannot be read or written.
+	 */
+	public void displayPage(int pageNumber, Writer output) throws IOException {
+		displayPageLines(pageNumber, output);
+	}
+	
+	/**
+	 * This method displays the page like displayPage(int, Writer) does.
+	 * @return	The last line number the output depends on.
+	 */
+	private int displayPageLines(int pageNumber, Writer output) throws IOException {
+		long fromLineNumber = (long) (pageNumber - 1) * _pageSize + 1;
+		long toLineNumber = (long) pageNumber * _pageSize;
+		return displayLines((int) Math.min(fromLineNumber, Integer.MAX_VALUE), 
+							(int) Math.min(toLineNumber, Integer.MAX_VALUE), output);
+	}
+	
 	/**
 	 * This method appends the specified String to the last line of the 
-	 * storage file and return a success/unsuccessful message.
+	 * storage file and return a success/unsuccessful message. When the 
+	 * lines are kept sorted, the String is inserted at its sorted position 
+	 * instead, after any lines equal to it.
 	 * @param lineToAdd		The String to be added to the storage file.
 	 * @return	Returns the successfully add/unsuccessful message.
 	 */
 	public String add(String lineToAdd) {
-		// Initialize the required writer objects to write into storage file.
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(_file, true))) {
-			writer.append(String.format(FORMAT_LINE, lineToAdd));
+		try {
+			int index = _isKeepSorted ? findSortedIndex(lineToAdd) : _store.size();
+			if (index == _store.size()) {
+				_store.add(lineToAdd);
+				_cache.lineAdded(_store.size(), lineToAdd);
+			} else {
+				_store.insert(index, lineToAdd);
+				_cache.lineInserted(index + 1, lineToAdd);
+			}
+			_store.commit();
 			return String.format(MESSAGE_ADD_LINE_SUCCESS, _file.getName(), lineToAdd);
 		} catch (IOException exceptionMessage) {
-			return String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage());
+			_cache.clear();
+			return formatException(exceptionMessage);
 		}
 	}
 	
+	/**
+	 * This method adds the lines with one write and one commit, writes the 
+	 * feedback of every add to the output and empties the list. When the 
+	 * lines are kept sorted, the lines are added to the end and then merged 
+	 * into the sorted lines, which puts them where separate adds would.
+	 * @param linesToAdd	The lines to add, in order.
+	 * @param output		The writer receiving the feedback.
+	 * @throws IOException	If the feedback cannot be written.
+	 */
+	public void add(ArrayList<String> linesToAdd, Writer output) throws IOException {
+		if (linesToAdd.isEmpty()) {
+			return;
+		}
+		long startNanos = System.nanoTime();
+		try {
+			_store.addAll(linesToAdd);
+			if (_isKeepSorted && _store.sort()) {
+				_cache.clear();
+			} else {
+				int lineNumber = _store.size() - linesToAdd.size();
+				for (int i = 0; i < linesToAdd.size(); i++) {
+					_cache.lineAdded(++lineNumber, linesToAdd.get(i));
+				}
+			}
+			_store.commit();
+			for (int i = 0; i < linesToAdd.size(); i++) {
+				output.write(String.format(MESSAGE_ADD_LINE_SUCCESS, _file.getName(), 
+							 linesToAdd.get(i)));
+			}
+		} catch (IOException exceptionMessage) {
+			_cache.clear();
+			output.write(formatException(exceptionMessage));
+		}
+		recordCommands("add", startNanos, linesToAdd.size());
+		linesToAdd.clear();
+	}
+	
+	/**
+	 * This method returns the index after the last line that is not greater 
+	 * than the specified line ignoring case, with a binary search over the 
+	 * sorted lines of the store.
+	 */
+	private int findSortedIndex(String line) throws IOException {
+		int low = 0;
+		int high = _store.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (String.CASE_INSENSITIVE_ORDER.compare(_store.get(middle), line) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
 	/**
 	 * This method deletes an entry with the specified line number from 
 	 * the storage file and return a success/unsuccessful message.
@@ -214,29 +658,68 @@ public class TextBuddy {
 	 * @return	Returns the successfully delete/unsuccessful message.
 	 */
 	public String delete(int lineNumberToDelete) {
-		// Initialize the required reader objects to read the storage file.
-		try (BufferedReader reader = new BufferedReader(new FileReader(_file))) {
-			ArrayList<String> fileContent = getFileContent(reader);
-			
-			if (!isLineNumberValid(lineNumberToDelete, fileContent)) {
+		try {
+			if (!isLineNumberValid(lineNumberToDelete, _store.size())) {
 				return String.format(MESSAGE_DELETE_LINE_FAILED, _file.getName(), 
 									 lineNumberToDelete);
 			} else {
-				String deletedLine = fileContent.get(lineNumberToDelete - 1);
-				fileContent.remove(lineNumberToDelete - 1);
-				clear();
-				// Initialize the required writer objects to write into storage file.
-				BufferedWriter writer = new BufferedWriter(new FileWriter(_file, false));
-				try {
-					writer.write(getCompressedString(fileContent));
-				} finally {
-					writer.close();
-				}
+				String deletedLine = _store.remove(lineNumberToDelete - 1);
+				_cache.lineRemoved(lineNumberToDelete, deletedLine);
+				_store.commit();
 				return String.format(MESSAGE_DELETE_LINE_SUCCESS, _file.getName(), deletedLine);
 			}
 		} catch (IOException exceptionMessage) {
-			return String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage());
+			_cache.clear();
+			return formatException(exceptionMessage);
+		}
+	}
+	
+	/**
+	 * This method deletes the line numbers one after another, as separate 
+	 * delete commands would, but with one rewrite and one commit. It writes 
+	 * the feedback of every delete to the output and empties the list.
+	 * @param lineNumbersToDelete	The line numbers to delete, in order.
+	 * @param output				The writer receiving the feedback.
+	 * @throws IOException			If the feedback cannot be written.
+	 */
+	public void delete(IntList lineNumbersToDelete, Writer output) throws IOException {
+		if (lineNumbersToDelete.isEmpty()) {
+			return;
+		}
+		long startNanos = System.nanoTime();
+		try {
+			int lineCount = _store.size();
+			IntList indicesToRemove = new IntList(lineNumbersToDelete.size());
+			boolean[] isDeleted = new boolean[lineNumbersToDelete.size()];
+			for (int i = 0; i < lineNumbersToDelete.size(); i++) {
+				int lineNumber = lineNumbersToDelete.get(i);
+				if (isLineNumberValid(lineNumber, lineCount - indicesToRemove.size())) {
+					indicesToRemove.add(lineNumber - 1);
+					isDeleted[i] = true;
+				}
+			}
+			ArrayList<String> deletedLines = _store.removeAll(indicesToRemove.toArray());
+			for (int i = 0; i < deletedLines.size(); i++) {
+				_cache.lineRemoved(indicesToRemove.get(i) + 1, deletedLines.get(i));
+			}
+			_store.commit();
+			
+			int deletedLinePosition = 0;
+			for (int i = 0; i < lineNumbersToDelete.size(); i++) {
+				if (isDeleted[i]) {
+					output.write(String.format(MESSAGE_DELETE_LINE_SUCCESS, _file.getName(), 
+								 deletedLines.get(deletedLinePosition++)));
+				} else {
+					output.write(String.format(MESSAGE_DELETE_LINE_FAILED, _file.getName(), 
+								 lineNumbersToDelete.get(i)));
+				}
+			}
+		} catch (IOException exceptionMessage) {
+			_cache.clear();
+			output.write(formatException(exceptionMessage));
 		}
+		recordCommands("delete", startNanos, lineNumbersToDelete.size());
+		lineNumbersToDelete.clear();
 	}
 	
 	/**
@@ -247,14 +730,14 @@ public class TextBuddy {
 	 * 			or exception message if exception occurs.
 	 */
 	public String clear() {
-		File temporaryFile = new File(TEMPORARY_FILE_NAME);
-		
 		try {
-			temporaryFile.createNewFile();
-			deleteAndReplace(_file, temporaryFile);
+			_store.clear();
+			_cache.clear();
+			_store.commit();
 			return String.format(MESSAGE_CLEAR_FILE_SUCCESS, _file.getName());
 		} catch (IOException exceptionMessage) {
-			return String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage());
+			_cache.clear();
+			return formatException(exceptionMessage);
 		}
 	}
 	
@@ -265,27 +748,19 @@ public class TextBuddy {
 	 * 			or error message if file is empty.
 	 */
 	public String sort() {
-		// Initialize the required reader objects to read the storage file.
-		try (BufferedReader reader = new BufferedReader(new FileReader(_file))) {
-			ArrayList<String> fileContent = getFileContent(reader);
-			
-			if (fileContent.isEmpty()) {
+		try {
+			if (_store.isEmpty()) {
 				return String.format(MESSAGE_SORT_FILE_FAILED, _file.getName());
 			} else {
-				// Entries are sorted alphabetically ignoring different cases.
-				Collections.sort(fileContent, String.CASE_INSENSITIVE_ORDER);
-				// Clear and rewrite the file with the sorted entries.
-				clear();
-				BufferedWriter writer = new BufferedWriter(new FileWriter(_file, false));
-				try {
-					writer.write(getCompressedString(fileContent));
-				} finally {
-					writer.close();
+				if (_store.sort()) {
+					_cache.clear();
 				}
+				_store.commit();
 				return String.format(MESSAGE_SORT_FILE_SUCCESS, _file.getName());
 			}
 		} catch (IOException exceptionMessage) {
-			return String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage());
+			_cache.clear();
+			return formatException(exceptionMessage);
 		}
 	}
 	
@@ -298,26 +773,137 @@ public class TextBuddy {
 	 * 						or returns not found message if no entry matches.
 	 */
 	public String search(String searchToken) {
-		// Initialize the required reader objects to read the storage file.
-		try (BufferedReader reader = new BufferedReader(new FileReader(_file))) {
-			ArrayList<String> fileContent = getFileContent(reader);
-			ArrayList<String> searchResult = new ArrayList<String>();
-			// Iterate and search through every entry in the file content.
-			for (int i = 0; i < fileContent.size(); i++) {
-				String currentLineLowerCase = fileContent.get(i).toLowerCase();
-				if (currentLineLowerCase.contains(searchToken.toLowerCase())) {
-					searchResult.add(fileContent.get(i));
-				}
-			}
-			if (searchResult.isEmpty()) {
-				return String.format(MESSAGE_SEARCH_FAILED, searchToken, _file.getName());
-			} else {
-				return String.format(MESSAGE_SEARCH_SUCCESS, searchResult.size(), searchToken, 
-					   _file.getName()) + getCompressedString(addNumberings(searchResult));
+		StringWriter output = new StringWriter();
+		
+		try {
+			search(searchToken, output);
+			return output.toString();
+		} catch (IOException exceptionMessage) {
+			return formatException(exceptionMessage);
+		}
+	}
+	
+	/**
+	 * This method writes the entries containing the specified substring to 
+	 * the output, or the not found message if no entry matches the substring. 
+	 * The matches are counted first for the header and then written as they 
+	 * are found again, so they are never collected. The numbered entries are 
+	 * kept in the result cache under the lower-cased substring, so that 
+	 * searching it again in any case reads no lines.
+	 * @param searchToken	The specified substring to search for in the storage.
+	 * @param output		The writer receiving the search result.
+	 * @throws IOException	If the search result cannot be written.
+	 */
+	public void search(String searchToken, Writer output) throws IOException {
+		String searchTokenLowerCase = searchToken.toLowerCase();
+		ResultCache.Entry cachedResult = _cache.get("search", searchTokenLowerCase);
+		
+		if (cachedResult != null) {
+			writeSearchHeader(searchToken, cachedResult.getLineCount(), output);
+			cachedResult.writeTo(output);
+			return;
+		}
+		final int matchCount = _store.search(searchToken, new LineVisitor() {
+			@Override
+			public boolean visit(int index, String line) {
+				return true;
 			}
+		});
+		final ResultCache.CapturingWriter capture = _cache.capture(output);
+		
+		writeSearchHeader(searchToken, matchCount, output);
+		if (matchCount > 0) {
+			_store.search(searchToken, new LineVisitor() {
+				@Override
+				public boolean visit(int index, String line) throws IOException {
+					writeNumberedLine(capture, index + 1, line);
+					return index + 1 < matchCount;
+				}
+			});
+		}
+		_cache.putLines("search", searchTokenLowerCase, capture, searchTokenLowerCase, matchCount);
+	}
+	
+	/**
+	 * This method writes the entries matching the SearchQuery the way search 
+	 * writes the entries containing a substring. A query that is a single 
+	 * substring is searched as such. Any other query is kept whole in the 
+	 * result cache under the query as typed, as patterns tell case apart; 
+	 * a query stopped by its limit is only discarded when a line up to the 
+	 * last one found changes.
+	 * @param searchQuery	The query, e.g. "/^[0-9]+$/" or "fox AND moon".
+	 * @param output		The writer receiving the search result.
+	 * @throws IOException	If the search result cannot be written.
+	 */
+	public void query(String searchQuery, Writer output) throws IOException {
+		SearchQuery query;
+		try {
+			query = SearchQuery.parse(searchQuery);
+		} catch (PatternSyntaxException exceptionMessage) {
+			output.write(String.format(MESSAGE_SEARCH_PATTERN_INVALID, _file.getName(), searchQuery));
+			return;
+		}
+		if (query.isPlain()) {
+			search(searchQuery, output);
+			return;
+		}
+		ResultCache.Entry cachedResult = _cache.get("query", searchQuery);
+		
+		if (cachedResult != null) {
+			cachedResult.writeTo(output);
+			return;
+		}
+		ArrayList<String> searchResult = new ArrayList<String>();
+		int lastLineNumber = query.search(_store, searchResult);
+		ResultCache.CapturingWriter capture = _cache.capture(output);
+		
+		writeSearchHeader(searchQuery, searchResult.size(), capture);
+		for (int i = 0; i < searchResult.size(); i++) {
+			writeNumberedLine(capture, i + 1, searchResult.get(i));
+		}
+		_cache.putOutput("query", searchQuery, capture, lastLineNumber);
+	}
+	
+	private void writeSearchHeader(String searchToken, int lineCount, Writer output) 
+			throws IOException {
+		if (lineCount == 0) {
+			output.write(String.format(MESSAGE_SEARCH_FAILED, searchToken, _file.getName()));
+		} else {
+			output.write(String.format(MESSAGE_SEARCH_SUCCESS, lineCount, searchToken, 
+						 _file.getName()));
+		}
+	}
+	
+	/**
+	 * This method writes the statistics of the commands run so far, in the 
+	 * same table as the "stats" command.
+	 * @param output	The writer receiving the statistics.
+	 * @throws IOException	If the statistics cannot be written.
+	 */
+	public void stats(Writer output) throws IOException {
+		Metrics.writeReport(output);
+	}
+	
+	/**
+	 * This method writes any pending changes to the storage file before 
+	 * the program exits, and the last report of "stats" to the dump file 
+	 * if there is one.
+	 * @return	Returns null to signal that the program should exit.
+	 */
+	public String exit() {
+		try {
+			_store.close();
 		} catch (IOException exceptionMessage) {
-			return String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage());
+			showToUser(formatException(exceptionMessage));
+		}
+		if (_statsDumpFile != null) {
+			try {
+				Metrics.dump(_statsDumpFile);
+			} catch (IOException exceptionMessage) {
+				showToUser(formatException(exceptionMessage));
+			}
 		}
+		return null;
 	}
 	
 	public static boolean isEmptyFile(File fileToCheck) {
@@ -331,20 +917,233 @@ public class TextBuddy {
 				return false;
 			}
 		} catch (IOException exceptionMessage) {
-			showToUser(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+			showToUser(formatException(exceptionMessage));
 			return false;
 		}
 	}
 	
 	/**
-	 * This method deletes a specified file, 
-	 * then replaces it by renaming another file into the one deleted.
-	 * @param fileToDelete		The File object to be deleted.
-	 * @param fileToReplace		The File object to replace the deleted file.
+	 * This method runs the display command with its optional parameter, 
+	 * which is either absent, "<from>-<to>", "<n>" or "page <n>". The output 
+	 * is kept in the result cache under the lower-cased parameter.
+	 * @param commandLine		The display command line.
+	 * @param parameterStart	The start of the parameter, or CommandParser.NO_PARAMETER.
+	 * @param output			The writer receiving the lines to be displayed.
+	 * @throws IOException		If the lines cannot be read or written.
+	 */
+	private void displayRange(String commandLine, int parameterStart, Writer output) 
+			throws IOException {
+		String parameter = parameterStart == CommandParser.NO_PARAMETER ? "" 
+						   : commandLine.substring(parameterStart).toLowerCase();
+		ResultCache.Entry cachedResult = _cache.get("display", parameter);
+		
+		if (cachedResult != null && parameter.isEmpty() && cachedResult.getLineCount() == 0) {
+			output.write(String.format(MESSAGE_FILE_IS_EMPTY, _file.getName()));
+		} else if (cachedResult != null) {
+			cachedResult.writeTo(output);
+		} else if (parameter.isEmpty()) {
+			// The whole display is kept as the lines containing the empty token.
+			int lineCount = _store.size();
+			ResultCache.CapturingWriter capture = _cache.capture(output);
+			if (lineCount == 0) {
+				output.write(String.format(MESSAGE_FILE_IS_EMPTY, _file.getName()));
+			} else {
+				display(capture);
+			}
+			_cache.putLines("display", parameter, capture, "", lineCount);
+		} else {
+			ResultCache.CapturingWriter capture = _cache.capture(output);
+			int lastLineNumber = displayParameter(commandLine, parameterStart, capture);
+			_cache.putOutput("display", parameter, capture, lastLineNumber);
+		}
+	}
+	
+	/**
+	 * This method runs the display command with a parameter.
+	 * @return	The last line number the output depends on.
 	 */
-	public static void deleteAndReplace(File fileToDelete, File fileToReplace) {
-		fileToDelete.delete();
-		fileToReplace.renameTo(fileToDelete);
+	private int displayParameter(String commandLine, int parameterStart, Writer output) 
+			throws IOException {
+		int lineEnd = commandLine.length();
+		
+		if (commandLine.regionMatches(true, parameterStart, PAGE_PREFIX, 0, PAGE_PREFIX.length())) {
+			long pageNumber = CommandParser.parseNumber(commandLine, 
+														parameterStart + PAGE_PREFIX.length(), lineEnd);
+			if (pageNumber != CommandParser.NOT_A_NUMBER) {
+				return displayPageLines((int) pageNumber, output);
+			}
+		} else {
+			int separatorPosition = commandLine.indexOf(RANGE_SEPARATOR, parameterStart);
+			int fromEnd = separatorPosition < 0 ? lineEnd : separatorPosition;
+			long fromLineNumber = CommandParser.parseNumber(commandLine, parameterStart, fromEnd);
+			long toLineNumber = separatorPosition < 0 ? fromLineNumber 
+								: CommandParser.parseNumber(commandLine, separatorPosition + 1, lineEnd);
+			if (fromLineNumber != CommandParser.NOT_A_NUMBER 
+				&& toLineNumber != CommandParser.NOT_A_NUMBER) {
+				return displayLines((int) fromLineNumber, (int) toLineNumber, output);
+			}
+		}
+		output.write(String.format(MESSAGE_DISPLAY_RANGE_INVALID, commandLine.substring(parameterStart), 
+					 _file.getName(), _store.size()));
+		return ResultCache.ALL_LINES;
+	}
+	
+	/**
+	 * This method builds the table of the commands TextBuddy has always 
+	 * understood.
+	 * @return	The table of the default commands.
+	 */
+	private static CommandTable createDefaultCommands() {
+		CommandTable commands = new CommandTable();
+		
+		commands.register("display", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+								   Writer output) throws IOException {
+				textBuddy.displayRange(commandLine, parameterStart, output);
+				return true;
+			}
+		});
+		commands.register("add", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+								   Writer output) throws IOException {
+				if (isParameterPresent(commandLine, parameterStart, output)) {
+					output.write(textBuddy.add(commandLine.substring(parameterStart)));
+				}
+				return true;
+			}
+		});
+		commands.register("delete", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+								   Writer output) throws IOException {
+				if (!isParameterPresent(commandLine, parameterStart, output)) {
+					return true;
+				}
+				long lineNumberToDelete = CommandParser.parseNumber(commandLine, parameterStart, 
+																	commandLine.length());
+				if (lineNumberToDelete == CommandParser.NOT_A_NUMBER) {
+					output.write(String.format(MESSAGE_DELETE_LINE_INVALID, textBuddy._file.getName(), 
+								 commandLine.substring(parameterStart)));
+				} else {
+					output.write(textBuddy.delete((int) lineNumberToDelete));
+				}
+				return true;
+			}
+		});
+		commands.register("clear", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+								   Writer output) throws IOException {
+				output.write(textBuddy.clear());
+				return true;
+			}
+		});
+		commands.register("sort", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+								   Writer output) throws IOException {
+				output.write(textBuddy.sort());
+				return true;
+			}
+		});
+		commands.register("search", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+								   Writer output) throws IOException {
+				if (isParameterPresent(commandLine, parameterStart, output)) {
+					textBuddy.search(commandLine.substring(parameterStart), output);
+				}
+				return true;
+			}
+		});
+		commands.register("query", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+								   Writer output) throws IOException {
+				if (isParameterPresent(commandLine, parameterStart, output)) {
+					textBuddy.query(commandLine.substring(parameterStart), output);
+				}
+				return true;
+			}
+		});
+		commands.register("stats", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+								   Writer output) throws IOException {
+				textBuddy.stats(output);
+				return true;
+			}
+		});
+		commands.register("exit", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, 
+								   Writer output) {
+				textBuddy.exit();
+				return false;
+			}
+		});
+		return commands;
+	}
+	
+	/**
+	 * This method writes an error message if the command has no parameter.
+	 * @return	True if the command has a parameter.
+	 */
+	private static boolean isParameterPresent(String commandLine, int parameterStart, 
+											  Writer output) throws IOException {
+		if (parameterStart == CommandParser.NO_PARAMETER) {
+			output.write(String.format(MESSAGE_PARAMETER_MISSING, 
+						 commandLine.substring(0, CommandParser.getVerbEnd(commandLine)).toLowerCase()));
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * This method records commands that ran one after another since the 
+	 * start time, as taking an equal share of the elapsed time each.
+	 */
+	private static void recordCommands(String verb, long startNanos, int commandCount) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		Metrics.getCommandStats(verb).record(elapsedNanos / commandCount, commandCount);
+	}
+	
+	/**
+	 * This method counts the exception before it is shown to the user in 
+	 * place of the feedback of a command.
+	 * @param exceptionMessage	The exception that was caught.
+	 * @return					The message to show the user.
+	 */
+	private static String formatException(Exception exceptionMessage) {
+		Metrics.recordException();
+		return String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage());
+	}
+	
+	private static LineStore createStore(File file, TextBuddyOptions options) throws IOException {
+		StoreType storeType = CompressedLineStore.isCompressedName(file) ? StoreType.COMPRESSED 
+							  : options.getStoreType();
+		// Only the resident store keeps a trigram index up to date.
+		if (options.isIndexed() && storeType != StoreType.RESIDENT) {
+			throw new IOException("the trigram index cannot be kept for " + file.getName());
+		}
+		switch (storeType) {
+			case COMPRESSED :
+				return new CompressedLineStore(file, options);
+			case DIRECT :
+				return new DirectLineStore(file, options);
+			default :
+				return new ResidentLineStore(file, options);
+		}
+	}
+	
+	private static Reader openBatchSource(TextBuddyOptions options) throws IOException {
+		if (options.getBatchSource().equals(BATCH_SOURCE_STANDARD_INPUT)) {
+			return new InputStreamReader(System.in);
+		} else {
+			return new FileReader(options.getBatchSource());
+		}
 	}
 	
 	public static String readCommandLine(Scanner scannerObject) {
@@ -386,7 +1185,7 @@ public class TextBuddy {
 			}
 			return fileContent;
 		} catch (IOException exceptionMessage) {
-			showToUser(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+			showToUser(formatException(exceptionMessage));
 			return null;
 		}
 	}
@@ -418,20 +1217,34 @@ public class TextBuddy {
 	 * @return				The string containing the compressed array list.
 	 */
 	public static String getCompressedString(ArrayList<String> fileContent) {
-		String compressedString = new String("");
+		StringBuilder compressedString = new StringBuilder();
 		
-		if (fileContent == null) {
-			return compressedString;
-		} else {
+		if (fileContent != null) {
 			for (int i = 0; i < fileContent.size(); i++) {
-				compressedString += String.format(FORMAT_LINE, fileContent.get(i));
+				compressedString.append(fileContent.get(i)).append(LINE_SEPARATOR);
 			}
-			return compressedString;
 		}
+		return compressedString.toString();
+	}
+	
+	/**
+	 * This method writes a line with its numbering followed by a line break, 
+	 * in the same format as addNumberings and getCompressedString produce.
+	 * @param output		The writer receiving the line.
+	 * @param lineNumber	The numbering of the line.
+	 * @param line			The line to write.
+	 * @throws IOException	If the line cannot be written.
+	 */
+	public static void writeNumberedLine(Writer output, int lineNumber, String line) 
+			throws IOException {
+		output.write(Integer.toString(lineNumber));
+		output.write(NUMBERING_SEPARATOR);
+		output.write(line);
+		output.write(LINE_SEPARATOR);
 	}
 	
-	public static boolean isLineNumberValid(int lineNumber, ArrayList<String> fileContent) {
-		if (lineNumber > fileContent.size()) {
+	public static boolean isLineNumberValid(int lineNumber, int lineCount) {
+		if (lineNumber < 1 || lineNumber > lineCount) {
 			return false;
 		} else {
 			return true;
@@ -0,0 +1,419 @@
+package com.alvian.main;
+
+/**
+ * This class holds the tunable settings of a TextBuddy instance. The 
+ * defaults reproduce the original behaviour where every change is written 
+ * to the storage file before the command returns.
+ * Settings are given on the command line after the storage file name, 
+ * e.g. "TextBuddy mytextfile.txt --durability=interval --flush-interval=500".
+ * @author Alvian Prasetya
+ */
+public class TextBuddyOptions {
+	
+	private static final String FLAG_DURABILITY = "--durability=";
+	private static final String FLAG_FLUSH_INTERVAL = "--flush-interval=";
+	private static final String FLAG_ENGINE = "--engine=";
+	private static final String FLAG_COMPACT_THRESHOLD = "--compact-threshold=";
+	private static final String FLAG_INDEX = "--index";
+	private static final String FLAG_STORE = "--store=";
+	private static final String FLAG_PAGE_SIZE = "--page-size=";
+	private static final String FLAG_SORT_MEMORY = "--sort-memory=";
+	private static final String FLAG_PARALLELISM = "--parallelism=";
+	private static final String FLAG_PARALLEL_CUTOFF = "--parallel-cutoff=";
+	private static final String FLAG_BATCH = "--batch=";
+	private static final String FLAG_READ_PATH = "--read-path=";
+	private static final String FLAG_COMPACT = "--compact";
+	private static final String FLAG_OFF_HEAP = "--off-heap";
+	private static final String FLAG_BLOCK_LINES = "--block-lines=";
+	private static final String FLAG_STATS_DUMP = "--stats-dump=";
+	private static final String FLAG_STATS_INTERVAL = "--stats-interval=";
+	private static final String FLAG_CACHE_MEMORY = "--cache-memory=";
+	private static final String FLAG_KEEP_SORTED = "--keep-sorted";
+	private static final String FLAG_LOAD = "--load=";
+	private static final String FLAG_WORKSPACE = "--workspace";
+	// Position of the first option in the Command-Line Argument array.
+	private static final int POSITION_OF_FIRST_OPTION = 1;
+	private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+	private static final long DEFAULT_COMPACT_THRESHOLD = 8 * 1024 * 1024;
+	private static final int DEFAULT_PAGE_SIZE = 20;
+	private static final long DEFAULT_SORT_MEMORY = 64 * 1024 * 1024;
+	private static final int DEFAULT_PARALLELISM = 1;
+	private static final int DEFAULT_PARALLEL_CUTOFF = 100000;
+	private static final int DEFAULT_BLOCK_LINES = 1024;
+	private static final long DEFAULT_STATS_INTERVAL_MILLIS = 60000;
+	private static final long DEFAULT_CACHE_MEMORY = 16 * 1024 * 1024;
+	
+	private Durability _durability = Durability.PER_COMMAND;
+	private long _flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+	private EngineType _engineType = EngineType.PLAIN;
+	private long _compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+	private boolean _isIndexed = false;
+	private StoreType _storeType = StoreType.RESIDENT;
+	private int _pageSize = DEFAULT_PAGE_SIZE;
+	private long _sortMemory = DEFAULT_SORT_MEMORY;
+	private int _parallelism = DEFAULT_PARALLELISM;
+	private int _parallelCutoff = DEFAULT_PARALLEL_CUTOFF;
+	private String _batchSource = null;
+	private ReadPath _readPath = ReadPath.STREAM;
+	private boolean _isCompact = false;
+	private boolean _isOffHeap = false;
+	private int _blockLines = DEFAULT_BLOCK_LINES;
+	private String _statsDumpFile = null;
+	private long _statsIntervalMillis = DEFAULT_STATS_INTERVAL_MILLIS;
+	private long _cacheMemory = DEFAULT_CACHE_MEMORY;
+	private boolean _isKeepSorted = false;
+	private LoadMode _loadMode = LoadMode.SEQUENTIAL;
+	private boolean _isWorkspace = false;
+	private ParallelLineProcessor _sharedProcessor = null;
+	
+	/**
+	 * This method builds the options from the Command-Line Arguments, 
+	 * skipping the storage file name.
+	 * @param args	The Command-Line Arguments given to TextBuddy.
+	 * @return		The options specified by the arguments.
+	 */
+	public static TextBuddyOptions fromArguments(String[] args) {
+		TextBuddyOptions options = new TextBuddyOptions();
+		
+		for (int i = POSITION_OF_FIRST_OPTION; i < args.length; i++) {
+			String argument = args[i];
+			if (argument.startsWith(FLAG_DURABILITY)) {
+				options.setDurability(Durability.fromName(getFlagValue(argument, FLAG_DURABILITY)));
+			} else if (argument.startsWith(FLAG_FLUSH_INTERVAL)) {
+				options.setFlushIntervalMillis(parsePositiveLong(argument, FLAG_FLUSH_INTERVAL));
+			} else if (argument.startsWith(FLAG_ENGINE)) {
+				options.setEngineType(EngineType.fromName(getFlagValue(argument, FLAG_ENGINE)));
+			} else if (argument.startsWith(FLAG_COMPACT_THRESHOLD)) {
+				options.setCompactThreshold(parsePositiveLong(argument, FLAG_COMPACT_THRESHOLD));
+			} else if (argument.equals(FLAG_INDEX)) {
+				options.setIndexed(true);
+			} else if (argument.startsWith(FLAG_STORE)) {
+				options.setStoreType(StoreType.fromName(getFlagValue(argument, FLAG_STORE)));
+			} else if (argument.startsWith(FLAG_PAGE_SIZE)) {
+				options.setPageSize(parsePositiveInt(argument, FLAG_PAGE_SIZE));
+			} else if (argument.startsWith(FLAG_SORT_MEMORY)) {
+				options.setSortMemory(parsePositiveLong(argument, FLAG_SORT_MEMORY));
+			} else if (argument.startsWith(FLAG_PARALLELISM)) {
+				options.setParallelism(parsePositiveInt(argument, FLAG_PARALLELISM));
+			} else if (argument.startsWith(FLAG_PARALLEL_CUTOFF)) {
+				options.setParallelCutoff(parsePositiveInt(argument, FLAG_PARALLEL_CUTOFF));
+			} else if (argument.startsWith(FLAG_BATCH)) {
+				options.setBatchSource(getFlagValue(argument, FLAG_BATCH));
+			} else if (argument.startsWith(FLAG_READ_PATH)) {
+				options.setReadPath(ReadPath.fromName(getFlagValue(argument, FLAG_READ_PATH)));
+			} else if (argument.equals(FLAG_COMPACT)) {
+				options.setCompact(true);
+			} else if (argument.equals(FLAG_OFF_HEAP)) {
+				options.setOffHeap(true);
+			} else if (argument.startsWith(FLAG_BLOCK_LINES)) {
+				options.setBlockLines(parsePositiveInt(argument, FLAG_BLOCK_LINES));
+			} else if (argument.startsWith(FLAG_STATS_DUMP)) {
+				options.setStatsDumpFile(getFlagValue(argument, FLAG_STATS_DUMP));
+			} else if (argument.startsWith(FLAG_STATS_INTERVAL)) {
+				options.setStatsIntervalMillis(parsePositiveLong(argument, FLAG_STATS_INTERVAL));
+			} else if (argument.startsWith(FLAG_CACHE_MEMORY)) {
+				options.setCacheMemory(parsePositiveLong(argument, FLAG_CACHE_MEMORY));
+			} else if (argument.equals(FLAG_KEEP_SORTED)) {
+				options.setKeepSorted(true);
+			} else if (argument.startsWith(FLAG_LOAD)) {
+				options.setLoadMode(LoadMode.fromName(getFlagValue(argument, FLAG_LOAD)));
+			} else if (argument.equals(FLAG_WORKSPACE)) {
+				options.setWorkspace(true);
+			} else {
+				throw new IllegalArgumentException("unknown option \"" + argument + "\"");
+			}
+		}
+		if (options.isIndexed() && options.getStoreType() != StoreType.RESIDENT) {
+			throw new IllegalArgumentException("option \"" + FLAG_INDEX + "\" needs the resident store");
+		}
+		return options;
+	}
+	
+	public Durability getDurability() {
+		return _durability;
+	}
+	
+	public void setDurability(Durability durability) {
+		_durability = durability;
+	}
+	
+	public long getFlushIntervalMillis() {
+		return _flushIntervalMillis;
+	}
+	
+	public void setFlushIntervalMillis(long flushIntervalMillis) {
+		_flushIntervalMillis = flushIntervalMillis;
+	}
+	
+	public EngineType getEngineType() {
+		return _engineType;
+	}
+	
+	public void setEngineType(EngineType engineType) {
+		_engineType = engineType;
+	}
+	
+	/**
+	 * This method returns the size in bytes that the operation log may 
+	 * reach before it is folded into the storage file.
+	 * @return	The compaction threshold in bytes.
+	 */
+	public long getCompactThreshold() {
+		return _compactThreshold;
+	}
+	
+	public void setCompactThreshold(long compactThreshold) {
+		_compactThreshold = compactThreshold;
+	}
+	
+	/**
+	 * This method tells whether search uses a trigram index kept in memory 
+	 * and saved next to the storage file. Only the resident store can keep 
+	 * the index.
+	 * @return	True if the trigram index is enabled.
+	 */
+	public boolean isIndexed() {
+		return _isIndexed;
+	}
+	
+	public void setIndexed(boolean isIndexed) {
+		_isIndexed = isIndexed;
+	}
+	
+	public StoreType getStoreType() {
+		return _storeType;
+	}
+	
+	public void setStoreType(StoreType storeType) {
+		_storeType = storeType;
+	}
+	
+	/**
+	 * This method returns the number of lines shown by "display page <n>".
+	 * @return	The number of lines per page.
+	 */
+	public int getPageSize() {
+		return _pageSize;
+	}
+	
+	public void setPageSize(int pageSize) {
+		_pageSize = pageSize;
+	}
+	
+	/**
+	 * This method returns the heap in bytes that sorting may use. A direct 
+	 * store whose file is larger than this sorts it externally.
+	 * @return	The memory budget for sorting in bytes.
+	 */
+	public long getSortMemory() {
+		return _sortMemory;
+	}
+	
+	public void setSortMemory(long sortMemory) {
+		_sortMemory = sortMemory;
+	}
+	
+	/**
+	 * This method returns the number of threads that sort and search of 
+	 * resident lines may use. A parallelism of 1 keeps them sequential. 
+	 * The parallel and lazy load modes decode lines on as many threads.
+	 * @return	The parallelism level.
+	 */
+	public int getParallelism() {
+		return _parallelism;
+	}
+	
+	public void setParallelism(int parallelism) {
+		_parallelism = parallelism;
+	}
+	
+	/**
+	 * This method returns the number of lines below which sort and search 
+	 * stay sequential even when a parallelism is set.
+	 * @return	The minimum number of lines for parallel execution.
+	 */
+	public int getParallelCutoff() {
+		return _parallelCutoff;
+	}
+	
+	public void setParallelCutoff(int parallelCutoff) {
+		_parallelCutoff = parallelCutoff;
+	}
+	
+	/**
+	 * This method returns the file that batch commands are read from, where 
+	 * "-" stands for the standard input.
+	 * @return	The name of the command file, or null to run interactively.
+	 */
+	public String getBatchSource() {
+		return _batchSource;
+	}
+	
+	public void setBatchSource(String batchSource) {
+		_batchSource = batchSource;
+	}
+	
+	/**
+	 * This method returns how a direct store reads the storage file for 
+	 * display and search.
+	 * @return	The read path of a direct store.
+	 */
+	public ReadPath getReadPath() {
+		return _readPath;
+	}
+	
+	public void setReadPath(ReadPath readPath) {
+		_readPath = readPath;
+	}
+	
+	/**
+	 * This method tells whether a resident store keeps its lines as UTF-8 
+	 * bytes in a CompactLineList instead of as Strings.
+	 * @return	True if resident lines are kept compact.
+	 */
+	public boolean isCompact() {
+		return _isCompact || _isOffHeap;
+	}
+	
+	public void setCompact(boolean isCompact) {
+		_isCompact = isCompact;
+	}
+	
+	/**
+	 * This method tells whether the bytes of compact lines are kept outside 
+	 * the heap. Keeping them off the heap implies keeping them compact.
+	 * @return	True if compact lines are kept off the heap.
+	 */
+	public boolean isOffHeap() {
+		return _isOffHeap;
+	}
+	
+	public void setOffHeap(boolean isOffHeap) {
+		_isOffHeap = isOffHeap;
+	}
+	
+	/**
+	 * This method returns the number of lines compressed together into one 
+	 * block of a compressed storage file.
+	 * @return	The number of lines per block.
+	 */
+	public int getBlockLines() {
+		return _blockLines;
+	}
+	
+	public void setBlockLines(int blockLines) {
+		_blockLines = blockLines;
+	}
+	
+	/**
+	 * This method returns the file that the report of "stats" is written to 
+	 * periodically and on exit.
+	 * @return	The name of the report file, or null to keep the report in memory.
+	 */
+	public String getStatsDumpFile() {
+		return _statsDumpFile;
+	}
+	
+	public void setStatsDumpFile(String statsDumpFile) {
+		_statsDumpFile = statsDumpFile;
+	}
+	
+	public long getStatsIntervalMillis() {
+		return _statsIntervalMillis;
+	}
+	
+	public void setStatsIntervalMillis(long statsIntervalMillis) {
+		_statsIntervalMillis = statsIntervalMillis;
+	}
+	
+	/**
+	 * This method returns the memory in bytes that the kept output of 
+	 * display and search may take.
+	 * @return	The memory budget of the result cache in bytes.
+	 */
+	public long getCacheMemory() {
+		return _cacheMemory;
+	}
+	
+	public void setCacheMemory(long cacheMemory) {
+		_cacheMemory = cacheMemory;
+	}
+	
+	/**
+	 * This method tells whether the lines are kept sorted, so that the 
+	 * storage file is sorted when opened and every added line is inserted 
+	 * at its sorted position instead of at the end.
+	 * @return	True if the lines are kept sorted.
+	 */
+	public boolean isKeepSorted() {
+		return _isKeepSorted;
+	}
+	
+	public void setKeepSorted(boolean isKeepSorted) {
+		_isKeepSorted = isKeepSorted;
+	}
+	
+	/**
+	 * This method returns how a resident store reads the storage file when 
+	 * it is opened, e.g. "--load=lazy".
+	 * @return	The load mode of a resident store.
+	 */
+	public LoadMode getLoadMode() {
+		return _loadMode;
+	}
+	
+	public void setLoadMode(LoadMode loadMode) {
+		_loadMode = loadMode;
+	}
+	
+	/**
+	 * This method tells whether the name given before the options is a 
+	 * directory whose storage files are all opened as one Workspace.
+	 * @return	True if TextBuddy runs in workspace mode.
+	 */
+	public boolean isWorkspace() {
+		return _isWorkspace;
+	}
+	
+	public void setWorkspace(boolean isWorkspace) {
+		_isWorkspace = isWorkspace;
+	}
+	
+	/**
+	 * This method returns the pool that resident stores opened with these 
+	 * options sort and search on, which a Workspace sets so that all its 
+	 * files share one. It is never given on the command line.
+	 * @return	The shared pool, or null to give every store a pool of its own.
+	 */
+	public ParallelLineProcessor getSharedProcessor() {
+		return _sharedProcessor;
+	}
+	
+	public void setSharedProcessor(ParallelLineProcessor sharedProcessor) {
+		_sharedProcessor = sharedProcessor;
+	}
+	
+	private static String getFlagValue(String argument, String flag) {
+		return argument.substring(flag.length());
+	}
+	
+	private static long parsePositiveLong(String argument, String flag) {
+		try {
+			long value = Long.parseLong(getFlagValue(argument, flag));
+			if (value > 0) {
+				return value;
+			}
+		} catch (NumberFormatException exceptionMessage) {
+			// Fall through to the error below.
+		}
+		throw new IllegalArgumentException("option \"" + argument + "\" needs a positive number");
+	}
+	
+	private static int parsePositiveInt(String argument, String flag) {
+		long value = parsePositiveLong(argument, flag);
+		if (value > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("option \"" + argument + "\" is too large");
+		}
+		return (int) value;
+	}
+}
@@ -0,0 +1,230 @@
+package com.alvian.main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This program serves TextBuddy commands to many clients over a local 
+ * socket, so that tools share one long-lived process instead of starting 
+ * a TextBuddy for every command, and never rewrite the same storage file 
+ * from two processes at once.
+ * It is started as "TextBuddyServer <port>", followed by any of the 
+ * options in TextBuddyOptions, which apply to every storage file. Storage 
+ * files are given relative to the directory the server is started in and 
+ * may not lie outside of it, nor be one of the files a store keeps next 
+ * to a storage file, by the same rules as a Workspace; each is opened once 
+ * and shared by all clients as a SharedStorage.
+ * The protocol is line based and uses UTF-8. A client first sends 
+ * "use <file>", then any TextBuddy command; "exit" ends the connection and 
+ * leaves the storage file open for other clients. The server answers every 
+ * line, and the greeting on connect, with the feedback TextBuddy would 
+ * show followed by an empty line.
+ * Every client is served by its own thread from a pool, as the reads from 
+ * the socket block.
+ * @author Alvian Prasetya
+ */
+public class TextBuddyServer implements Closeable {
+	
+	private static final String MESSAGE_SERVER_STARTED = "TextBuddy server is listening on port %1$s%n";
+	private static final String MESSAGE_PORT_INVALID = "fatal error: a port number must be given%n";
+	private static final String MESSAGE_GREETING = "Welcome to TextBuddy. Enter \"use <file>\" to choose "
+												 + "a storage file%n";
+	private static final String MESSAGE_EXCEPTION = "exception encountered: %1$s%n";
+	
+	private static final String CLIENT_THREAD_NAME = "TextBuddy-client";
+	private static final Charset PROTOCOL_CHARSET = StandardCharsets.UTF_8;
+	// This ends every response of the server.
+	private static final String RESPONSE_TERMINATOR = System.lineSeparator();
+	// Position of the port number in the Command-Line Argument array.
+	private static final int POSITION_OF_PORT = 0;
+	
+	private final ServerSocket _serverSocket;
+	private final File _rootDirectory;
+	private final TextBuddyOptions _options;
+	private final ExecutorService _clientExecutor;
+	private final ConcurrentHashMap<String, SharedStorage> _storages 
+			= new ConcurrentHashMap<String, SharedStorage>();
+	private volatile boolean _isClosed = false;
+	
+	/**
+	 * This is the default constructor for TextBuddyServer object. It starts 
+	 * listening on the loopback address straight away.
+	 * @param port				The port to listen on, or 0 for any free port.
+	 * @param rootDirectory		The directory holding the storage files.
+	 * @param options			The options for storing the lines of every file.
+	 * @throws IOException		If the port cannot be listened on.
+	 */
+	public TextBuddyServer(int port, File rootDirectory, TextBuddyOptions options) 
+			throws IOException {
+		_serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		_rootDirectory = rootDirectory.getCanonicalFile();
+		_options = options;
+		_clientExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory(CLIENT_THREAD_NAME));
+	}
+	
+	public static void main(String[] args) {
+		int port;
+		TextBuddyOptions options;
+		try {
+			port = Integer.parseInt(args[POSITION_OF_PORT]);
+			options = TextBuddyOptions.fromArguments(args);
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException exceptionMessage) {
+			TextBuddy.showToUser(String.format(MESSAGE_PORT_INVALID));
+			return;
+		} catch (IllegalArgumentException exceptionMessage) {
+			TextBuddy.showToUser(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+			return;
+		}
+		
+		try {
+			final TextBuddyServer server = new TextBuddyServer(port, new File("."), options);
+			// Write the pending changes of every storage file when the server is stopped.
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					server.close();
+				}
+			}));
+			TextBuddy.showToUser(String.format(MESSAGE_SERVER_STARTED, server.getPort()));
+			server.acceptClientsUntilClosed();
+		} catch (IOException exceptionMessage) {
+			TextBuddy.showToUser(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+		}
+	}
+	
+	public int getPort() {
+		return _serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * This method accepts clients and hands each of them to a thread of 
+	 * the pool until the server is closed.
+	 * @throws IOException	If accepting fails while the server is open.
+	 */
+	public void acceptClientsUntilClosed() throws IOException {
+		while (!_isClosed) {
+			final Socket socket;
+			try {
+				socket = _serverSocket.accept();
+			} catch (IOException exceptionMessage) {
+				if (_isClosed) {
+					return;
+				}
+				throw exceptionMessage;
+			}
+			_clientExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					serveClient(socket);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * This method stops accepting clients, disconnects the connected ones, 
+	 * and closes every storage file after writing its pending changes.
+	 */
+	@Override
+	public void close() {
+		if (_isClosed) {
+			return;
+		}
+		_isClosed = true;
+		try {
+			_serverSocket.close();
+		} catch (IOException exceptionMessage) {
+			TextBuddy.showToUser(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+		}
+		_clientExecutor.shutdownNow();
+		ArrayList<SharedStorage> storages = new ArrayList<SharedStorage>(_storages.values());
+		for (int i = 0; i < storages.size(); i++) {
+			storages.get(i).close();
+		}
+	}
+	
+	/**
+	 * This method answers the commands of one client until it sends "exit" 
+	 * or disconnects.
+	 * @param socket	The connection to the client.
+	 */
+	private void serveClient(Socket socket) {
+		// Initialize the required reader and writer objects to talk to the client.
+		try (Socket clientSocket = socket;
+			 BufferedReader input = new BufferedReader(new InputStreamReader(
+					 clientSocket.getInputStream(), PROTOCOL_CHARSET));
+			 Writer output = new BufferedWriter(new OutputStreamWriter(
+					 clientSocket.getOutputStream(), PROTOCOL_CHARSET))) {
+			SharedStorage storage = null;
+			respond(output, String.format(MESSAGE_GREETING));
+			
+			for (String commandLine = input.readLine(); commandLine != null; 
+				 commandLine = input.readLine()) {
+				int verbEnd = CommandParser.getVerbEnd(commandLine);
+				try {
+					if (CommandParser.isVerb(commandLine, verbEnd, "exit")) {
+						return;
+					} else if (CommandParser.isVerb(commandLine, verbEnd, "use")) {
+						String fileName = CommandParser.getParameter(commandLine, 
+								CommandParser.getParameterStart(commandLine, verbEnd));
+						storage = useStorage(fileName, output);
+					} else if (storage == null) {
+						output.write(String.format(Workspace.MESSAGE_NO_FILE_IN_USE));
+					} else {
+						storage.execute(commandLine, output);
+					}
+				} catch (IOException | RuntimeException exceptionMessage) {
+					output.write(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+				}
+				respond(output, "");
+			}
+		} catch (IOException exceptionMessage) {
+			// The client went away, there is no one left to tell.
+		}
+	}
+	
+	/**
+	 * This method opens the storage file for the client if a Workspace of 
+	 * the root directory would use it, reporting the outcome to the client.
+	 * @return	The storage file to use, or null if it cannot be used.
+	 */
+	private SharedStorage useStorage(String fileName, Writer output) throws IOException {
+		File file = Workspace.findStorageFile(_rootDirectory, fileName, output);
+		if (file == null) {
+			return null;
+		}
+		SharedStorage storage = _storages.get(file.getPath());
+		if (storage == null) {
+			SharedStorage newStorage = new SharedStorage(file.getPath(), _options);
+			storage = _storages.putIfAbsent(file.getPath(), newStorage);
+			if (storage == null) {
+				storage = newStorage;
+			}
+		}
+		storage.open();
+		output.write(String.format(Workspace.MESSAGE_FILE_READY, fileName));
+		return storage;
+	}
+	
+	private static void respond(Writer output, String response) throws IOException {
+		output.write(response);
+		output.write(RESPONSE_TERMINATOR);
+		output.flush();
+	}
+}
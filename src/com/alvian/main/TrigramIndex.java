@@ -0,0 +1,289 @@
+package com.alvian.main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is an inverted index from every trigram (three consecutive 
+ * characters) of the lower-cased lines to the lines containing it. A line 
+ * can only contain a search token if it contains every trigram of the 
+ * token, so intersecting the posting lists of those trigrams narrows the 
+ * lines that need the final case-insensitive check. Tokens shorter than 
+ * a trigram cannot be narrowed.
+ * Lines are identified by ids that never change while the index is in 
+ * memory, so sorting only reorders the position-to-id table and deleting 
+ * only touches the posting lists of the deleted line. The index is kept 
+ * up to date as a LineStoreListener of a ResidentLineStore, the only 
+ * store that can be indexed, and can be saved to "<file>.idx" 
+ * together with a fingerprint of the lines it was built from, so that it 
+ * is loaded instead of rebuilt as long as the lines have not changed.
+ * All public methods are synchronized, since searches running at the same 
+ * time may rebuild the position table.
+ * @author Alvian Prasetya
+ */
+public class TrigramIndex implements LineStoreListener {
+	
+	private static final String INDEX_SUFFIX = ".idx";
+	// This identifies the index file format, "TBIX" followed by its version.
+	private static final int FILE_MAGIC = 0x54424958;
+	private static final int FILE_VERSION = 1;
+	private static final int GRAM_LENGTH = 3;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int NO_POSITION = -1;
+	
+	private final File _indexFile;
+	private final HashMap<Long, IntList> _postings = new HashMap<Long, IntList>();
+	private IntList _positionToId = new IntList();
+	private int _nextId = 0;
+	// This is rebuilt from _positionToId whenever lines have moved.
+	private int[] _idToPosition = new int[0];
+	private boolean _isPositionStale = false;
+	
+	private TrigramIndex(File indexFile) {
+		_indexFile = indexFile;
+	}
+	
+	/**
+	 * This method loads the saved index of the storage file, or builds a 
+	 * new one if there is no saved index matching the specified lines.
+	 * @param storageFile	The storage file the lines belong to.
+	 * @param lines			The lines to index.
+	 * @return				The index of the lines.
+	 */
+	public static TrigramIndex loadOrBuild(File storageFile, List<String> lines) {
+		TrigramIndex index = new TrigramIndex(new File(storageFile.getPath() + INDEX_SUFFIX));
+		
+		if (!index.load(lines)) {
+			index.linesCleared();
+			for (int i = 0; i < lines.size(); i++) {
+				index.lineAdded(i, lines.get(i));
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * This method returns the positions of the lines that may contain the 
+	 * specified token. Every line containing the token is among them, but 
+	 * some of them may not contain it.
+	 * @param tokenLowerCase	The lower-cased token to search for.
+	 * @return					The ascending positions of the candidate lines, 
+	 * 							or null if the token is too short to narrow.
+	 */
+	public synchronized IntList findCandidates(String tokenLowerCase) {
+		if (tokenLowerCase.length() < GRAM_LENGTH) {
+			return null;
+		}
+		ArrayList<IntList> postingLists = new ArrayList<IntList>();
+		for (int i = 0; i + GRAM_LENGTH <= tokenLowerCase.length(); i++) {
+			IntList postingList = _postings.get(getTrigram(tokenLowerCase, i));
+			if (postingList == null) {
+				return new IntList();
+			}
+			postingLists.add(postingList);
+		}
+		// Intersect the shortest lists first to keep the intermediate results small.
+		Collections.sort(postingLists, new Comparator<IntList>() {
+			@Override
+			public int compare(IntList first, IntList second) {
+				return Integer.compare(first.size(), second.size());
+			}
+		});
+		IntList candidateIds = postingLists.get(0);
+		for (int i = 1; i < postingLists.size() && !candidateIds.isEmpty(); i++) {
+			candidateIds = candidateIds.intersect(postingLists.get(i));
+		}
+		
+		updatePositions();
+		IntList candidatePositions = new IntList(candidateIds.size());
+		for (int i = 0; i < candidateIds.size(); i++) {
+			candidatePositions.add(_idToPosition[candidateIds.get(i)]);
+		}
+		candidatePositions.sort();
+		return candidatePositions;
+	}
+	
+	@Override
+	public synchronized void lineAdded(int index, String line) {
+		int id = _nextId++;
+		_positionToId.insert(index, id);
+		if (index == _positionToId.size() - 1 && !_isPositionStale) {
+			ensurePositionCapacity(_nextId);
+			_idToPosition[id] = index;
+		} else {
+			_isPositionStale = true;
+		}
+		
+		String lineLowerCase = line.toLowerCase();
+		for (int i = 0; i + GRAM_LENGTH <= lineLowerCase.length(); i++) {
+			Long trigram = getTrigram(lineLowerCase, i);
+			IntList postingList = _postings.get(trigram);
+			if (postingList == null) {
+				postingList = new IntList();
+				_postings.put(trigram, postingList);
+			}
+			// The new id is the largest, so the posting list stays sorted.
+			if (postingList.isEmpty() || postingList.get(postingList.size() - 1) != id) {
+				postingList.add(id);
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void lineRemoved(int index, String line) {
+		int id = _positionToId.removeAt(index);
+		_isPositionStale = true;
+		
+		String lineLowerCase = line.toLowerCase();
+		for (int i = 0; i + GRAM_LENGTH <= lineLowerCase.length(); i++) {
+			Long trigram = getTrigram(lineLowerCase, i);
+			IntList postingList = _postings.get(trigram);
+			if (postingList != null && postingList.removeSorted(id) && postingList.isEmpty()) {
+				_postings.remove(trigram);
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void linesSorted(int[] order) {
+		IntList sortedPositionToId = new IntList(order.length);
+		for (int i = 0; i < order.length; i++) {
+			sortedPositionToId.add(_positionToId.get(order[i]));
+		}
+		_positionToId = sortedPositionToId;
+		_isPositionStale = true;
+	}
+	
+	@Override
+	public synchronized void linesCleared() {
+		_postings.clear();
+		_positionToId = new IntList();
+		_nextId = 0;
+		_idToPosition = new int[0];
+		_isPositionStale = false;
+	}
+	
+	/**
+	 * This method saves the index next to the storage file. Lines are 
+	 * renumbered by position so that the saved index needs no id table.
+	 * @param lines		The lines the index currently describes.
+	 * @throws IOException	If the index cannot be written.
+	 */
+	public synchronized void save(List<String> lines) throws IOException {
+		updatePositions();
+		Path indexPath = _indexFile.toPath().toAbsolutePath();
+		Path temporaryFile = Files.createTempFile(indexPath.getParent(), 
+												  indexPath.getFileName() + ".", ".tmp");
+		try {
+			// Initialize the required writer objects to write into index file.
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temporaryFile.toFile()), BUFFER_SIZE))) {
+				Fingerprint fingerprint = Fingerprint.of(lines, StandardCharsets.UTF_8);
+				output.writeInt(FILE_MAGIC);
+				output.writeInt(FILE_VERSION);
+				output.writeUTF(fingerprint.toString());
+				output.writeInt(lines.size());
+				output.writeInt(_postings.size());
+				for (Map.Entry<Long, IntList> posting : _postings.entrySet()) {
+					IntList positions = new IntList(posting.getValue().size());
+					for (int i = 0; i < posting.getValue().size(); i++) {
+						positions.add(_idToPosition[posting.getValue().get(i)]);
+					}
+					positions.sort();
+					output.writeLong(posting.getKey());
+					output.writeInt(positions.size());
+					for (int i = 0; i < positions.size(); i++) {
+						output.writeInt(positions.get(i));
+					}
+				}
+			}
+			AtomicFileWriter.replace(temporaryFile, indexPath);
+		} finally {
+			Files.deleteIfExists(temporaryFile);
+		}
+	}
+	
+	/**
+	 * This method reads the saved index if it was built from the specified 
+	 * lines. Ids of a loaded index are the positions of the lines.
+	 * @return	True if the saved index was loaded.
+	 */
+	private boolean load(List<String> lines) {
+		if (!_indexFile.exists()) {
+			return false;
+		}
+		// Initialize the required reader objects to read the index file.
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(_indexFile), BUFFER_SIZE))) {
+			if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION) {
+				return false;
+			}
+			Fingerprint fingerprint = Fingerprint.parse(input.readUTF());
+			int lineCount = input.readInt();
+			if (lineCount != lines.size() 
+				|| !Fingerprint.of(lines, StandardCharsets.UTF_8).equals(fingerprint)) {
+				return false;
+			}
+			int postingCount = input.readInt();
+			for (int i = 0; i < postingCount; i++) {
+				long trigram = input.readLong();
+				int size = input.readInt();
+				IntList postingList = new IntList(size);
+				for (int j = 0; j < size; j++) {
+					postingList.add(input.readInt());
+				}
+				_postings.put(trigram, postingList);
+			}
+			for (int i = 0; i < lineCount; i++) {
+				_positionToId.add(i);
+			}
+			_nextId = lineCount;
+			_isPositionStale = true;
+			return true;
+		} catch (IOException exceptionMessage) {
+			return false;
+		}
+	}
+	
+	private void updatePositions() {
+		if (!_isPositionStale) {
+			return;
+		}
+		_idToPosition = new int[_nextId];
+		Arrays.fill(_idToPosition, NO_POSITION);
+		for (int i = 0; i < _positionToId.size(); i++) {
+			_idToPosition[_positionToId.get(i)] = i;
+		}
+		_isPositionStale = false;
+	}
+	
+	private void ensurePositionCapacity(int capacity) {
+		if (capacity > _idToPosition.length) {
+			_idToPosition = Arrays.copyOf(_idToPosition, 
+										  Math.max(capacity, _idToPosition.length * 2));
+		}
+	}
+	
+	private static Long getTrigram(String text, int start) {
+		return ((long) text.charAt(start) << 32) 
+			   | ((long) text.charAt(start + 1) << 16) 
+			   | text.charAt(start + 2);
+	}
+}
@@ -0,0 +1,387 @@
+package com.alvian.main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class keeps every storage file of a directory open in one process, 
+ * so that hundreds of storage files are served without starting a 
+ * TextBuddy for each of them. It is started as 
+ * "TextBuddy <directory> --workspace", followed by any other option in 
+ * TextBuddyOptions, which apply to every storage file.
+ * Besides the TextBuddy commands, which run on the storage file chosen 
+ * with "use <file>", a workspace understands "search-all <token>" and 
+ * "sort-all". Both run on every storage file at the same time and show the 
+ * feedback of each file, in the order of the file names, exactly as 
+ * search and sort show it. "exit" closes every storage file.
+ * Storage files are opened on first use and stay open until exit. Their 
+ * search and display results share one ResultCache budget, and with a 
+ * parallelism above 1 their sorts and searches share one 
+ * ParallelLineProcessor. Files the stores keep next to a storage file, 
+ * such as logs and indexes, are not storage files, and "use <file>" 
+ * chooses them by the same rules as TextBuddyServer, see findStorageFile.
+ * @author Alvian Prasetya
+ */
+public class Workspace {
+	
+	private static final String MESSAGE_WELCOME = "Welcome to TextBuddy. Workspace %1$s is ready for use " 
+												+ "with %2$s storage file(s)%n";
+	// These messages answer "use <file>" here and in TextBuddyServer alike.
+	static final String MESSAGE_FILE_READY = "%1$s is ready for use%n";
+	static final String MESSAGE_FILE_OUTSIDE = "storage file %1$s is outside of %2$s%n";
+	static final String MESSAGE_FILE_INVALID = "%1$s is not a storage file%n";
+	static final String MESSAGE_NO_FILE_IN_USE = "no storage file is in use, " 
+											   + "enter \"use <file>\" first%n";
+	private static final String MESSAGE_WORKSPACE_EMPTY = "workspace %1$s has no storage files%n";
+	private static final String MESSAGE_PARAMETER_MISSING = "command \"%1$s\" needs a parameter%n";
+	private static final String MESSAGE_EXCEPTION = "exception encountered: %1$s%n";
+	
+	private static final String WORKER_THREAD_NAME = "TextBuddy-workspace";
+	// This ends the names of the files being written in place of a storage file.
+	private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+	// These end the names of the files the stores keep next to a storage file.
+	private static final String[] SIDE_FILE_SUFFIXES = {".log", ".log.old", ".idx", ".offsets"};
+	
+	private final File _directory;
+	private final TextBuddyOptions _options;
+	private final ResultCache _cache;
+	private final ParallelLineProcessor _processor;
+	// Every storage file is searched and sorted on a thread of its own from this pool.
+	private final ExecutorService _workers;
+	// This maps the name of every open storage file to the TextBuddy working on it.
+	private final ConcurrentHashMap<String, TextBuddy> _textBuddies 
+			= new ConcurrentHashMap<String, TextBuddy>();
+	private TextBuddy _textBuddyInUse;
+	
+	/**
+	 * This is the default constructor for Workspace object. It shows the 
+	 * welcome message to the user, but opens no storage file yet. With a 
+	 * parallelism above 1 the options are given the shared processor.
+	 * @param directory		The directory holding the storage files.
+	 * @param options		The options for storing the lines of every file.
+	 * @throws IOException	If the directory cannot be listed.
+	 */
+	public Workspace(File directory, TextBuddyOptions options) throws IOException {
+		if (!directory.isDirectory()) {
+			throw new IOException(directory + " is not a directory");
+		}
+		_directory = directory;
+		_options = options;
+		_cache = new ResultCache(options.getCacheMemory());
+		if (options.getParallelism() > 1) {
+			_processor = new ParallelLineProcessor(options.getParallelism(), 
+												   options.getParallelCutoff());
+			options.setSharedProcessor(_processor);
+		} else {
+			_processor = null;
+		}
+		_workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), 
+				new DaemonThreadFactory(WORKER_THREAD_NAME));
+		TextBuddy.showToUser(String.format(MESSAGE_WELCOME, directory.getName(), 
+										   getStorageFileNames().size()));
+	}
+	
+	/**
+	 * This method fetches, runs user commands, and print the feedbacks until 
+	 * the command specified is "exit".
+	 * @param scannerObject		Scanner for receiving typed inputs from user.
+	 */
+	public void runCommandsUntilExit(Scanner scannerObject) {
+		Writer output = new BufferedWriter(new OutputStreamWriter(System.out));
+		boolean isRunning = true;
+		
+		do {
+			String commandLine = TextBuddy.readCommandLine(scannerObject);
+			try {
+				isRunning = executeCommand(commandLine, output);
+			} catch (IOException exceptionMessage) {
+				TextBuddy.showToUser(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+			}
+			try {
+				output.flush();
+			} catch (IOException exceptionMessage) {
+				TextBuddy.showToUser(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+			}
+		} while (isRunning);
+	}
+	
+	/**
+	 * This method runs commands from the reader one at a time until "exit" 
+	 * or the end of the input, without prompting. Every storage file is 
+	 * closed at the end of the input.
+	 * @param commandReader		The reader the commands are read from.
+	 * @param output			The writer receiving the feedback.
+	 * @throws IOException		If the commands cannot be read or the feedback 
+	 * 							cannot be written.
+	 */
+	public void runBatch(BufferedReader commandReader, Writer output) throws IOException {
+		boolean isRunning = true;
+		
+		for (String commandLine = commandReader.readLine(); isRunning && commandLine != null; 
+			 commandLine = commandReader.readLine()) {
+			isRunning = executeCommand(commandLine, output);
+		}
+		if (isRunning) {
+			exit();
+		}
+		output.flush();
+	}
+	
+	/**
+	 * This method runs the specified command and writes its feedback to the 
+	 * output. Commands of the workspace are run here, every other command 
+	 * is run by the storage file in use.
+	 * @param commandLine		The user-specified command, including the parameters.
+	 * @param output			The writer receiving the feedback.
+	 * @return					False if the command was "exit", true otherwise.
+	 * @throws IOException		If the feedback cannot be written.
+	 */
+	public boolean executeCommand(String commandLine, Writer output) throws IOException {
+		long startNanos = System.nanoTime();
+		int verbEnd = CommandParser.getVerbEnd(commandLine);
+		int parameterStart = CommandParser.getParameterStart(commandLine, verbEnd);
+		String verb = commandLine.substring(0, verbEnd).toLowerCase();
+		
+		if (CommandParser.isVerb(commandLine, verbEnd, "exit")) {
+			exit();
+			return false;
+		} else if (CommandParser.isVerb(commandLine, verbEnd, "use")) {
+			if (isParameterPresent(verb, parameterStart, output)) {
+				use(commandLine.substring(parameterStart), output);
+			}
+		} else if (CommandParser.isVerb(commandLine, verbEnd, "search-all")) {
+			if (isParameterPresent(verb, parameterStart, output)) {
+				searchAll(commandLine.substring(parameterStart), output);
+			}
+		} else if (CommandParser.isVerb(commandLine, verbEnd, "sort-all")) {
+			sortAll(output);
+		} else if (_textBuddyInUse == null) {
+			output.write(String.format(MESSAGE_NO_FILE_IN_USE));
+			return true;
+		} else {
+			return _textBuddyInUse.executeCommand(commandLine, output);
+		}
+		Metrics.getCommandStats(verb).record(System.nanoTime() - startNanos, 1);
+		return true;
+	}
+	
+	/**
+	 * This method chooses the storage file the TextBuddy commands run on, 
+	 * creating it if it does not exist.
+	 * @param fileName		The name of the storage file in the directory.
+	 * @param output		The writer receiving the feedback.
+	 * @throws IOException	If the feedback cannot be written.
+	 */
+	public void use(String fileName, Writer output) throws IOException {
+		File directory = _directory.getCanonicalFile();
+		File file = findStorageFile(directory, fileName, output);
+		if (file == null) {
+			return;
+		}
+		try {
+			// Files are kept open under their path in the directory, however 
+			// the name was given.
+			_textBuddyInUse = open(directory.toPath().relativize(file.toPath()).toString());
+			output.write(String.format(MESSAGE_FILE_READY, fileName));
+		} catch (IOException exceptionMessage) {
+			output.write(String.format(MESSAGE_EXCEPTION, exceptionMessage.getMessage()));
+		}
+	}
+	
+	/**
+	 * This method searches every storage file for the lines containing the 
+	 * token, all files at the same time, and writes the result of each file 
+	 * as search writes it, in the order of the file names. A file that 
+	 * cannot be searched shows the exception in place of its result.
+	 * @param searchToken	The specified substring to search for.
+	 * @param output		The writer receiving the search results.
+	 * @throws IOException	If the directory cannot be listed or the search 
+	 * 						results cannot be written.
+	 */
+	public void searchAll(final String searchToken, Writer output) throws IOException {
+		List<String> fileNames = getStorageFileNames();
+		ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+		
+		for (int i = 0; i < fileNames.size(); i++) {
+			final String fileName = fileNames.get(i);
+			results.add(_workers.submit(new Callable<String>() {
+				@Override
+				public String call() throws IOException {
+					StringWriter result = new StringWriter();
+					open(fileName).search(searchToken, result);
+					return result.toString();
+				}
+			}));
+		}
+		writeResults(results, output);
+	}
+	
+	/**
+	 * This method sorts every storage file, all files at the same time, and 
+	 * writes the feedback of each file as sort gives it, in the order of 
+	 * the file names.
+	 * @param output		The writer receiving the feedback.
+	 * @throws IOException	If the directory cannot be listed or the feedback 
+	 * 						cannot be written.
+	 */
+	public void sortAll(Writer output) throws IOException {
+		List<String> fileNames = getStorageFileNames();
+		ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+		
+		for (int i = 0; i < fileNames.size(); i++) {
+			final String fileName = fileNames.get(i);
+			results.add(_workers.submit(new Callable<String>() {
+				@Override
+				public String call() throws IOException {
+					return open(fileName).sort();
+				}
+			}));
+		}
+		writeResults(results, output);
+	}
+	
+	/**
+	 * This method writes any pending changes of every open storage file and 
+	 * closes them, then stops the threads of the workspace.
+	 */
+	public void exit() {
+		ArrayList<TextBuddy> textBuddies = new ArrayList<TextBuddy>(_textBuddies.values());
+		for (int i = 0; i < textBuddies.size(); i++) {
+			textBuddies.get(i).exit();
+		}
+		_textBuddies.clear();
+		_textBuddyInUse = null;
+		_workers.shutdownNow();
+		if (_processor != null) {
+			_processor.close();
+		}
+	}
+	
+	/**
+	 * This method returns the names of the storage files in the directory, 
+	 * in alphabetical order.
+	 * @return				The names of the storage files.
+	 * @throws IOException	If the directory cannot be listed.
+	 */
+	public List<String> getStorageFileNames() throws IOException {
+		File[] files = _directory.listFiles();
+		if (files == null) {
+			throw new IOException("failed to list " + _directory);
+		}
+		TreeSet<String> fileNames = new TreeSet<String>();
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].isFile() && !files[i].isHidden() && !isSideFile(files[i])) {
+				fileNames.add(files[i].getName());
+			}
+		}
+		return new ArrayList<String>(fileNames);
+	}
+	
+	/**
+	 * This method returns the TextBuddy working on the storage file, opening 
+	 * it first if needed. The same file is never opened by two threads at 
+	 * once, as every search-all and sort-all opens each file on one thread.
+	 */
+	private TextBuddy open(String fileName) throws IOException {
+		TextBuddy textBuddy = _textBuddies.get(fileName);
+		if (textBuddy == null) {
+			String path = new File(_directory, fileName).getPath();
+			textBuddy = TextBuddy.open(path, _options, _cache.share(path));
+			_textBuddies.put(fileName, textBuddy);
+		}
+		return textBuddy;
+	}
+	
+	/**
+	 * This method writes the feedback of every file as soon as it and the 
+	 * feedback of the files before it are ready.
+	 */
+	private void writeResults(ArrayList<Future<String>> results, Writer output) throws IOException {
+		if (results.isEmpty()) {
+			output.write(String.format(MESSAGE_WORKSPACE_EMPTY, _directory.getName()));
+		}
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				output.write(results.get(i).get());
+			} catch (ExecutionException exceptionMessage) {
+				output.write(String.format(MESSAGE_EXCEPTION, 
+							 exceptionMessage.getCause().getMessage()));
+			} catch (InterruptedException exceptionMessage) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while waiting for the storage files");
+			}
+		}
+	}
+	
+	/**
+	 * This method finds the storage file that "use <file>" names, relative 
+	 * to the directory of the storage files. The file must lie inside the 
+	 * directory, and must not be a directory, a hidden file or a side file; 
+	 * otherwise the reason is written to the output instead.
+	 * @param directory		The canonical directory of the storage files.
+	 * @param fileName		The name given to "use", or null if none was given.
+	 * @param output		The writer receiving the reason.
+	 * @return				The canonical storage file, or null if it cannot be used.
+	 * @throws IOException	If the file cannot be resolved or the reason cannot 
+	 * 						be written.
+	 */
+	static File findStorageFile(File directory, String fileName, Writer output) 
+			throws IOException {
+		File file = new File(directory, fileName == null ? "" : fileName).getCanonicalFile();
+		if (!file.getPath().startsWith(directory.getPath() + File.separator)) {
+			output.write(String.format(MESSAGE_FILE_OUTSIDE, fileName, directory));
+			return null;
+		} else if (file.isDirectory() || file.isHidden() || isSideFile(file)) {
+			output.write(String.format(MESSAGE_FILE_INVALID, fileName));
+			return null;
+		}
+		return file;
+	}
+	
+	/**
+	 * This method tells whether the file is kept by a store next to a 
+	 * storage file of the same directory, or is being written in place of 
+	 * one, rather than being a storage file itself.
+	 * @param file	The file to check.
+	 * @return		True if the file must not be used as a storage file.
+	 */
+	private static boolean isSideFile(File file) {
+		String fileName = file.getName();
+		if (fileName.endsWith(TEMPORARY_FILE_SUFFIX)) {
+			return true;
+		}
+		for (int i = 0; i < SIDE_FILE_SUFFIXES.length; i++) {
+			String suffix = SIDE_FILE_SUFFIXES[i];
+			if (fileName.endsWith(suffix) && new File(file.getParentFile(), 
+					fileName.substring(0, fileName.length() - suffix.length())).isFile()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean isParameterPresent(String verb, int parameterStart, Writer output) 
+			throws IOException {
+		if (parameterStart == CommandParser.NO_PARAMETER) {
+			output.write(String.format(MESSAGE_PARAMETER_MISSING, verb));
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,196 @@
+package com.alvian.main;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class hands the changes made to a ResidentLineStore to its 
+ * StorageEngine. Changes accumulate as mutations until they are flushed, 
+ * which happens after every command, periodically on a background thread, 
+ * or only on exit depending on the durability. For an engine that does not 
+ * log every mutation, lines added at the end are passed on as they are, 
+ * while any other change (delete, sort, clear) makes the engine rewrite 
+ * everything from a snapshot of the lines.
+ * The pending mutations are guarded by the monitor of the store, which is 
+ * held by every change to the lines, so they are always consistent with 
+ * the lines that the store holds.
+ * @author Alvian Prasetya
+ */
+public class WriteBehindFlusher implements Closeable {
+	
+	private static final String FLUSHER_THREAD_NAME = "TextBuddy-flusher";
+	
+	private final StorageEngine _engine;
+	private final ResidentLineStore _store;
+	private final Durability _durability;
+	// Only one flush may write to the storage file at a time.
+	private final Object _flushLock = new Object();
+	private ScheduledExecutorService _scheduler;
+	private Thread _shutdownHook;
+	
+	// The fields below are guarded by the monitor of _store.
+	private ArrayList<Mutation> _pendingMutations = new ArrayList<Mutation>();
+	private boolean _isRewriteRequired = false;
+	private IOException _backgroundException;
+	
+	/**
+	 * This is the default constructor for WriteBehindFlusher object. It 
+	 * starts the background flushing when the durability asks for it.
+	 * @param engine	The storage engine to write to.
+	 * @param store		The store whose changes are written.
+	 * @param options	The options deciding when changes are written.
+	 */
+	public WriteBehindFlusher(StorageEngine engine, ResidentLineStore store, 
+							  TextBuddyOptions options) {
+		_engine = engine;
+		_store = store;
+		_durability = options.getDurability();
+		
+		if (_durability == Durability.INTERVAL) {
+			long intervalMillis = options.getFlushIntervalMillis();
+			_scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(FLUSHER_THREAD_NAME));
+			_scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					flushInBackground();
+				}
+			}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+		if (_durability != Durability.PER_COMMAND) {
+			// Do not lose the pending changes if the program is terminated.
+			_shutdownHook = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					flushInBackground();
+				}
+			}, FLUSHER_THREAD_NAME);
+			Runtime.getRuntime().addShutdownHook(_shutdownHook);
+		}
+	}
+	
+	/**
+	 * This method records a change made to the store. It must be called 
+	 * while holding the monitor of the store.
+	 * @param mutation	The change that was made.
+	 */
+	void record(Mutation mutation) {
+		if (_engine.isLogged()) {
+			_pendingMutations.add(mutation);
+		} else if (mutation.getType() != Mutation.Type.ADD) {
+			// Everything will be rewritten, earlier changes need not be kept.
+			_isRewriteRequired = true;
+			_pendingMutations.clear();
+		} else if (!_isRewriteRequired) {
+			_pendingMutations.add(mutation);
+		}
+	}
+	
+	/**
+	 * This method is called at the end of every command. It flushes the 
+	 * pending changes for per-command durability and reports any failure 
+	 * of an earlier background flush.
+	 * @throws IOException	If the pending changes cannot be written.
+	 */
+	public void commit() throws IOException {
+		throwBackgroundException();
+		if (_durability == Durability.PER_COMMAND) {
+			flush();
+		}
+	}
+	
+	/**
+	 * This method writes all pending changes to the storage file.
+	 * @throws IOException	If the pending changes cannot be written.
+	 */
+	public void flush() throws IOException {
+		flush(false);
+	}
+	
+	private void flush(boolean isClosing) throws IOException {
+		synchronized (_flushLock) {
+			ArrayList<Mutation> mutationsToWrite;
+			List<String> snapshot = null;
+			
+			synchronized (_store) {
+				boolean isCompactionDue = _engine.isCompactionDue(isClosing);
+				if (!_isRewriteRequired && _pendingMutations.isEmpty() && !isCompactionDue) {
+					return;
+				}
+				if (_isRewriteRequired || isCompactionDue) {
+					snapshot = _store.getLines();
+				}
+				mutationsToWrite = _pendingMutations;
+				_pendingMutations = new ArrayList<Mutation>();
+				_isRewriteRequired = false;
+			}
+			
+			try {
+				_engine.write(mutationsToWrite, snapshot);
+			} catch (IOException exceptionMessage) {
+				synchronized (_store) {
+					if (_engine.isLogged()) {
+						// Keep the mutations so that the next flush retries them.
+						_pendingMutations.addAll(0, mutationsToWrite);
+					} else {
+						// The file is in an unknown state, rewrite it on the next flush.
+						_isRewriteRequired = true;
+						_pendingMutations.clear();
+					}
+				}
+				throw exceptionMessage;
+			}
+		}
+	}
+	
+	/**
+	 * This method flushes the remaining changes and stops the background 
+	 * flushing.
+	 * @throws IOException	If the pending changes cannot be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (_scheduler != null) {
+			_scheduler.shutdown();
+		}
+		if (_shutdownHook != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(_shutdownHook);
+			} catch (IllegalStateException exceptionMessage) {
+				// The program is already shutting down and the hook will flush.
+			}
+		}
+		try {
+			flush(true);
+		} finally {
+			_engine.close();
+		}
+		throwBackgroundException();
+	}
+	
+	private void flushInBackground() {
+		try {
+			flush();
+		} catch (IOException exceptionMessage) {
+			synchronized (_store) {
+				_backgroundException = exceptionMessage;
+			}
+		}
+	}
+	
+	private void throwBackgroundException() throws IOException {
+		IOException exceptionToThrow;
+		synchronized (_store) {
+			exceptionToThrow = _backgroundException;
+			_backgroundException = null;
+		}
+		if (exceptionToThrow != null) {
+			throw exceptionToThrow;
+		}
+	}
+}
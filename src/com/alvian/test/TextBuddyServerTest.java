@@ -0,0 +1,132 @@
+package com.alvian.test;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alvian.main.TextBuddyOptions;
+import com.alvian.main.TextBuddyServer;
+
+public class TextBuddyServerTest {
+	
+	private static final String NL = System.getProperty("line.separator");
+	private static final File ROOT_DIRECTORY = new File("mytestserver");
+	private static final String GREETING = "Welcome to TextBuddy. Enter \"use <file>\" to choose a storage file";
+	
+	private TextBuddyServer _server;
+	
+	@Before
+	public void startServer() throws IOException {
+		ROOT_DIRECTORY.mkdir();
+		_server = new TextBuddyServer(0, ROOT_DIRECTORY, new TextBuddyOptions());
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					_server.acceptClientsUntilClosed();
+				} catch (IOException exceptionMessage) {
+					// The test fails on the client side.
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	
+	@After
+	public void stopServer() {
+		_server.close();
+		File[] files = ROOT_DIRECTORY.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+		ROOT_DIRECTORY.delete();
+	}
+	
+	@Test
+	public void testClientsShareStorageFile() throws IOException {
+		try (Client first = new Client(); Client second = new Client()) {
+			assertEquals("greet every client", GREETING + NL + NL, first.readResponse());
+			assertEquals("greet every client", GREETING + NL + NL, second.readResponse());
+			assertEquals("end the response with an empty line", "a.txt is ready for use" + NL + NL, 
+						 first.send("use a.txt"));
+			second.send("use a.txt");
+			first.send("clear");
+			assertEquals("add from one client", "added to a.txt: \"Hello World!\"" + NL + NL, 
+						 first.send("add Hello World!"));
+			assertEquals("display from the other client", "1. Hello World!" + NL + NL, 
+						 second.send("display"));
+		}
+	}
+	
+	@Test
+	public void testOnlyStorageFilesAreUsed() throws IOException {
+		try (Client client = new Client()) {
+			client.readResponse();
+			assertEquals("refuse a file outside of the root", "storage file ../a.txt is outside of " 
+						 + ROOT_DIRECTORY.getCanonicalPath() + NL + NL, client.send("use ../a.txt"));
+			assertEquals("refuse commands before use", "no storage file is in use, enter \"use <file>\" first" 
+						 + NL + NL, client.send("display"));
+			client.send("use a.txt");
+			assertEquals("refuse a side file", "a.txt.log is not a storage file" + NL + NL, 
+						 client.send("use a.txt.log"));
+			assertEquals("refuse an offset index", "a.txt.offsets is not a storage file" + NL + NL, 
+						 client.send("use a.txt.offsets"));
+			assertEquals("refuse a temporary file", "a.txt.tmp is not a storage file" + NL + NL, 
+						 client.send("use a.txt.tmp"));
+		}
+	}
+	
+	/**
+	 * This class is one connection to the server, reading every response 
+	 * up to and including the empty line that ends it.
+	 */
+	private class Client implements AutoCloseable {
+		
+		private final Socket _socket;
+		private final BufferedReader _input;
+		private final Writer _output;
+		
+		Client() throws IOException {
+			_socket = new Socket(InetAddress.getLoopbackAddress(), _server.getPort());
+			_input = new BufferedReader(new InputStreamReader(_socket.getInputStream(), 
+															  StandardCharsets.UTF_8));
+			_output = new OutputStreamWriter(_socket.getOutputStream(), StandardCharsets.UTF_8);
+		}
+		
+		String send(String commandLine) throws IOException {
+			_output.write(commandLine + NL);
+			_output.flush();
+			return readResponse();
+		}
+		
+		String readResponse() throws IOException {
+			StringBuilder response = new StringBuilder();
+			for (String line = _input.readLine(); line != null; line = _input.readLine()) {
+				response.append(line).append(NL);
+				if (line.isEmpty()) {
+					break;
+				}
+			}
+			return response.toString();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			send("exit");
+			_socket.close();
+		}
+	}
+}
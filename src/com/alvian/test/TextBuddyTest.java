@@ -1,9 +1,41 @@
 package com.alvian.test;
 import static org.junit.Assert.assertEquals;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+
 import org.junit.Test;
 
+import com.alvian.main.AtomicFileWriter;
+import com.alvian.main.CommandHandler;
+import com.alvian.main.CommandStats;
+import com.alvian.main.Durability;
+import com.alvian.main.EngineType;
+import com.alvian.main.LineSorter;
+import com.alvian.main.LoadMode;
+import com.alvian.main.Metrics;
+import com.alvian.main.ReadPath;
+import com.alvian.main.StoreType;
 import com.alvian.main.TextBuddy;
+import com.alvian.main.TextBuddyOptions;
+import com.alvian.main.Workspace;
 
 public class TextBuddyTest {
 
@@ -64,6 +96,619 @@ public class TextBuddyTest {
 		testOneCommand("clear", "all content deleted from mytestfile.txt" + NL, "clear");
 	}
 
+	@Test
+	public void testDurabilityPerCommand() throws IOException {
+		TextBuddy textBuddy = new TextBuddy("mytestfile.txt");
+		textBuddy.executeCommand("clear");
+		textBuddy.executeCommand("add Hello World!");
+		assertEquals("write the line before the command returns", Arrays.asList("Hello World!"), 
+					 Files.readAllLines(new File("mytestfile.txt").toPath()));
+		textBuddy.executeCommand("clear");
+		textBuddy.exit();
+	}
+	
+	@Test
+	public void testDurabilityInterval() throws IOException, InterruptedException {
+		Path path = new File("mytestfile.txt").toPath();
+		Files.write(path, new byte[0]);
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setDurability(Durability.INTERVAL);
+		options.setFlushIntervalMillis(20);
+		TextBuddy textBuddy = new TextBuddy(path.toString(), options);
+		textBuddy.executeCommand("add Hello World!");
+		// Only the background flush writes the line, no command or exit does.
+		long deadline = System.currentTimeMillis() + 5000;
+		while (Files.size(path) == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals("write the line in the background", Arrays.asList("Hello World!"), 
+					 Files.readAllLines(path));
+		textBuddy.exit();
+		Files.write(path, new byte[0]);
+	}
+	
+	@Test
+	public void testDurabilityOnExit() throws IOException {
+		Path path = new File("mytestfile.txt").toPath();
+		Files.write(path, new byte[0]);
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setDurability(Durability.ON_EXIT);
+		TextBuddy textBuddy = new TextBuddy(path.toString(), options);
+		textBuddy.executeCommand("add Hello World!");
+		textBuddy.executeCommand("add Bye!");
+		assertEquals("keep the lines in memory until exit", 0L, Files.size(path));
+		textBuddy.exit();
+		assertEquals("write the lines on exit", Arrays.asList("Hello World!", "Bye!"), 
+					 Files.readAllLines(path));
+		Files.write(path, new byte[0]);
+	}
+	
+	@Test
+	public void testLoggedStorage() throws IOException {
+		deleteLoggedFiles();
+		TextBuddy textBuddy = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		textBuddy.executeCommand("add little brown fox");
+		textBuddy.executeCommand("add jumped over the moon");
+		textBuddy.executeCommand("add Bye!");
+		textBuddy.executeCommand("delete 3");
+		textBuddy.executeCommand("sort");
+		textBuddy.exit();
+		assertEquals("fold the log into the storage file on exit", 
+					 Arrays.asList("jumped over the moon", "little brown fox"), 
+					 Files.readAllLines(new File("mytestlog.txt").toPath()));
+		
+		TextBuddy reopened = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		assertEquals("reload the logged lines", "1. jumped over the moon" + NL + "2. little brown fox" + NL, 
+					 reopened.executeCommand("display"));
+		reopened.exit();
+		deleteLoggedFiles();
+	}
+	
+	@Test
+	public void testLoggedStorageReplay() throws IOException {
+		deleteLoggedFiles();
+		TextBuddy textBuddy = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		textBuddy.executeCommand("add little brown fox");
+		textBuddy.executeCommand("add jumped over the moon");
+		textBuddy.executeCommand("sort");
+		assertEquals("leave the storage file to the log", 0L, new File("mytestlog.txt").length());
+		
+		// Reopening without exit is what TextBuddy sees after a crash.
+		TextBuddy reopened = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		assertEquals("replay the log", "1. jumped over the moon" + NL + "2. little brown fox" + NL, 
+					 reopened.executeCommand("display"));
+		reopened.exit();
+		textBuddy.exit();
+		deleteLoggedFiles();
+	}
+	
+	@Test
+	public void testLoggedStorageTornRecord() throws IOException {
+		deleteLoggedFiles();
+		TextBuddy textBuddy = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		textBuddy.executeCommand("add little brown fox");
+		textBuddy.executeCommand("add jumped over the moon");
+		// A record without its line break was cut short by a crash.
+		Files.write(new File("mytestlog.txt.log").toPath(), "A\tBye".getBytes("UTF-8"), 
+					StandardOpenOption.APPEND);
+		
+		TextBuddy reopened = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		assertEquals("drop the torn record", "1. little brown fox" + NL + "2. jumped over the moon" + NL, 
+					 reopened.executeCommand("display"));
+		reopened.executeCommand("add Yeah, it's working!");
+		TextBuddy replayed = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		assertEquals("append after the last complete record", "1. little brown fox" + NL 
+					 + "2. jumped over the moon" + NL + "3. Yeah, it's working!" + NL, 
+					 replayed.executeCommand("display"));
+		replayed.exit();
+		reopened.exit();
+		textBuddy.exit();
+		deleteLoggedFiles();
+	}
+	
+	@Test
+	public void testLoggedStorageOldLog() throws IOException {
+		deleteLoggedFiles();
+		Path logPath = new File("mytestlog.txt.log").toPath();
+		TextBuddy textBuddy = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		textBuddy.executeCommand("add little brown fox");
+		textBuddy.executeCommand("add jumped over the moon");
+		byte[] oldLog = Files.readAllBytes(logPath);
+		textBuddy.exit();
+		textBuddy = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		textBuddy.executeCommand("add Bye!");
+		
+		// Put the files back as a compaction leaves them before its snapshot is written.
+		Files.write(new File("mytestlog.txt").toPath(), new byte[0]);
+		Files.write(new File("mytestlog.txt.log.old").toPath(), oldLog);
+		TextBuddy reopened = new TextBuddy("mytestlog.txt", getLoggedOptions());
+		assertEquals("replay the old log and then the log", "1. little brown fox" + NL 
+					 + "2. jumped over the moon" + NL + "3. Bye!" + NL, reopened.executeCommand("display"));
+		assertEquals("finish the compaction", false, new File("mytestlog.txt.log.old").exists());
+		assertEquals("write the snapshot", 
+					 Arrays.asList("little brown fox", "jumped over the moon", "Bye!"), 
+					 Files.readAllLines(new File("mytestlog.txt").toPath()));
+		reopened.exit();
+		textBuddy.exit();
+		deleteLoggedFiles();
+	}
+	
+	private TextBuddyOptions getLoggedOptions() {
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setEngineType(EngineType.LOG);
+		return options;
+	}
+	
+	private void deleteLoggedFiles() throws IOException {
+		Files.deleteIfExists(new File("mytestlog.txt").toPath());
+		Files.deleteIfExists(new File("mytestlog.txt.log").toPath());
+		Files.deleteIfExists(new File("mytestlog.txt.log.old").toPath());
+	}
+	
+	@Test
+	public void testAtomicRewrite() throws IOException {
+		File file = new File("mytestfile.txt");
+		Path otherTemporaryFile = new File("tempFile.txt").toPath();
+		Files.write(otherTemporaryFile, Arrays.asList("not a storage file"));
+		testOneCommand("add first item", "added to mytestfile.txt: \"Hello World!\"" + NL, "add Hello World!");
+		testOneCommand("add second item", "added to mytestfile.txt: \"Bye!\"" + NL, "add Bye!");
+		testOneCommand("sort two entries", "all lines in file mytestfile.txt have been sorted" + NL, "sort");
+		testOneCommand("delete first item", "deleted from mytestfile.txt: \"Bye!\"" + NL, "delete 1");
+		assertEquals("leave the temporary files of others alone", Arrays.asList("not a storage file"), 
+					 Files.readAllLines(otherTemporaryFile));
+		
+		AtomicFileWriter writer = new AtomicFileWriter(file, Charset.defaultCharset());
+		writer.writeLine("half written");
+		writer.close();
+		testOneCommand("keep the lines without commit", "1. Hello World!" + NL, "display");
+		String[] temporaryFiles = new File(".").list(new FilenameFilter() {
+			@Override
+			public boolean accept(File directory, String name) {
+				return name.startsWith("mytestfile.txt.") && name.endsWith(".tmp");
+			}
+		});
+		assertEquals("remove every temporary file", 0, temporaryFiles.length);
+		testOneCommand("clear", "all content deleted from mytestfile.txt" + NL, "clear");
+		Files.delete(otherTemporaryFile);
+	}
+	
+	@Test
+	public void testWriterOutput() throws IOException {
+		StoreType[] storeTypes = StoreType.values();
+		for (int i = 0; i < storeTypes.length; i++) {
+			TextBuddyOptions options = new TextBuddyOptions();
+			options.setStoreType(storeTypes[i]);
+			options.setBlockLines(2);
+			TextBuddy textBuddy = new TextBuddy("mytestwriter.txt", options);
+			textBuddy.executeCommand("clear");
+			StringWriter output = new StringWriter();
+			textBuddy.display(output);
+			textBuddy.search("hello", output);
+			textBuddy.add("Hello World!");
+			textBuddy.add("Bye!");
+			textBuddy.add("hello once again!");
+			textBuddy.display(output);
+			textBuddy.search("HELLO", output);
+			textBuddy.search("hello", output);
+			assertEquals("write to the writer from the " + storeTypes[i] + " store", 
+						 "mytestwriter.txt is empty" + NL 
+						 + "no line was found with token \"hello\" in file mytestwriter.txt" + NL 
+						 + "1. Hello World!" + NL + "2. Bye!" + NL + "3. hello once again!" + NL 
+						 + "2 line(s) were found with token \"HELLO\" in file mytestwriter.txt" + NL 
+						 + "1. Hello World!" + NL + "2. hello once again!" + NL 
+						 + "2 line(s) were found with token \"hello\" in file mytestwriter.txt" + NL 
+						 + "1. Hello World!" + NL + "2. hello once again!" + NL, output.toString());
+			textBuddy.exit();
+			Files.delete(new File("mytestwriter.txt").toPath());
+			Files.deleteIfExists(new File("mytestwriter.txt.offsets").toPath());
+		}
+	}
+	
+	@Test
+	public void testDisplayRange() {
+		testOneCommand("display range of empty storage", "mytestfile.txt is empty" + NL, "display 1-2");
+		testOneCommand("add first item", "added to mytestfile.txt: \"Hello World!\"" + NL, "add Hello World!");
+		testOneCommand("add second item", "added to mytestfile.txt: \"hello once again!\"" + NL, "add hello once again!");
+		testOneCommand("add third item", "added to mytestfile.txt: \"I hope this works.\"" + NL, "add I hope this works.");
+		testOneCommand("display middle range", "2. hello once again!" + NL + "3. I hope this works." + NL, "display 2-3");
+		testOneCommand("display range past the end", "3. I hope this works." + NL, "display 3-10");
+		testOneCommand("display single line", "1. Hello World!" + NL, "display 1");
+		testOneCommand("display first page", "1. Hello World!" + NL + "2. hello once again!" + NL + "3. I hope this works." + NL, "display page 1");
+		testOneCommand("display range outside the file", "failed to display lines 4-5 of mytestfile.txt, file has 3 line(s)" + NL, "display 4-5");
+		testOneCommand("display reversed range", "failed to display lines 3-1 of mytestfile.txt, file has 3 line(s)" + NL, "display 3-1");
+		testOneCommand("display page outside the file", "failed to display lines 21-40 of mytestfile.txt, file has 3 line(s)" + NL, "display page 2");
+		testOneCommand("clear", "all content deleted from mytestfile.txt" + NL, "clear");
+	}
+	
+	@Test
+	public void testExternalSort() throws IOException {
+		String[] words = {"apple", "Apple", "APPLE", "\u00e9cole", "\u00c9cole", "zo\u00eb", "Zo\u00cb", 
+						  "\u00c4pfel", "banana", "Banana"};
+		Charset charset = Charset.defaultCharset();
+		Random random = new Random(2103);
+		ArrayList<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 20000; i++) {
+			// Few distinct keys, so equal lines of a different case must keep their order.
+			String line = words[random.nextInt(words.length)] + " " + random.nextInt(50);
+			// The letters the platform charset cannot hold are replaced as the stores would.
+			lines.add(new String(line.getBytes(charset), charset));
+		}
+		Path residentPath = new File("mytestresident.txt").toPath();
+		Path directPath = new File("mytestdirect.txt").toPath();
+		Files.write(residentPath, lines, charset);
+		Files.write(directPath, lines, charset);
+		
+		TextBuddy resident = new TextBuddy(residentPath.toString());
+		resident.executeCommand("sort");
+		resident.exit();
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setStoreType(StoreType.DIRECT);
+		options.setSortMemory(4096);
+		TextBuddy direct = new TextBuddy(directPath.toString(), options);
+		direct.executeCommand("sort");
+		direct.exit();
+		
+		assertEquals("sort in runs like in memory", true, 
+					 Arrays.equals(Files.readAllBytes(residentPath), Files.readAllBytes(directPath)));
+		Files.delete(residentPath);
+		Files.delete(directPath);
+	}
+	
+	@Test
+	public void testSameOutputOnEveryPath() throws IOException {
+		TextBuddyOptions parallelOptions = new TextBuddyOptions();
+		parallelOptions.setParallelism(2);
+		parallelOptions.setParallelCutoff(1);
+		TextBuddyOptions mappedOptions = new TextBuddyOptions();
+		mappedOptions.setStoreType(StoreType.DIRECT);
+		mappedOptions.setReadPath(ReadPath.MAPPED);
+		
+		String expected = runScript(new TextBuddyOptions());
+		assertEquals("strip the carriage return", true, expected.contains(" hello from Windows" + NL));
+		assertEquals("parallel sort and search", expected, runScript(parallelOptions));
+		assertEquals("mapped display and search", expected, runScript(mappedOptions));
+	}
+	
+	/**
+	 * This method runs the same adds, sorts and searches on a storage file 
+	 * starting with a line ended by CRLF and a line with non-ASCII letters.
+	 * @return	The feedback of the commands.
+	 */
+	private String runScript(TextBuddyOptions options) throws IOException {
+		Path path = new File("mytestscript.txt").toPath();
+		Charset charset = Charset.defaultCharset();
+		// The letters the platform charset cannot hold are replaced as the stores would.
+		String nonAsciiLine = new String("Zo\u00eb says hello".getBytes(charset), charset);
+		Files.write(path, ("hello from Windows\r\n" + nonAsciiLine + NL).getBytes(charset));
+		String[] commands = { "add Hello World!", "add hello once again!", "search hello", "sort", "display", 
+							  "search " + nonAsciiLine.substring(0, 3).toUpperCase(), "delete 2", 
+							  "search windows", "display 2-3" };
+		StringWriter output = new StringWriter();
+		TextBuddy textBuddy = new TextBuddy(path.toString(), options);
+		for (int i = 0; i < commands.length; i++) {
+			textBuddy.executeCommand(commands[i], output);
+		}
+		textBuddy.exit();
+		Files.delete(path);
+		Files.deleteIfExists(new File("mytestscript.txt.offsets").toPath());
+		return output.toString();
+	}
+	
+	@Test
+	public void testMalformedArguments() {
+		testOneCommand("add first item", "added to mytestfile.txt: \"Hello World!\"" + NL, "add Hello World!");
+		testOneCommand("delete line zero", "failed to delete from mytestfile.txt, line 0 cannot be found" + NL, "delete 0");
+		testOneCommand("delete non-number", "failed to delete from mytestfile.txt, \"one\" is not a line number" + NL, "delete one");
+		testOneCommand("delete without line number", "command \"delete\" needs a parameter" + NL, "delete");
+		testOneCommand("search without token", "command \"search\" needs a parameter" + NL, "search");
+		testOneCommand("display non-number", "failed to display lines a-b of mytestfile.txt, file has 1 line(s)" + NL, "display a-b");
+		testOneCommand("verb in upper case", "1. Hello World!" + NL, "DISPLAY");
+		testOneCommand("clear", "all content deleted from mytestfile.txt" + NL, "clear");
+	}
+	
+	@Test
+	public void testRegisteredCommand() {
+		TextBuddy textBuddy = new TextBuddy("mytestfile.txt");
+		textBuddy.registerCommand("count", new CommandHandler() {
+			@Override
+			public boolean execute(TextBuddy textBuddy, String commandLine, int parameterStart, Writer output) 
+					throws IOException {
+				output.write(textBuddy.search(commandLine.substring(parameterStart)).split(NL)[0] + NL);
+				return true;
+			}
+		});
+		assertEquals("registered command", "no line was found with token \"abc\" in file mytestfile.txt" + NL, 
+					 textBuddy.executeCommand("Count abc"));
+	}
+	
+	@Test
+	public void testBatch() throws IOException {
+		String commands = "add Hello World!" + NL + "add hello once again!" + NL + "add I hope this works." + NL
+						+ "delete 1" + NL + "delete 5" + NL + "delete 1" + NL + "display" + NL + "clear" + NL;
+		StringWriter output = new StringWriter();
+		new TextBuddy("mytestfile.txt").runBatch(new BufferedReader(new StringReader(commands)), output);
+		assertEquals("batch of adds and deletes", 
+					 "added to mytestfile.txt: \"Hello World!\"" + NL + "added to mytestfile.txt: \"hello once again!\"" + NL 
+					 + "added to mytestfile.txt: \"I hope this works.\"" + NL + "deleted from mytestfile.txt: \"Hello World!\"" + NL 
+					 + "failed to delete from mytestfile.txt, line 5 cannot be found" + NL 
+					 + "deleted from mytestfile.txt: \"hello once again!\"" + NL + "1. I hope this works." + NL 
+					 + "all content deleted from mytestfile.txt" + NL, output.toString());
+	}
+	
+	@Test
+	public void testCompactStorage() throws IOException {
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setOffHeap(true);
+		TextBuddy textBuddy = TextBuddy.open("mytestfile.txt", options);
+		textBuddy.executeCommand("add Hello World!");
+		textBuddy.executeCommand("add I hope this works.");
+		textBuddy.executeCommand("add hello once again!");
+		textBuddy.executeCommand("delete 2");
+		assertEquals("sort compact lines", "all lines in file mytestfile.txt have been sorted" + NL, textBuddy.executeCommand("sort"));
+		assertEquals("search compact lines", "2 line(s) were found with token \"HEL\" in file mytestfile.txt" + NL 
+					 + "1. hello once again!" + NL + "2. Hello World!" + NL, textBuddy.executeCommand("search HEL"));
+		textBuddy.exit();
+		TextBuddy reopened = TextBuddy.open("mytestfile.txt", options);
+		assertEquals("reload compact lines", "1. hello once again!" + NL + "2. Hello World!" + NL, reopened.executeCommand("display"));
+		reopened.executeCommand("clear");
+		reopened.exit();
+	}
+	
+	@Test
+	public void testCompressedStorage() throws IOException {
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setBlockLines(2);
+		TextBuddy textBuddy = TextBuddy.open("mytestfile.tbz", options);
+		textBuddy.executeCommand("add Hello World!");
+		textBuddy.executeCommand("add I hope this works.");
+		textBuddy.executeCommand("add hello once again!");
+		textBuddy.executeCommand("add Yeah, it's working!");
+		textBuddy.executeCommand("add Bye!");
+		assertEquals("delete from a compressed block", "deleted from mytestfile.tbz: \"I hope this works.\"" + NL, textBuddy.executeCommand("delete 2"));
+		assertEquals("search compressed blocks", "2 line(s) were found with token \"hel\" in file mytestfile.tbz" + NL 
+					 + "1. Hello World!" + NL + "2. hello once again!" + NL, textBuddy.executeCommand("search hel"));
+		textBuddy.executeCommand("sort");
+		textBuddy.exit();
+		TextBuddy reopened = TextBuddy.open("mytestfile.tbz", options);
+		assertEquals("reload compressed blocks", "2. hello once again!" + NL + "3. Hello World!" + NL, reopened.executeCommand("display 2-3"));
+		reopened.executeCommand("clear");
+		reopened.exit();
+		Files.delete(new File("mytestfile.tbz").toPath());
+	}
+	
+	@Test
+	public void testStats() throws IOException {
+		TextBuddy textBuddy = TextBuddy.open("mytestfile.txt", new TextBuddyOptions());
+		textBuddy.executeCommand("clear");
+		textBuddy.executeCommand("add Hello World!");
+		textBuddy.executeCommand("add Bye!");
+		CommandStats searchStats = Metrics.getCommandStats("search");
+		long searchCount = searchStats.getCount();
+		long linesScanned = Metrics.getStorageStats().getLinesScanned();
+		textBuddy.executeCommand("search hello");
+		assertEquals("count the search", searchCount + 1, searchStats.getCount());
+		// The lines are searched once to count the matches and once to write them.
+		assertEquals("count the lines searched", linesScanned + 4, Metrics.getStorageStats().getLinesScanned());
+		String stats = textBuddy.executeCommand("stats");
+		assertEquals("show the stats table", true, stats.startsWith("command ") && stats.contains(NL + "search ") 
+					 && stats.contains(NL + "lines scanned "));
+		textBuddy.executeCommand("clear");
+		textBuddy.exit();
+	}
+	
+	@Test
+	public void testResultCache() throws IOException {
+		TextBuddy textBuddy = TextBuddy.open("mytestfile.txt", new TextBuddyOptions());
+		textBuddy.executeCommand("clear");
+		textBuddy.executeCommand("add Hello World!");
+		textBuddy.executeCommand("add Bye!");
+		textBuddy.executeCommand("search HELLO");
+		long hitCount = Metrics.getCacheStats().getHitCount();
+		textBuddy.executeCommand("add hello once again!");
+		assertEquals("extend the cached search", "2 line(s) were found with token \"hello\" in file mytestfile.txt" + NL 
+					 + "1. Hello World!" + NL + "2. hello once again!" + NL, textBuddy.executeCommand("search hello"));
+		assertEquals("hit the cached search", hitCount + 1, Metrics.getCacheStats().getHitCount());
+		textBuddy.executeCommand("display 1-2");
+		textBuddy.executeCommand("delete 1");
+		assertEquals("drop the cached display", "1. Bye!" + NL + "2. hello once again!" + NL, textBuddy.executeCommand("display 1-2"));
+		textBuddy.executeCommand("clear");
+		textBuddy.exit();
+	}
+	
+	@Test
+	public void testKeepSorted() throws IOException {
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setKeepSorted(true);
+		TextBuddy textBuddy = TextBuddy.open("mytestfile.txt", options);
+		textBuddy.executeCommand("clear");
+		textBuddy.executeCommand("add little brown fox");
+		textBuddy.executeCommand("add jumped over the moon");
+		textBuddy.executeCommand("display");
+		textBuddy.executeCommand("add Little brown fox");
+		assertEquals("insert at the sorted position", "1. jumped over the moon" + NL + "2. little brown fox" + NL 
+					 + "3. Little brown fox" + NL, textBuddy.executeCommand("display"));
+		assertEquals("sort sorted lines", "all lines in file mytestfile.txt have been sorted" + NL, textBuddy.executeCommand("sort"));
+		textBuddy.executeCommand("clear");
+		textBuddy.exit();
+	}
+	
+	@Test
+	public void testLazyLoad() throws IOException {
+		TextBuddy textBuddy = TextBuddy.open("mytestfile.txt", new TextBuddyOptions());
+		textBuddy.executeCommand("clear");
+		textBuddy.executeCommand("add Hello World!");
+		textBuddy.executeCommand("add hello once again!");
+		textBuddy.executeCommand("add Bye!");
+		textBuddy.exit();
+		
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setLoadMode(LoadMode.LAZY);
+		options.setParallelism(2);
+		TextBuddy reopened = TextBuddy.open("mytestfile.txt", options);
+		assertEquals("display the first lines", "1. Hello World!" + NL + "2. hello once again!" + NL, 
+					 reopened.executeCommand("display 1-2"));
+		assertEquals("display the lines up to the end", "2. hello once again!" + NL + "3. Bye!" + NL, 
+					 reopened.executeCommand("display 2-5"));
+		reopened.executeCommand("clear");
+		reopened.exit();
+	}
+	
+	@Test
+	public void testWorkspace() throws IOException {
+		File directory = new File("mytestworkspace");
+		directory.mkdir();
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setParallelism(2);
+		Workspace workspace = new Workspace(directory, options);
+		StringWriter output = new StringWriter();
+		workspace.executeCommand("use b.txt", output);
+		workspace.executeCommand("clear", output);
+		workspace.executeCommand("add Hello World!", output);
+		workspace.executeCommand("add Bye!", output);
+		workspace.executeCommand("use a.txt", output);
+		workspace.executeCommand("clear", output);
+		workspace.executeCommand("add hello once again!", output);
+		
+		output = new StringWriter();
+		workspace.executeCommand("use ../a.txt", output);
+		workspace.executeCommand("use a.txt.tmp", output);
+		workspace.executeCommand("use ./a.txt", output);
+		workspace.executeCommand("display", output);
+		assertEquals("use storage files like the server", "storage file ../a.txt is outside of " 
+					 + directory.getCanonicalPath() + NL + "a.txt.tmp is not a storage file" + NL 
+					 + "./a.txt is ready for use" + NL + "1. hello once again!" + NL, output.toString());
+		output = new StringWriter();
+		workspace.executeCommand("search-all hello", output);
+		assertEquals("search every file", "1 line(s) were found with token \"hello\" in file a.txt" + NL 
+					 + "1. hello once again!" + NL 
+					 + "1 line(s) were found with token \"hello\" in file b.txt" + NL 
+					 + "1. Hello World!" + NL, output.toString());
+		output = new StringWriter();
+		workspace.executeCommand("sort-all", output);
+		assertEquals("sort every file", "all lines in file a.txt have been sorted" + NL 
+					 + "all lines in file b.txt have been sorted" + NL, output.toString());
+		output = new StringWriter();
+		workspace.executeCommand("use b.txt", output);
+		workspace.executeCommand("display", output);
+		assertEquals("display the file in use", "b.txt is ready for use" + NL + "1. Bye!" + NL 
+					 + "2. Hello World!" + NL, output.toString());
+		workspace.executeCommand("exit", output);
+		File[] files = directory.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			Files.delete(files[i].toPath());
+		}
+		Files.delete(directory.toPath());
+	}
+	
+	@Test
+	public void testSearchQuery() throws IOException {
+		TextBuddy textBuddy = TextBuddy.open("mytestfile.txt", new TextBuddyOptions());
+		textBuddy.executeCommand("clear");
+		textBuddy.executeCommand("add little brown fox");
+		textBuddy.executeCommand("add jumped over the moon");
+		textBuddy.executeCommand("add Fox 42");
+		assertEquals("query a pattern", "1 line(s) were found with token \"/\\d+$/\" in file mytestfile.txt" + NL 
+					 + "1. Fox 42" + NL, textBuddy.executeCommand("query /\\d+$/"));
+		assertEquals("query all terms", "1 line(s) were found with token \"fox AND brown\" in file mytestfile.txt" + NL 
+					 + "1. little brown fox" + NL, textBuddy.executeCommand("query fox AND brown"));
+		assertEquals("query any term", "2 line(s) were found with token \"moon OR /^f/ limit 2\" in file mytestfile.txt" + NL 
+					 + "1. jumped over the moon" + NL + "2. Fox 42" + NL, 
+					 textBuddy.executeCommand("query moon OR /^f/ limit 2"));
+		assertEquals("query an invalid pattern", "failed to search mytestfile.txt, \"/[/\" is not a valid pattern" + NL, 
+					 textBuddy.executeCommand("query /[/"));
+		textBuddy.executeCommand("clear");
+		textBuddy.exit();
+	}
+	
+	@Test
+	public void testFilePermissions() throws IOException {
+		Path path = new File("mytestfile.txt").toPath();
+		if (!path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			return;
+		}
+		Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r--r--");
+		StoreType[] storeTypes = {StoreType.RESIDENT, StoreType.DIRECT};
+		for (int i = 0; i < storeTypes.length; i++) {
+			TextBuddyOptions options = new TextBuddyOptions();
+			options.setStoreType(storeTypes[i]);
+			TextBuddy textBuddy = TextBuddy.open("mytestfile.txt", options);
+			Files.setPosixFilePermissions(path, permissions);
+			textBuddy.executeCommand("add Hello World!");
+			textBuddy.executeCommand("add Bye!");
+			textBuddy.executeCommand("add hello once again!");
+			textBuddy.executeCommand("delete 1");
+			textBuddy.executeCommand("sort");
+			textBuddy.exit();
+			assertEquals("keep the permissions with " + storeTypes[i], permissions, 
+						 Files.getPosixFilePermissions(path));
+			assertEquals("keep the lines with " + storeTypes[i], "1. Bye!" + NL + "2. hello once again!" + NL, 
+						 new TextBuddy("mytestfile.txt").executeCommand("display"));
+			new TextBuddy("mytestfile.txt").executeCommand("clear");
+		}
+		Files.deleteIfExists(new File("mytestfile.txt.offsets").toPath());
+	}
+	
+	@Test
+	public void testIndexNeedsResidentStore() {
+		boolean isRejected = false;
+		try {
+			TextBuddyOptions.fromArguments(new String[] {"mytestfile.txt", "--index", "--store=direct"});
+		} catch (IllegalArgumentException exceptionMessage) {
+			isRejected = true;
+		}
+		assertEquals("reject the index of a direct store", true, isRejected);
+		
+		TextBuddyOptions options = new TextBuddyOptions();
+		options.setIndexed(true);
+		isRejected = false;
+		try {
+			TextBuddy.open("mytestfile.tbz", options);
+		} catch (IOException exceptionMessage) {
+			isRejected = true;
+		}
+		assertEquals("reject the index of a compressed file", true, isRejected);
+		new File("mytestfile.tbz").delete();
+	}
+	
+	@Test
+	public void testSearchPlainToken() throws IOException {
+		TextBuddy textBuddy = TextBuddy.open("mytestfile.txt", new TextBuddyOptions());
+		textBuddy.executeCommand("clear");
+		textBuddy.executeCommand("add dogs and cats");
+		textBuddy.executeCommand("add cats AND dogs");
+		textBuddy.executeCommand("add cd /usr/local");
+		textBuddy.executeCommand("add usr is short for user");
+		textBuddy.executeCommand("add x limit 3");
+		assertEquals("search the operator as it is", "1 line(s) were found with token \"cats AND dogs\" in file mytestfile.txt" + NL 
+					 + "1. cats AND dogs" + NL, textBuddy.executeCommand("search cats AND dogs"));
+		assertEquals("search the slashes as they are", "1 line(s) were found with token \"/usr/\" in file mytestfile.txt" + NL 
+					 + "1. cd /usr/local" + NL, textBuddy.executeCommand("search /usr/"));
+		assertEquals("search the limit as it is", "1 line(s) were found with token \"x limit 3\" in file mytestfile.txt" + NL 
+					 + "1. x limit 3" + NL, textBuddy.executeCommand("search x limit 3"));
+		assertEquals("query the operator literally", "1 line(s) were found with token \"/cats AND dogs/\" in file mytestfile.txt" + NL 
+					 + "1. cats AND dogs" + NL, textBuddy.executeCommand("query /cats AND dogs/"));
+		textBuddy.executeCommand("clear");
+		textBuddy.exit();
+	}
+	
+	@Test
+	public void testSortMergesTail() {
+		Random random = new Random(1807);
+		String[] words = { "apple", "Apple", "banana", "BANANA", "cherry", "Cherry" };
+		ArrayList<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			lines.add(words[random.nextInt(words.length)] + " " + random.nextInt(5));
+		}
+		LineSorter.sort(lines);
+		for (int i = 0; i < 50; i++) {
+			lines.add(words[random.nextInt(words.length)] + " " + random.nextInt(5));
+		}
+		ArrayList<String> expected = new ArrayList<String>(lines);
+		Collections.sort(expected, String.CASE_INSENSITIVE_ORDER);
+		LineSorter.sort(lines, LineSorter.getSortedLength(lines));
+		assertEquals("merge the tail like a full stable sort", expected, lines);
+	}
+	
 	private void testOneCommand(String description, String expected, String command) {
 		assertEquals(description, expected, new TextBuddy("mytestfile.txt").executeCommand(command)); 
 	}
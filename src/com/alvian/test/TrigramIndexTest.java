@@ -0,0 +1,98 @@
+package com.alvian.test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.alvian.main.IntList;
+import com.alvian.main.TrigramIndex;
+
+public class TrigramIndexTest {
+	
+	private static final File STORAGE_FILE = new File("mytestfile.txt");
+	private static final File INDEX_FILE = new File("mytestfile.txt.idx");
+	private static final String[] WORDS = {"Hello", "world", "HELP", "yellow", "low", "wor", "Lowly"};
+	
+	@After
+	public void deleteIndexFile() {
+		INDEX_FILE.delete();
+	}
+	
+	@Test
+	public void testShortTokenIsNotNarrowed() {
+		ArrayList<String> lines = new ArrayList<String>();
+		lines.add("Hello World!");
+		TrigramIndex index = TrigramIndex.loadOrBuild(STORAGE_FILE, lines);
+		assertNull(index.findCandidates("he"));
+		assertEquals(1, index.findCandidates("hel").size());
+		assertEquals(0, index.findCandidates("xyz").size());
+	}
+	
+	@Test
+	public void testCandidatesFollowChanges() throws Exception {
+		Random random = new Random(2103);
+		ArrayList<String> lines = new ArrayList<String>();
+		TrigramIndex index = TrigramIndex.loadOrBuild(STORAGE_FILE, lines);
+		
+		for (int step = 0; step < 2000; step++) {
+			int action = random.nextInt(10);
+			if (action < 6 || lines.isEmpty()) {
+				String line = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+				lines.add(line);
+				index.lineAdded(lines.size() - 1, line);
+			} else if (action < 9) {
+				int position = random.nextInt(lines.size());
+				index.lineRemoved(position, lines.remove(position));
+			} else {
+				sortWithOrder(lines, index);
+			}
+			assertCandidatesCoverMatches(lines, index, "low");
+			assertCandidatesCoverMatches(lines, index, "hello w");
+		}
+		
+		index.save(lines);
+		TrigramIndex loadedIndex = TrigramIndex.loadOrBuild(STORAGE_FILE, lines);
+		assertCandidatesCoverMatches(lines, loadedIndex, "low");
+		assertCandidatesCoverMatches(lines, loadedIndex, "yellow");
+	}
+	
+	private void assertCandidatesCoverMatches(ArrayList<String> lines, TrigramIndex index, String token) {
+		IntList candidates = index.findCandidates(token);
+		int candidateIndex = 0;
+		for (int i = 0; i < lines.size(); i++) {
+			if (lines.get(i).toLowerCase().contains(token)) {
+				while (candidateIndex < candidates.size() && candidates.get(candidateIndex) < i) {
+					candidateIndex++;
+				}
+				assertTrue("line " + i + " is a candidate for " + token, 
+						   candidateIndex < candidates.size() && candidates.get(candidateIndex) == i);
+			}
+		}
+	}
+	
+	private void sortWithOrder(ArrayList<String> lines, TrigramIndex index) {
+		ArrayList<String> sortedLines = new ArrayList<String>(lines);
+		Collections.sort(sortedLines, String.CASE_INSENSITIVE_ORDER);
+		int[] order = new int[lines.size()];
+		boolean[] isUsed = new boolean[lines.size()];
+		for (int i = 0; i < sortedLines.size(); i++) {
+			for (int j = 0; j < lines.size(); j++) {
+				if (!isUsed[j] && lines.get(j) == sortedLines.get(i)) {
+					isUsed[j] = true;
+					order[i] = j;
+					break;
+				}
+			}
+		}
+		lines.clear();
+		lines.addAll(sortedLines);
+		index.linesSorted(order);
+	}
+}